@@ -1,172 +1,346 @@
 package com.example.talha.booksearch;
 
-import android.app.Activity;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.view.Gravity;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * NOTICE: This application was built prior to RecyclerView, ViewModel & Android Jetpack was introduced.
- * Some components (like this adapter and {@link BookLoader}) are outdated.
+ * {@link BookAdapter} is a {@link RecyclerView.Adapter} that provides the layout for each row of a
+ * list of {@link Book} objects.
+ *
+ * Books are turned into {@link BookRow}s on a background thread, which work out everything a row
+ * shows ahead of time (the formatted rating, which views are hidden and how they are laid out).
+ * Binding a row while the user scrolls then only copies those values into the views, and
+ * allocates nothing apart from the request for the cover.
  *
- * {@link BookAdapter} is an {@link ArrayAdapter} that can provide the layout for each list based
- * on a data source (in this instance the Google Books API), which is a list of {@link Book} objects.
+ * When a new list of books is set with {@link #setBooks(List)}, the differences between the old
+ * and the new rows are worked out on the same background thread with {@link DiffUtil}. Only the
+ * rows that were inserted, removed, moved or changed are then updated, so searching again or
+ * changing the order doesn't rebind every row on screen. Pages that are appended with
+ * {@link #addBooks(List)} are simply inserted at the end.
  */
-public class BookAdapter extends ArrayAdapter<Book> {
+public class BookAdapter extends RecyclerView.Adapter<BookAdapter.ViewHolder> {
+
+    /**
+     * Interface for receiving clicks on a book in the list.
+     */
+    public interface OnBookClickListener {
+        void onBookClick(Book book);
+    }
 
     /**
-     * This is our own custom constructor (it doesn't mirror a superclass constructor).
-     * The context is used to inflate the layout file, and the list is the data we want
-     * to populate into the lists.
+     * Creates rows and works out the differences between lists off the main thread. There is
+     * only one thread, so the changes are worked out, and handed to the main thread, in the
+     * order they were made.
+     */
+    private static final ExecutorService sRowExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Metrics for the stages of showing a list: creating the rows, comparing them with the old
+     * ones, handing the changes to the list on the main thread, and binding a row. See
+     * {@link Metrics}.
+     */
+    private static final Metrics.Histogram sRowsTimer = Metrics.timer("adapter.rows");
+    private static final Metrics.Histogram sDiffTimer = Metrics.timer("adapter.diff");
+    private static final Metrics.Histogram sDispatchTimer = Metrics.timer("adapter.dispatch");
+    private static final Metrics.Histogram sBindTimer = Metrics.timer("adapter.bind");
+
+    /** Used to hand the changes back to the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Told when a book is clicked */
+    private final OnBookClickListener mListener;
+
+    /** The rows that are being shown. Only used on the main thread. */
+    private List<BookRow> mRows = new ArrayList<>();
+
+    /**
+     * The rows as they will be once every change that was made has reached the main thread. Each
+     * change is worked out from these. Only used on the background thread.
+     */
+    private List<BookRow> mSubmittedRows = new ArrayList<>();
+
+    /**
+     * A list of books that is shown as it is, or null if the books are set with
+     * {@link #setBooks(List)}. See {@link #BookAdapter(List, OnBookClickListener)}.
+     */
+    private final List<Book> mLiveBooks;
+
+    /** Formats ratings for the rows of {@link #mLiveBooks}, which are created on the main thread */
+    private final DecimalFormat mLiveRatingFormat;
+
+    /**
+     * Creates an adapter with no books. Books are shown once they are set with
+     * {@link #setBooks(List)} or {@link #addBooks(List)}.
      *
-     * @param context The current context. Used to inflate the layout file.
-     * @param books A List of Book objects to display in a list.
-     */
-    public BookAdapter(Activity context, List<Book> books) {
-        // Here, we initialize the ArrayAdapter's internal storage for the context and the list.
-        // The second argument is used when the ArrayAdapter is populating a single TextView.
-        // Because this is a custom adapter for four TextViews and an ImageView, the adapter is not
-        // going to use this second argument, so it can be any value. Here, we used 0.
-        super(context, 0, books);
+     * @param listener is told when a book is clicked.
+     */
+    public BookAdapter(OnBookClickListener listener) {
+        mListener = listener;
+        mLiveBooks = null;
+        mLiveRatingFormat = null;
     }
 
     /**
-     * Provides a view for an AdapterView (ListView, GridView, etc.)
+     * Creates an adapter that shows the given list as it is, so an adapter for a list that
+     * changes by itself (like the shelf) only needs to be told to redraw. The rows of such a list
+     * are created when they are bound, because the books are only read from the list then.
      *
-     * @param position The position in the list of data that should be displayed in the
-     *                 list item view.
-     * @param convertView The recycled view to populate.
-     * @param parent The parent ViewGroup that is used for inflation.
-     * @return The View for the position in the AdapterView.
+     * @param books    A List of Book objects to display in a list.
+     * @param listener is told when a book is clicked.
      */
-    @NonNull
-    @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
+    public BookAdapter(List<Book> books, OnBookClickListener listener) {
+        mListener = listener;
+        mLiveBooks = books;
+        mLiveRatingFormat = BookRow.newRatingFormat();
+    }
 
-        // Check if the existing view is being reused, otherwise inflate the view
-        View listItemView = convertView;
-        if(listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
-        }
+    /**
+     * Replaces the books that are shown. The list is copied, so it can be changed afterwards.
+     *
+     * The books stay on screen until the new rows have been created and compared with them, and
+     * then only the rows that changed are updated.
+     */
+    public void setBooks(List<Book> books) {
+        final List<Book> newBooks = new ArrayList<>(books);
+        sRowExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = Metrics.startTimer();
+                final List<BookRow> oldRows = mSubmittedRows;
+                final List<BookRow> newRows = BookRow.of(newBooks);
+                mSubmittedRows = newRows;
+                sRowsTimer.recordSince(startTime);
 
-        // Get the book object located at this position in the list.
-        Book currentBook = getItem(position);
-
-        // Find the TextView in the list_item.xml layout with the ID book_title, then set the text
-        // of that TextView to be the Title of the current book object.
-        TextView titleTextView = (TextView) listItemView.findViewById(R.id.book_title);
-        titleTextView.setText(currentBook.getTitle());
-
-        // Find the TextView in the list_item.xml layout with the ID book_subtitle, then set the text
-        // of that TextView to be the Subtitle of the current book object. If the object doesn't
-        // have a subtitle, then set the view to be gone. When the subtitle view is gone, set the
-        // title text view to be match parent so that it takes the whole space.
-        TextView subtitleTextView = (TextView) listItemView.findViewById(R.id.book_subtitle);
-        String bookSubtitle = currentBook.getSubtitle();
-        if (bookSubtitle != null && !bookSubtitle.isEmpty()) {
-            subtitleTextView.setText(bookSubtitle);
-            subtitleTextView.setVisibility(View.VISIBLE);
-            minimiseSpace(titleTextView);
+                // Without any old or new rows there's nothing to compare. Otherwise moves are
+                // looked for too, so changing the order just moves the rows.
+                startTime = Metrics.startTimer();
+                final DiffUtil.DiffResult result = oldRows.isEmpty() || newRows.isEmpty() ? null
+                        : DiffUtil.calculateDiff(new RowDiffCallback(oldRows, newRows), true);
+                if (result != null) {
+                    sDiffTimer.recordSince(startTime);
+                }
 
-        } else {
-            subtitleTextView.setVisibility(View.GONE);
-            maximiseSpace(titleTextView);
-        }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        long startTime = Metrics.startTimer();
+                        mRows = newRows;
+                        if (result != null) {
+                            result.dispatchUpdatesTo(BookAdapter.this);
+                        } else if (!oldRows.isEmpty()) {
+                            notifyItemRangeRemoved(0, oldRows.size());
+                        } else if (!newRows.isEmpty()) {
+                            notifyItemRangeInserted(0, newRows.size());
+                        }
+                        sDispatchTimer.recordSince(startTime);
+                    }
+                });
+            }
+        });
+    }
 
-        // Rating TextView is initialised to maximise or minimise space if there is an author or not
-        TextView ratingTextView = (TextView) listItemView.findViewById(R.id.book_rating);
-
-        // Find the TextView in the list_item.xml layout with the ID book_author, then set the text
-        // of that TextView to be the Author of the current book object. If the object doesn't have
-        // an author, then set the view to be gone.
-        TextView authorTextView = (TextView) listItemView.findViewById(R.id.book_author);
-        String bookAuthor = currentBook.getAuthor();
-        if (bookAuthor != null) {
-            authorTextView.setText(bookAuthor);
-            authorTextView.setVisibility(View.VISIBLE);
-            ratingTextView.setGravity(Gravity.BOTTOM | Gravity.RIGHT);
-        } else {
-            authorTextView.setVisibility(View.GONE);
-            ratingTextView.setGravity(Gravity.CENTER_VERTICAL | Gravity.RIGHT);
+    /**
+     * Adds books to the end of the list, such as the next page of results.
+     */
+    public void addBooks(List<Book> books) {
+        if (books.isEmpty()) {
+            return;
         }
+        final List<Book> addedBooks = new ArrayList<>(books);
+        sRowExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int start = mSubmittedRows.size();
+                final List<BookRow> newRows = new ArrayList<>(start + addedBooks.size());
+                newRows.addAll(mSubmittedRows);
+                newRows.addAll(BookRow.of(addedBooks));
+                mSubmittedRows = newRows;
 
-        // Find the TextView in the list_item.xml layout with the ID book_rating, then set the text
-        // of that TextView to be the Rating of the current book object. If the object doesn't have
-        // a rating, then set the view to be gone. When the rating view is gone, set the author
-        // text view to be match parent so that it takes up the whole space, and centre the text.
-        Double rating = currentBook.getRating();
-        if (rating != null) {
-            ratingTextView.setText(formatRating(rating) + " ★");
-            ratingTextView.setVisibility(View.VISIBLE);
-            minimiseSpace(authorTextView);
-            authorTextView.setGravity(Gravity.TOP | Gravity.RIGHT);
-        } else {
-            ratingTextView.setVisibility(View.GONE);
-            maximiseSpace(authorTextView);
-            authorTextView.setGravity(Gravity.CENTER_VERTICAL | Gravity.RIGHT);
-        }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mRows = newRows;
+                        notifyItemRangeInserted(start, addedBooks.size());
+                    }
+                });
+            }
+        });
+    }
 
-        // Find the ImageView in the list_item.xml layout with the ID image_view. Create a String
-        // that holds the imageUrl of the book. If the object doesn't have an image, set the view
-        // to be gone.
-        ImageView imageView = (ImageView) listItemView.findViewById(R.id.image_view);
-        String imageUrl = currentBook.getImageUrl();
-        if (imageUrl != null) {
-            // Using Picasso, download the Image from the internet. Picasso will automatically handle
-            // view recycling and will not re-download the image if it has already been downloaded.
-            Picasso.with(getContext()).load(imageUrl).into(imageView);
-            imageView.setVisibility(View.VISIBLE);
+    /**
+     * @return the book shown at the given position.
+     */
+    public Book getItem(int position) {
+        return mLiveBooks != null ? mLiveBooks.get(position) : mRows.get(position).book;
+    }
+
+    /**
+     * @return the row shown at the given position.
+     */
+    private BookRow getRow(int position) {
+        return mLiveBooks != null
+                ? BookRow.of(mLiveBooks.get(position), mLiveRatingFormat) : mRows.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mLiveBooks != null ? mLiveBooks.size() : mRows.size();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext()).inflate(
+                R.layout.list_item, parent, false);
+        return new ViewHolder(listItemView);
+    }
+
+    /**
+     * Fills a row with the book at the given position. Everything was worked out when the
+     * {@link BookRow} was created, so this only copies it into the views.
+     *
+     * @param holder   The row to fill, with references to its views.
+     * @param position The position in the list of data that should be displayed in the row.
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        long startTime = Metrics.startTimer();
+        BookRow row = getRow(position);
+
+        // Set the title, and the subtitle if the book has one. When the subtitle view is gone,
+        // the title takes up the whole space.
+        holder.titleTextView.setText(row.title);
+        setHeight(holder.titleTextView, row.titleHeight);
+        setText(holder.subtitleTextView, row.subtitle);
+
+        // Set the author and the rating if the book has them. Each of them moves to take up the
+        // space of the other one if it is missing.
+        setText(holder.authorTextView, row.author);
+        setHeight(holder.authorTextView, row.authorHeight);
+        holder.authorTextView.setGravity(row.authorGravity);
+        setText(holder.ratingTextView, row.rating);
+        holder.ratingTextView.setGravity(row.ratingGravity);
+
+        // Show the cover of the book. If the object doesn't have an image, set the view to be gone.
+        CoverLoader coverLoader = CoverLoader.getInstance();
+        if (row.imageUrl != null) {
+            // The loader forgets whatever cover this recycled row was loading before, and won't
+            // download the image again if it has already been downloaded.
+            coverLoader.load(row.imageUrl, holder.imageView, CoverLoader.Quality.THUMBNAIL);
+            holder.imageView.setVisibility(View.VISIBLE);
         } else {
-            imageView.setVisibility(View.GONE);
+            coverLoader.cancel(holder.imageView);
+            holder.imageView.setVisibility(View.GONE);
         }
+        sBindTimer.recordSince(startTime);
+    }
 
-        // Return the whole list item layout (containing 4 TextViews and a ImageView)
-        // so that it can be shown in the ListView
-        return listItemView;
+    /**
+     * Stops loading the cover of a row that has scrolled off the screen, so a cover nobody will
+     * see isn't downloaded.
+     */
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        CoverLoader.getInstance().cancel(holder.imageView);
+    }
 
+    /**
+     * Shows the given text in the view, or hides the view if the text is null.
+     */
+    private static void setText(TextView view, String text) {
+        if (text != null) {
+            view.setText(text);
+            view.setVisibility(View.VISIBLE);
+        } else {
+            view.setVisibility(View.GONE);
+        }
     }
 
     /**
-     * Sets up a view to take the full space available to it by setting it's layout_width and
-     * layout_height properties to MATCH_PARENT.
+     * Sets the layout_height of a view, changing its existing layout params instead of creating
+     * new ones. The view is only laid out again if the height actually changed.
      */
-    private void maximiseSpace(TextView view) {
-        view.setLayoutParams(new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.MATCH_PARENT));
+    private static void setHeight(View view, int height) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (params.height != height) {
+            params.height = height;
+            view.setLayoutParams(params);
+        }
     }
 
     /**
-     * Sets up a view to take the least space as possible while remaining legible by setting it's
-     * layout_width to MATCH_PARENT and layout_height to WRAP_CONTENT.
+     * Holds references to the views of a row, so they are only looked up once when the row is
+     * created, instead of every time it is filled.
      */
-    private void minimiseSpace(TextView view) {
-        view.setLayoutParams(new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView titleTextView;
+        final TextView subtitleTextView;
+        final TextView authorTextView;
+        final TextView ratingTextView;
+        final ImageView imageView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            titleTextView = (TextView) itemView.findViewById(R.id.book_title);
+            subtitleTextView = (TextView) itemView.findViewById(R.id.book_subtitle);
+            authorTextView = (TextView) itemView.findViewById(R.id.book_author);
+            ratingTextView = (TextView) itemView.findViewById(R.id.book_rating);
+            imageView = (ImageView) itemView.findViewById(R.id.image_view);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            // The row may be on its way out of the list, in which case it has no position.
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && mListener != null) {
+                mListener.onBookClick(getItem(position));
+            }
+        }
     }
 
     /**
-     * Formats the rating to 2 decimal places.
+     * Tells {@link DiffUtil} which rows show the same book, and whether a row looks any different.
      */
-    private String formatRating(Double rating) {
+    private static class RowDiffCallback extends DiffUtil.Callback {
+        private final List<BookRow> mOldRows;
+        private final List<BookRow> mNewRows;
+
+        RowDiffCallback(List<BookRow> oldRows, List<BookRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
 
-        // Create an instance of the DecimalFormat class to format our doubles to 2 decimal places
-        // (e.g. from 2.76 to 2.8)
-        DecimalFormat formatter = new DecimalFormat("0.0");
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
 
-        // Format and return the rating from the current Book according to the formatter
-        return formatter.format(rating);
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).isSameBook(mNewRows.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).looksTheSame(mNewRows.get(newItemPosition));
+        }
     }
 }
@@ -0,0 +1,650 @@
+package com.example.talha.booksearch;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full-text index, kept on the device, of every book the app has downloaded. It lets the app
+ * search the books it has seen before without a network connection.
+ *
+ * The index is an inverted index: for every word, it keeps the list of books the word appears in
+ * (its "postings"). Postings are stored compactly as variable-length integers: the distance to
+ * the previous book in the list, followed by how often the word appears in the book. Words in the
+ * title count more than words in the subtitle or author, which count more than words in the
+ * description. Results are ranked with BM25, the same scoring most search engines start from.
+ *
+ * The books themselves are stored with {@link BookCodec}. The index is capped in size, and once
+ * it is full, the books that were seen least recently are evicted first. Evicted books are only
+ * marked as deleted; their postings are cleaned up when the index is compacted, which happens once
+ * enough of it is deleted and before it is saved.
+ *
+ * The index is saved to a single file a few seconds after it changes, and loaded the first time
+ * it is used. Both happen off the main thread.
+ */
+public final class BookIndex {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BookIndex.class.getSimpleName();
+
+    /** Marks the start of the index file, followed by the version of its format */
+    private static final int MAGIC = 0x42534958;
+    private static final int VERSION = 1;
+
+    /** How much each word counts, depending on which field it is in */
+    private static final int TITLE_WEIGHT = 3;
+    private static final int SUBTITLE_WEIGHT = 2;
+    private static final int AUTHOR_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    /** The usual BM25 parameters, for how quickly repeated words stop counting and for length */
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    /** How long to wait after a change before the index is saved, so changes are saved together */
+    private static final long SAVE_DELAY_MILLIS = 5000;
+
+    /** Words too common to be worth indexing */
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it", "of",
+            "on", "or", "that", "the", "this", "to", "was", "with"));
+
+    /** The index shared by the whole app, or null if it hasn't been installed */
+    private static BookIndex sInstance;
+
+    /** The file the index is saved in, and the most bytes it may take up */
+    private final File mFile;
+    private final long mMaxSize;
+
+    /** Loads, updates and saves the index in the background, one task at a time */
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    /** The encoded books, by document id. Books that were deleted are null. */
+    private final List<byte[]> mDocs = new ArrayList<>();
+
+    /** The weighted number of words in each book, and the bytes of postings each book added */
+    private int[] mDocLengths = new int[64];
+    private int[] mDocPostingSizes = new int[64];
+
+    /** The document id of every book, by volume id, in order from least to most recently seen */
+    private final LinkedHashMap<String, Integer> mKeys = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The postings of every word */
+    private final Map<String, Postings> mPostings = new HashMap<>();
+
+    /** Totals for the books that aren't deleted, used for ranking and for the size limit */
+    private int mLiveDocs;
+    private long mTotalLength;
+    private long mLiveSize;
+
+    /** Number of deleted books that still have postings */
+    private int mDeletedDocs;
+
+    private boolean mLoaded;
+    private boolean mSaveScheduled;
+
+    private BookIndex(File file, long maxSize) {
+        mFile = file;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Sets up the index shared by the whole app. The file isn't read until the index is first
+     * used, so this is safe to call on the main thread.
+     *
+     * @param file    is the file the index is saved in.
+     * @param maxSize is roughly the most bytes the index may take up, in memory and on disk.
+     */
+    public static synchronized void install(File file, long maxSize) {
+        sInstance = new BookIndex(file, maxSize);
+    }
+
+    /**
+     * @return the index shared by the whole app, or null if there isn't one.
+     */
+    public static synchronized BookIndex getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Adds books to the index, or marks them as seen if they are already in it. This happens in
+     * the background, so it returns straight away.
+     */
+    public void addAll(List<Book> books) {
+        final List<Book> copy = new ArrayList<>(books);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BookIndex.this) {
+                    ensureLoaded();
+                    for (Book book : copy) {
+                        add(book);
+                    }
+                    trimToSize();
+                    scheduleSave();
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds the description of a book that is already in the index. Search results don't include
+     * descriptions, so they are added when the detail screen loads them. This happens in the
+     * background, so it returns straight away.
+     */
+    public void addDescription(final String volumeId, final String description) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BookIndex.this) {
+                    ensureLoaded();
+                    Integer docId = mKeys.get(volumeId);
+                    Book book = docId != null ? decode(docId) : null;
+                    if (book == null || description.equals(book.getDescription())) {
+                        return;
+                    }
+                    add(withDescription(book, description));
+                    trimToSize();
+                    scheduleSave();
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds a book the index has seen by its key, see {@link Book#getKey()}. This may read the
+     * index from disk, so it must not be called on the main thread.
+     *
+     * @return the book, with its description if one was loaded, or null if it isn't indexed.
+     */
+    public synchronized Book get(String key) {
+        ensureLoaded();
+        Integer docId = mKeys.get(key);
+        return docId != null ? decode(docId) : null;
+    }
+
+    /**
+     * Searches the index. This may have to read the index from disk first, so it must not be
+     * called on the main thread.
+     *
+     * @param query is the text to search for.
+     * @param limit is the most books to return.
+     * @return the best matching books, best first. The list is empty if nothing matches.
+     */
+    public synchronized List<Book> search(String query, int limit) {
+        long startTime = System.nanoTime();
+        ensureLoaded();
+
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty() || mLiveDocs == 0) {
+            return new ArrayList<>();
+        }
+
+        int docCount = mDocs.size();
+        float[] scores = new float[docCount];
+        int[] matchedTerms = new int[docCount];
+        float averageLength = (float) mTotalLength / mLiveDocs;
+
+        for (String term : terms) {
+            Postings postings = mPostings.get(term);
+            if (postings == null) {
+                continue;
+            }
+            // Words that appear in fewer books tell us more about a match.
+            float idf = (float) Math.log(1 + (mLiveDocs - postings.mDocCount + 0.5)
+                    / (postings.mDocCount + 0.5));
+
+            int position = 0;
+            int docId = 0;
+            while (position < postings.mLength) {
+                int delta = postings.readVarint(position);
+                position += varintSize(delta);
+                int frequency = postings.readVarint(position);
+                position += varintSize(frequency);
+                docId += delta;
+
+                if (mDocs.get(docId) == null) {
+                    continue;
+                }
+                float lengthRatio = mDocLengths[docId] / averageLength;
+                scores[docId] += idf * frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * lengthRatio));
+                matchedTerms[docId]++;
+            }
+        }
+
+        // Books that match more of the words come first, so scale each score by the share of
+        // words it matched.
+        List<Integer> matches = new ArrayList<>();
+        for (int docId = 0; docId < docCount; docId++) {
+            if (scores[docId] > 0) {
+                scores[docId] *= (float) matchedTerms[docId] / terms.size();
+                matches.add(docId);
+            }
+        }
+        final float[] finalScores = scores;
+        Collections.sort(matches, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(finalScores[b], finalScores[a]);
+            }
+        });
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < matches.size() && books.size() < limit; i++) {
+            Book book = decode(matches.get(i));
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        Log.d(LOG_TAG, "Found " + matches.size() + " of " + mLiveDocs + " books for \""
+                + query + "\" in " + (System.nanoTime() - startTime) / 1000 + " us");
+        return books;
+    }
+
+    /**
+     * Splits text into the words that are indexed: lower case, without accents, and without
+     * words that are too short or too common to be useful.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{Mn}+", "")
+                .toLowerCase(Locale.ROOT);
+
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean isWordChar = i < normalized.length()
+                    && Character.isLetterOrDigit(normalized.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                String token = normalized.substring(start, i);
+                if (token.length() > 1 && !STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Adds a book, replacing the copy that is already in the index. A search result has no
+     * description, so if the copy in the index has one, it is kept.
+     */
+    private void add(Book book) {
+        String key = book.getKey();
+        Integer oldDocId = mKeys.get(key);
+        if (oldDocId != null) {
+            Book oldBook = decode(oldDocId);
+            if (oldBook != null && !book.hasDescription() && oldBook.hasDescription()) {
+                book = withDescription(book, oldBook.getDescription());
+            }
+        }
+
+        byte[] data = BookCodec.encode(book);
+        if (oldDocId != null) {
+            if (Arrays.equals(data, mDocs.get(oldDocId))) {
+                // Nothing changed. Looking the key up already marked it as recently seen.
+                return;
+            }
+            delete(oldDocId);
+        }
+        addDocument(key, data, book);
+    }
+
+    /**
+     * Gives the book a new document id and adds its words to the postings.
+     */
+    private void addDocument(String key, byte[] data, Book book) {
+        int docId = mDocs.size();
+        mDocs.add(data);
+        if (docId == mDocLengths.length) {
+            mDocLengths = Arrays.copyOf(mDocLengths, docId * 2);
+            mDocPostingSizes = Arrays.copyOf(mDocPostingSizes, docId * 2);
+        }
+
+        // Count every word, weighted by the field it is in.
+        Map<String, Integer> frequencies = new HashMap<>();
+        addTokens(frequencies, book.getTitle(), TITLE_WEIGHT);
+        addTokens(frequencies, book.getSubtitle(), SUBTITLE_WEIGHT);
+        addTokens(frequencies, book.getAuthor(), AUTHOR_WEIGHT);
+        addTokens(frequencies, book.getDescription(), DESCRIPTION_WEIGHT);
+
+        int length = 0;
+        int postingSize = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            Postings postings = mPostings.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                mPostings.put(entry.getKey(), postings);
+            }
+            postingSize += postings.add(docId, entry.getValue());
+            length += entry.getValue();
+        }
+
+        mDocLengths[docId] = length;
+        mDocPostingSizes[docId] = postingSize;
+        mKeys.put(key, docId);
+        mLiveDocs++;
+        mTotalLength += length;
+        mLiveSize += data.length + postingSize;
+    }
+
+    private static void addTokens(Map<String, Integer> frequencies, String text, int weight) {
+        for (String token : tokenize(text)) {
+            Integer frequency = frequencies.get(token);
+            frequencies.put(token, frequency == null ? weight : frequency + weight);
+        }
+    }
+
+    /**
+     * Marks a book as deleted. Its postings stay until the index is compacted.
+     */
+    private void delete(int docId) {
+        byte[] data = mDocs.set(docId, null);
+        if (data == null) {
+            return;
+        }
+        mLiveDocs--;
+        mTotalLength -= mDocLengths[docId];
+        mLiveSize -= data.length + mDocPostingSizes[docId];
+        mDeletedDocs++;
+    }
+
+    /**
+     * Evicts the least recently seen books until the index fits in its maximum size, and
+     * compacts it once a quarter of it is deleted.
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Integer>> iterator = mKeys.entrySet().iterator();
+        while (mLiveSize > mMaxSize && iterator.hasNext()) {
+            delete(iterator.next().getValue());
+            iterator.remove();
+        }
+        if (mDeletedDocs > mLiveDocs / 4) {
+            compact();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the books that aren't deleted, dropping the postings of deleted
+     * books. The books are renumbered from least to most recently seen, so the order they are
+     * saved in is also the order they were seen in.
+     */
+    private void compact() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(mKeys.entrySet());
+        List<byte[]> docs = new ArrayList<>(mDocs);
+        clear();
+        for (Map.Entry<String, Integer> entry : entries) {
+            byte[] data = docs.get(entry.getValue());
+            try {
+                addDocument(entry.getKey(), data, BookCodec.decode(data));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Dropping a damaged book from the index", e);
+            }
+        }
+    }
+
+    private void clear() {
+        mDocs.clear();
+        mKeys.clear();
+        mPostings.clear();
+        mLiveDocs = 0;
+        mTotalLength = 0;
+        mLiveSize = 0;
+        mDeletedDocs = 0;
+    }
+
+    /**
+     * Saves the index a few seconds from now, unless a save is already waiting.
+     */
+    private void scheduleSave() {
+        if (mSaveScheduled) {
+            return;
+        }
+        mSaveScheduled = true;
+        // Wait a little first, so more changes can arrive before the whole index is written.
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BookIndex.this) {
+                    mSaveScheduled = false;
+                    save();
+                }
+            }
+        }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the compacted index to a temporary file and then moves it into place, so a crash
+     * never leaves a half-written index behind.
+     */
+    private void save() {
+        if (mDeletedDocs > 0) {
+            compact();
+        }
+        long startTime = System.nanoTime();
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            File directory = mFile.getParentFile();
+            if (directory != null && !directory.isDirectory()) {
+                directory.mkdirs();
+            }
+            out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            // The books, from least to most recently seen, which after compacting is the same
+            // as their document ids.
+            out.writeInt(mKeys.size());
+            for (Map.Entry<String, Integer> entry : mKeys.entrySet()) {
+                int docId = entry.getValue();
+                byte[] data = mDocs.get(docId);
+                out.writeUTF(entry.getKey());
+                out.writeInt(mDocLengths[docId]);
+                out.writeInt(mDocPostingSizes[docId]);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+
+            out.writeInt(mPostings.size());
+            for (Map.Entry<String, Postings> entry : mPostings.entrySet()) {
+                Postings postings = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(postings.mDocCount);
+                out.writeInt(postings.mLastDocId);
+                out.writeInt(postings.mLength);
+                out.write(postings.mData, 0, postings.mLength);
+            }
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(mFile)) {
+                throw new IOException("Could not rename " + tempFile + " to " + mFile);
+            }
+            Log.d(LOG_TAG, "Saved " + mLiveDocs + " books and " + mPostings.size() + " words ("
+                    + mFile.length() + " bytes) in "
+                    + (System.nanoTime() - startTime) / 1000000 + " ms");
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem saving the index", e);
+            tempFile.delete();
+        } finally {
+            Utils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Reads the saved index, the first time the index is used.
+     */
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        long startTime = System.nanoTime();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an index file, or an old version");
+            }
+
+            int docCount = in.readInt();
+            mDocLengths = new int[Math.max(docCount, 64)];
+            mDocPostingSizes = new int[mDocLengths.length];
+            for (int docId = 0; docId < docCount; docId++) {
+                String key = in.readUTF();
+                int length = in.readInt();
+                int postingSize = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+
+                mDocs.add(data);
+                mKeys.put(key, docId);
+                mDocLengths[docId] = length;
+                mDocPostingSizes[docId] = postingSize;
+                mLiveDocs++;
+                mTotalLength += length;
+                mLiveSize += data.length + postingSize;
+            }
+
+            int termCount = in.readInt();
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                Postings postings = new Postings();
+                postings.mDocCount = in.readInt();
+                postings.mLastDocId = in.readInt();
+                postings.mLength = in.readInt();
+                postings.mData = new byte[Math.max(postings.mLength, 8)];
+                in.readFully(postings.mData, 0, postings.mLength);
+                mPostings.put(term, postings);
+            }
+            Log.d(LOG_TAG, "Loaded " + mLiveDocs + " books and " + termCount + " words in "
+                    + (System.nanoTime() - startTime) / 1000000 + " ms");
+        } catch (FileNotFoundException e) {
+            // Nothing has been indexed yet.
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem loading the index, starting again", e);
+            clear();
+            mFile.delete();
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return the book with the given document id, or null if it is deleted or damaged.
+     */
+    private Book decode(int docId) {
+        byte[] data = mDocs.get(docId);
+        if (data == null) {
+            return null;
+        }
+        try {
+            return BookCodec.decode(data);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem decoding a book from the index", e);
+            return null;
+        }
+    }
+
+    private static Book withDescription(Book book, String description) {
+        return new Book(book.getId(), book.getTitle(), book.getSubtitle(), description,
+                book.getAuthor(), book.getRating(), book.getUrl(), book.getPreviewUrl(),
+                book.getImageUrls(), book.getLocale(), book.getPrice());
+    }
+
+    /**
+     * @return the number of bytes the given number takes up as a variable-length integer.
+     */
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * The books a single word appears in, as pairs of variable-length integers: the document id
+     * relative to the previous one, and the weighted number of times the word appears. Document
+     * ids only ever grow, so the differences stay small and most numbers take up a single byte.
+     */
+    private static final class Postings {
+        byte[] mData = new byte[8];
+        int mLength;
+        int mLastDocId;
+        int mDocCount;
+
+        /**
+         * @return the number of bytes that were added.
+         */
+        int add(int docId, int frequency) {
+            int delta = mDocCount == 0 ? docId : docId - mLastDocId;
+            int size = varintSize(delta) + varintSize(frequency);
+            if (mLength + size > mData.length) {
+                mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mLength + size));
+            }
+            writeVarint(delta);
+            writeVarint(frequency);
+            mLastDocId = docId;
+            mDocCount++;
+            return size;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                mData[mLength++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mData[mLength++] = (byte) value;
+        }
+
+        int readVarint(int position) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mData[position++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
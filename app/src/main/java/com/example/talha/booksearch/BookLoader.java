@@ -3,6 +3,7 @@ package com.example.talha.booksearch;
 import android.content.AsyncTaskLoader;
 import android.content.Context;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,23 +15,91 @@ public class BookLoader extends AsyncTaskLoader<List<Book>> {
     /** Tag for log messages */
     private static final String LOG_TAG = BookLoader.class.getName();
 
-    /** Query URL */
+    /**
+     * Metrics for each load: how long it took on the background thread, and where its books
+     * came from. Fetched books may still come from the HTTP cache. See {@link Metrics}.
+     */
+    private static final Metrics.Histogram sLoadTimer = Metrics.timer("search.load");
+    private static final Metrics.Counter sFromMemory = Metrics.counter("search.from_memory");
+    private static final Metrics.Counter sFromStaleCache = Metrics.counter("search.from_stale");
+    private static final Metrics.Counter sFromIndex = Metrics.counter("search.from_index");
+    private static final Metrics.Counter sFetched = Metrics.counter("search.fetched");
+
+    /** The search being loaded, and the URL it is loaded from */
+    private BookQuery mQuery;
     private String mUrl;
 
+    /**
+     * Whether there is no connection, so the search is answered from the {@link BookIndex} only,
+     * and whether matching books from the index should be shown while the network loads.
+     */
+    private final boolean mOffline;
+    private final boolean mShowIndexFirst;
+
+    /** True when the last result came from the index rather than from the API */
+    private volatile boolean mLocalResult;
+
+    /** The books that were last delivered, so the same list isn't delivered twice */
+    private volatile List<Book> mBooks;
+
+    /** The books from the index that were shown while the network loaded, if any */
+    private volatile List<Book> mIndexBooks;
+
+    /**
+     * True when the last result came from a stale cached response (or from the index), so the
+     * next load should ask the server for the real results.
+     */
+    private volatile boolean mRevalidate;
+
     /**
      * Constructs a new {@link BookLoader}.
      *
-     * @param context of the activity
-     * @param url to load data from
+     * @param context        of the activity
+     * @param query          is the search to load
+     * @param offline        is true if there is no connection, so only the index is searched
+     * @param showIndexFirst is true if books from the index may be shown while the network loads
      */
-    public BookLoader(Context context, String url) {
+    public BookLoader(Context context, BookQuery query, boolean offline,
+                      boolean showIndexFirst) {
         super(context);
-        mUrl = url;
+        mQuery = query;
+        mUrl = query.toUrl();
+        mOffline = offline;
+        mShowIndexFirst = showIndexFirst;
+    }
+
+    /**
+     * @return the search this loader loads.
+     */
+    public BookQuery getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * @return true if the search is answered from the books saved on the device only.
+     */
+    public boolean isOffline() {
+        return mOffline;
+    }
+
+    /**
+     * @return true if the last result came from the books saved on the device rather than from
+     * the API, so it isn't a page of API results.
+     */
+    public boolean isLocalResult() {
+        return mLocalResult;
     }
 
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        // If we already have a result (for example after the device was rotated), deliver it
+        // straight away instead of loading it again.
+        if (mBooks != null) {
+            super.deliverResult(mBooks);
+        }
+        if (mBooks == null || mRevalidate || takeContentChanged()) {
+            forceLoad();
+        }
     }
 
     /**
@@ -38,12 +107,128 @@ public class BookLoader extends AsyncTaskLoader<List<Book>> {
      */
     @Override
     public List<Book> loadInBackground() {
-        if (mUrl == null) {
+        long startTime = Metrics.startTimer();
+        try {
+            return load();
+        } finally {
+            sLoadTimer.recordSince(startTime);
+        }
+    }
+
+    /**
+     * Does the work of {@link #loadInBackground()}.
+     */
+    private List<Book> load() {
+        if (mQuery == null) {
             return null;
         }
+        mLocalResult = false;
+
+        // Without a connection, the books saved on the device are all we can search.
+        if (mOffline) {
+            mLocalResult = true;
+            sFromIndex.increment();
+            return searchIndex();
+        }
+
+        // If the last result came from a stale cache entry, ask the server whether the books
+        // have changed. If they haven't, hand back the same list so nothing is delivered.
+        if (mRevalidate) {
+            mRevalidate = false;
+            boolean showingIndexBooks = mBooks != null && mBooks == mIndexBooks;
+            List<Book> books;
+            if (showingIndexBooks) {
+                // The books on screen came from the index, so load the real results now.
+                books = BookResultCache.getInstance().getOrFetch(mQuery);
+            } else {
+                books = Utils.revalidateBookData(mUrl);
+                if (books != null) {
+                    BookResultCache.getInstance().put(mQuery, books);
+                }
+            }
+            if (books == null) {
+                mLocalResult = showingIndexBooks;
+                return mBooks;
+            }
+            return books;
+        }
+
+        // Going back to a query that was searched for a moment ago is answered from memory.
+        BookResultCache resultCache = BookResultCache.getInstance();
+        List<Book> cachedBooks = resultCache.get(mQuery);
+        if (cachedBooks != null) {
+            sFromMemory.increment();
+            return cachedBooks;
+        }
+
+        // Stale-while-revalidate: if there is a cached response that is allowed to be shown while
+        // it is being checked, show it right away and check it in the next load.
+        if (mBooks == null) {
+            List<Book> staleBooks = Utils.fetchStaleBookData(mUrl);
+            if (staleBooks != null) {
+                mRevalidate = true;
+                sFromStaleCache.increment();
+                return staleBooks;
+            }
+        }
+
+        // Show the matching books saved on the device while the network loads. The next load
+        // replaces them with the results from the API.
+        if (mBooks == null && mShowIndexFirst) {
+            List<Book> indexBooks = searchIndex();
+            if (!indexBooks.isEmpty()) {
+                mIndexBooks = indexBooks;
+                mLocalResult = true;
+                mRevalidate = true;
+                sFromIndex.increment();
+                return indexBooks;
+            }
+        }
 
         // Perform the network request, parse the response, and extract a list of books.
-        return Utils.fetchBookData(mUrl);
+        sFetched.increment();
+        return resultCache.getOrFetch(mQuery);
+    }
+
+    /**
+     * @return the books saved on the device that match the search, which may be empty.
+     */
+    private List<Book> searchIndex() {
+        BookIndex index = BookIndex.getInstance();
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        return index.search(mQuery.getQuery(), mQuery.getMaxResults());
+    }
+
+    /**
+     * Called on the main thread with each result. A result is only passed on if it is different
+     * from the one that was last delivered, so a revalidation that found no changes doesn't
+     * redraw the list.
+     */
+    @Override
+    public void deliverResult(List<Book> books) {
+        if (isReset()) {
+            return;
+        }
+        boolean changed = books != mBooks;
+        mBooks = books;
+        if (isStarted() && changed) {
+            super.deliverResult(books);
+        }
+
+        // The stale result is on screen, so now check it against the server.
+        if (mRevalidate && isStarted()) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        cancelLoad();
+        mBooks = null;
+        mIndexBooks = null;
+        mRevalidate = false;
     }
 
 }
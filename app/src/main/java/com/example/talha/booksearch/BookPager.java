@@ -0,0 +1,259 @@
+package com.example.talha.booksearch;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the pages of search results after the first one, so the user can keep scrolling past the
+ * 40 books the API returns for a single request.
+ *
+ * The first page comes from the {@link BookLoader}. After that, the pager keeps a few pages
+ * requested ahead of the position the user has scrolled to. Those pages are downloaded in
+ * parallel, but always added to the list in order, and books that already appeared on an earlier
+ * page are dropped.
+ *
+ * The pager is kept across configuration changes, so the pages that were loaded aren't lost
+ * when the device is rotated. All of its methods must be called on the main thread.
+ */
+public class BookPager {
+
+    /**
+     * Listens for books being added to the end of the list.
+     */
+    public interface Listener {
+        void onBooksAppended(List<Book> books);
+    }
+
+    /** How many pages ahead of the user's position are requested, and downloaded at once */
+    private static final int PREFETCH_PAGES = 3;
+
+    /** How long to wait before trying a page again after it failed to load */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    /** How long a download thread waits for another page before it ends */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Downloads the pages in the background. Its threads end once they have been idle for a
+     * while, so none are left behind if the pager is never shut down.
+     */
+    private final ExecutorService mExecutor = createExecutor();
+
+    /** Used to hand downloaded pages back to the main thread */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** The search being paged through, and its first page */
+    private BookQuery mQuery;
+    private List<Book> mFirstPage;
+
+    /** Every book that has been added to the list so far, and their ids */
+    private final List<Book> mBooks = new ArrayList<>();
+    private final Set<String> mSeenIds = new HashSet<>();
+
+    /** Pages that finished downloading but can't be added until the pages before them arrive */
+    private final SparseArray<List<Book>> mFinishedPages = new SparseArray<>();
+
+    /** The next page to add to the list, and the next page to request */
+    private int mNextPageToAppend;
+    private int mNextPageToRequest;
+
+    /** The last page there is. Only known once a page comes back with fewer books than asked for. */
+    private int mLastPage;
+
+    /** Time before which failed pages aren't requested again */
+    private long mRetryAfter;
+
+    /**
+     * Incremented for every new search, so pages still downloading for an old search are ignored
+     * when they arrive.
+     */
+    private int mGeneration;
+
+    private Listener mListener;
+
+    /**
+     * Sets the listener that is told about new books. Pass null to stop listening, for example
+     * when the activity is destroyed.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Forgets the current search, for example because a new one is starting.
+     */
+    public void reset() {
+        mGeneration++;
+        mQuery = null;
+        mFirstPage = null;
+        mBooks.clear();
+        mSeenIds.clear();
+        mFinishedPages.clear();
+        mNextPageToAppend = 0;
+        mNextPageToRequest = 0;
+        mLastPage = 0;
+        mRetryAfter = 0;
+    }
+
+    /**
+     * Starts paging through a search, given its first page.
+     *
+     * @param query is the search that was made.
+     * @param books is the first page of results, or null if it failed to load.
+     * @param hasMorePages is false if the books aren't a page of API results, for example
+     *                     because they were found in the {@link BookIndex} while offline.
+     * @return false if this first page is already being paged through, for example because the
+     * loader delivered it again after the device was rotated.
+     */
+    public boolean setFirstPage(BookQuery query, List<Book> books, boolean hasMorePages) {
+        if (books != null && books == mFirstPage) {
+            return false;
+        }
+        reset();
+        mQuery = query;
+        mFirstPage = books;
+        if (books != null) {
+            append(books);
+            mNextPageToAppend = 1;
+            mNextPageToRequest = 1;
+            // A short first page means there are no more pages.
+            mLastPage = !hasMorePages || books.size() < query.getMaxResults()
+                    ? 0 : Integer.MAX_VALUE;
+        }
+        return true;
+    }
+
+    /**
+     * @return every book in the list so far, in order.
+     */
+    public List<Book> getBooks() {
+        return mBooks;
+    }
+
+    /**
+     * Called whenever the list is scrolled. Requests pages until there are
+     * {@link #PREFETCH_PAGES} pages of books beyond the given position.
+     *
+     * @param lastVisiblePosition is the position of the last book on screen.
+     */
+    public void onScrolled(int lastVisiblePosition) {
+        if (mQuery == null || SystemClock.uptimeMillis() < mRetryAfter) {
+            return;
+        }
+        int pageSize = mQuery.getMaxResults();
+        int wantedBooks = lastVisiblePosition + 1 + PREFETCH_PAGES * pageSize;
+        while (mNextPageToRequest <= mLastPage && mNextPageToRequest * pageSize < wantedBooks) {
+            requestPage(mNextPageToRequest++);
+        }
+    }
+
+    /**
+     * Stops downloading pages for good. Called when the activity is finishing.
+     */
+    public void shutdown() {
+        reset();
+        mExecutor.shutdownNow();
+    }
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PREFETCH_PAGES, PREFETCH_PAGES,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "BookPager");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void requestPage(final int page) {
+        final int generation = mGeneration;
+        final BookQuery pageQuery = mQuery.forPage(page);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Book> books = BookResultCache.getInstance().getOrFetch(pageQuery);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(generation, page, books);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread when a page has finished downloading. Adds it, and any pages
+     * after it that were waiting, to the list.
+     */
+    private void onPageLoaded(int generation, int page, List<Book> books) {
+        if (generation != mGeneration || page > mLastPage) {
+            return;
+        }
+
+        if (books == null) {
+            // The page failed to load. Request it (and anything after it that isn't in yet)
+            // again the next time the list is scrolled, after a short wait.
+            mNextPageToRequest = Math.min(mNextPageToRequest, page);
+            mRetryAfter = SystemClock.uptimeMillis() + RETRY_DELAY_MILLIS;
+            return;
+        }
+
+        if (books.size() < mQuery.getMaxResults()) {
+            mLastPage = page;
+        }
+        mFinishedPages.put(page, books);
+
+        List<Book> newBooks = new ArrayList<>();
+        List<Book> nextPage;
+        while (mNextPageToAppend <= mLastPage
+                && (nextPage = mFinishedPages.get(mNextPageToAppend)) != null) {
+            mFinishedPages.remove(mNextPageToAppend);
+            newBooks.addAll(append(nextPage));
+            mNextPageToAppend++;
+        }
+        if (!newBooks.isEmpty() && mListener != null) {
+            mListener.onBooksAppended(newBooks);
+        }
+    }
+
+    /**
+     * Adds a page of books to the end of the list, leaving out any book that is already in it.
+     *
+     * @return the books that were added.
+     */
+    private List<Book> append(List<Book> page) {
+        List<Book> added = new ArrayList<>(page.size());
+        for (Book book : page) {
+            // Books without an id can't be told apart, so they are always added.
+            String id = book.getId();
+            if (id == null || mSeenIds.add(id)) {
+                mBooks.add(book);
+                added.add(book);
+            }
+        }
+        return added;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.talha.booksearch;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.Process;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the covers and descriptions of the top results in the background, so that when the user
+ * opens one of them the detail screen can show everything straight away.
+ *
+ * Prefetching must never get in the way of what the user is actually looking at:
+ * <ul>
+ *     <li>Covers are downloaded by the {@link CoverLoader} on its own low priority thread, so any
+ *     image the user is waiting for is downloaded first.</li>
+ *     <li>Descriptions are fetched one at a time on a background priority thread. If the user
+ *     opens a book whose description is being prefetched, the detail screen joins that request
+ *     instead of making its own.</li>
+ *     <li>Everything that hasn't started yet is cancelled when the user leaves the screen, or
+ *     when the device switches to a metered network such as mobile data.</li>
+ * </ul>
+ * All methods must be called on the main thread.
+ */
+public class BookPrefetcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BookPrefetcher.class.getSimpleName();
+
+    /** How many of the top results are prefetched */
+    private static final int PREFETCH_COUNT = 6;
+
+    /** Tag given to every cover prefetched by the prefetcher, so they can be cancelled */
+    private final Object mCoverTag = new Object();
+
+    private final Context mContext;
+    private final ConnectivityManager mConnectivityManager;
+
+    /** How long the prefetch thread waits for more work before it ends */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Runs the description requests, one at a time. It is shared by every prefetcher, since a new
+     * one is created every time MainActivity is, such as when the device is rotated. Its thread
+     * ends once it has been idle for a while, so no thread is left behind.
+     */
+    private static final ExecutorService sExecutor = createExecutor();
+
+    /** The description requests that haven't finished yet */
+    private final List<Future<?>> mPending = new ArrayList<>();
+
+    /** Stops prefetching if the device switches to a metered network */
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (isMetered()) {
+                Log.d(LOG_TAG, "Network became metered, stopping prefetch");
+                cancel();
+            }
+        }
+    };
+    private boolean mReceiverRegistered;
+
+    public BookPrefetcher(Context context) {
+        mContext = context.getApplicationContext();
+        mConnectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Starts prefetching the covers and descriptions of the first books in the list. Whatever
+     * was still being prefetched for an older list is cancelled first.
+     */
+    public void prefetch(List<Book> books) {
+        cancel();
+        if (books == null || books.isEmpty() || isMetered()) {
+            return;
+        }
+
+        CoverLoader coverLoader = CoverLoader.getInstance();
+        int count = Math.min(books.size(), PREFETCH_COUNT);
+        for (int i = 0; i < count; i++) {
+            Book book = books.get(i);
+            // The list loads the small cover itself, so prefetch the large one the detail
+            // screen shows.
+            String imageUrl = book.getLargestImageUrl();
+            if (imageUrl != null) {
+                coverLoader.prefetch(imageUrl, mCoverTag);
+            }
+            if (!book.hasDescription() && book.getId() != null) {
+                final String volumeId = book.getId();
+                mPending.add(sExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // This fills the HTTP cache, where the detail screen will find it.
+                        Utils.fetchBookDescription(volumeId);
+                    }
+                }));
+            }
+        }
+
+        mContext.registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        mReceiverRegistered = true;
+    }
+
+    /**
+     * Cancels everything that hasn't started yet. A description request that is already running
+     * is left to finish, so a detail screen waiting on it still gets its result.
+     */
+    public void cancel() {
+        CoverLoader.getInstance().cancelPrefetches(mCoverTag);
+        for (Future<?> future : mPending) {
+            future.cancel(false);
+        }
+        mPending.clear();
+        if (mReceiverRegistered) {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+            mReceiverRegistered = false;
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "BookPrefetcher");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return true if the active network may cost the user money, such as mobile data.
+     */
+    private boolean isMetered() {
+        return mConnectivityManager == null
+                || ConnectivityManagerCompat.isActiveNetworkMetered(mConnectivityManager);
+    }
+}
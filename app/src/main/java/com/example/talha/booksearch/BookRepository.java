@@ -0,0 +1,103 @@
+package com.example.talha.booksearch;
+
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * A process-wide, in-memory store of the books the user has opened, found by their key (see
+ * {@link Book#getKey()}).
+ *
+ * Screens hand a book to each other by putting only its key in the Intent, instead of parceling
+ * the whole book. A parcel is copied several times on its way to the new Activity, which made
+ * opening a book with a long description noticeably slower.
+ *
+ * If Android killed the app while the detail screen was open, the store is empty when the screen
+ * is re-created. {@link #load(String)} then rebuilds the book from the shelf, the offline index
+ * or, as a last resort, the Google Books API.
+ */
+public final class BookRepository {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookRepository.class.getSimpleName();
+
+    /** The most memory the stored books may take up, in bytes */
+    private static final int MAX_SIZE =
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 64, 1024 * 1024);
+
+    /** The store shared by the whole app */
+    private static final BookRepository sInstance = new BookRepository();
+
+    /** The stored books, from least to most recently used */
+    private final LruCache<String, Book> mBooks;
+
+    private BookRepository() {
+        mBooks = new LruCache<String, Book>(MAX_SIZE) {
+            @Override
+            protected int sizeOf(String key, Book book) {
+                return book.estimateSize();
+            }
+        };
+    }
+
+    /**
+     * @return the store shared by the whole app.
+     */
+    public static BookRepository getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Stores a book, replacing any book with the same key.
+     *
+     * @return the key to put in the Intent.
+     */
+    public String put(Book book) {
+        String key = book.getKey();
+        mBooks.put(key, book);
+        return key;
+    }
+
+    /**
+     * @return the stored book with the given key, or null if it isn't in memory. This never
+     * reads the disk, so it may be called on the main thread.
+     */
+    public Book get(String key) {
+        return mBooks.get(key);
+    }
+
+    /**
+     * Finds the book with the given key, rebuilding it if it isn't in memory any more. This may
+     * read the disk and use the network, so it must not be called on the main thread.
+     *
+     * @return the book, or null if it couldn't be found anywhere.
+     */
+    public Book load(String key) {
+        Book book = mBooks.get(key);
+        if (book != null) {
+            return book;
+        }
+
+        // A saved book, or one the index has seen, can be rebuilt without a connection.
+        BookShelf shelf = BookShelf.getInstance();
+        if (shelf != null) {
+            book = shelf.get(key);
+        }
+        BookIndex index = BookIndex.getInstance();
+        if (book == null && index != null) {
+            book = index.get(key);
+        }
+
+        // Only books with a volume id can be asked for again. A book without one is keyed by its
+        // link instead.
+        if (book == null && !key.contains("://")) {
+            book = Utils.fetchBook(key);
+        }
+
+        if (book != null) {
+            put(book);
+        } else {
+            Log.w(LOG_TAG, "Couldn't rebuild book " + key);
+        }
+        return book;
+    }
+}
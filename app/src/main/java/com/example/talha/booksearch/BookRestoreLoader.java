@@ -0,0 +1,51 @@
+package com.example.talha.booksearch;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+/**
+ * Rebuilds a book the {@link BookRepository} no longer holds in memory, which happens when
+ * Android killed the app while the detail screen was open.
+ */
+public class BookRestoreLoader extends AsyncTaskLoader<Book> {
+
+    /** The key of the book, see {@link Book#getKey()} */
+    private final String mKey;
+
+    /** The book that was loaded, so it isn't loaded again after a rotation */
+    private Book mBook;
+
+    /**
+     * Constructs a new {@link BookRestoreLoader}.
+     *
+     * @param context of the activity
+     * @param key     is the key of the book
+     */
+    public BookRestoreLoader(Context context, String key) {
+        super(context);
+        mKey = key;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mBook != null) {
+            deliverResult(mBook);
+        } else {
+            forceLoad();
+        }
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public Book loadInBackground() {
+        return BookRepository.getInstance().load(mKey);
+    }
+
+    @Override
+    public void deliverResult(Book book) {
+        mBook = book;
+        super.deliverResult(book);
+    }
+}
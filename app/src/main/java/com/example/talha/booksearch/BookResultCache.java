@@ -0,0 +1,178 @@
+package com.example.talha.booksearch;
+
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import java.util.List;
+
+/**
+ * A process-wide, in-memory cache of parsed search results, so going back to a query that was
+ * just searched for doesn't download and parse it again.
+ *
+ * The cache is limited by the estimated memory its books take up, and the least recently used
+ * results are evicted first. Queries that found no books are cached too (negative caching), but
+ * only for a short time, so a typo isn't sent to the API again and again.
+ */
+public final class BookResultCache {
+
+    /** How long a list of books, and an empty result, stay in the cache */
+    private static final long RESULT_TTL_MILLIS = 5 * 60 * 1000;
+    private static final long EMPTY_RESULT_TTL_MILLIS = 60 * 1000;
+
+    /** The most memory the cache may take up, in bytes */
+    private static final int MAX_SIZE =
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 32, 4 * 1024 * 1024);
+
+    /** Rough size of an entry and its list, without any books */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /** The cache shared by the whole app */
+    private static final BookResultCache sInstance = new BookResultCache();
+
+    static {
+        // Show the hit rates and memory use on the metrics screen.
+        Metrics.addReport(sInstance);
+    }
+
+    /** The cached results, from least to most recently used */
+    private final LruCache<String, Entry> mCache;
+
+    /** Statistics about how well the cache is working */
+    private long mHitCount;
+    private long mNegativeHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    private BookResultCache() {
+        mCache = new LruCache<String, Entry>(MAX_SIZE) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return entry.mSize;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+                if (evicted) {
+                    synchronized (BookResultCache.this) {
+                        mEvictionCount++;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the cache shared by the whole app.
+     */
+    public static BookResultCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @return the cached books for the given query, an empty list if the query is known to find
+     * nothing, or null if the query isn't cached.
+     */
+    public List<Book> get(BookQuery query) {
+        String key = query.getCacheKey();
+        Entry entry = mCache.get(key);
+        if (entry != null && entry.mExpiresAt <= SystemClock.elapsedRealtime()) {
+            mCache.remove(key);
+            entry = null;
+        }
+        synchronized (this) {
+            if (entry == null) {
+                mMissCount++;
+                return null;
+            }
+            if (entry.mBooks.isEmpty()) {
+                mNegativeHitCount++;
+            } else {
+                mHitCount++;
+            }
+        }
+        return entry.mBooks;
+    }
+
+    /**
+     * Caches the books found for the given query. Failed searches (null) are not cached.
+     */
+    public void put(BookQuery query, List<Book> books) {
+        if (books == null) {
+            return;
+        }
+        long ttl = books.isEmpty() ? EMPTY_RESULT_TTL_MILLIS : RESULT_TTL_MILLIS;
+        mCache.put(query.getCacheKey(), new Entry(books, SystemClock.elapsedRealtime() + ttl));
+    }
+
+    /**
+     * Returns the cached books for the given query, or downloads them if they aren't cached yet.
+     * This is a network request, so it must not be called on the main thread.
+     *
+     * @return the books, or null if they couldn't be downloaded.
+     */
+    public List<Book> getOrFetch(BookQuery query) {
+        List<Book> books = get(query);
+        if (books == null) {
+            books = Utils.fetchBookData(query.toUrl());
+            put(query, books);
+        }
+        return books;
+    }
+
+    /**
+     * @return a summary of the cache statistics, for the logs.
+     */
+    @Override
+    public synchronized String toString() {
+        return "BookResultCache[size=" + mCache.size() + "/" + mCache.maxSize()
+                + " bytes, hits=" + mHitCount + ", negativeHits=" + mNegativeHitCount
+                + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "]";
+    }
+
+    /**
+     * @return the number of lookups that found books.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of lookups that found a cached empty result.
+     */
+    public synchronized long getNegativeHitCount() {
+        return mNegativeHitCount;
+    }
+
+    /**
+     * @return the number of lookups that found nothing.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of results that were evicted to make room for others.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * A cached result, with the time it expires and its estimated size.
+     */
+    private static class Entry {
+        final List<Book> mBooks;
+        final long mExpiresAt;
+        final int mSize;
+
+        Entry(List<Book> books, long expiresAt) {
+            mBooks = books;
+            mExpiresAt = expiresAt;
+            int size = ENTRY_OVERHEAD;
+            for (Book book : books) {
+                size += book.estimateSize();
+            }
+            mSize = size;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.talha.booksearch;
+
+import android.view.Gravity;
+import android.view.ViewGroup;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything a row of the list shows for one {@link Book}, worked out ahead of time.
+ *
+ * Rows are created off the main thread (see {@link BookAdapter#setBooks(List)}), so binding a row
+ * while the user scrolls only copies these values into the views. Nothing is formatted,
+ * concatenated or allocated then. A row never changes once it has been created.
+ */
+public final class BookRow {
+
+    /** The book the row shows, which is opened when the row is clicked */
+    final Book book;
+
+    /** The texts of the row. A text is null if its view is hidden. */
+    final String title;
+    final String subtitle;
+    final String author;
+    final String rating;
+
+    /** The cover of the book, or null if it has none */
+    final String imageUrl;
+
+    /**
+     * How the views are laid out. The title and the author take up the whole height of their
+     * column if there's nothing below them, and otherwise only as much as they need. The author
+     * and the rating move to the middle of the row if the other one is missing.
+     */
+    final int titleHeight;
+    final int authorHeight;
+    final int authorGravity;
+    final int ratingGravity;
+
+    private BookRow(Book book, DecimalFormat ratingFormat) {
+        this.book = book;
+        title = book.getTitle();
+
+        String bookSubtitle = book.getSubtitle();
+        subtitle = bookSubtitle != null && !bookSubtitle.isEmpty() ? bookSubtitle : null;
+        author = book.getAuthor();
+
+        // Format the rating to 1 decimal place (e.g. from 2.76 to 2.8).
+        Double bookRating = book.getRating();
+        rating = bookRating != null ? ratingFormat.format(bookRating) + " ★" : null;
+
+        imageUrl = book.getImageUrl();
+
+        titleHeight = subtitle != null
+                ? ViewGroup.LayoutParams.WRAP_CONTENT : ViewGroup.LayoutParams.MATCH_PARENT;
+        authorHeight = rating != null
+                ? ViewGroup.LayoutParams.WRAP_CONTENT : ViewGroup.LayoutParams.MATCH_PARENT;
+        authorGravity = rating != null
+                ? Gravity.TOP | Gravity.RIGHT : Gravity.CENTER_VERTICAL | Gravity.RIGHT;
+        ratingGravity = author != null
+                ? Gravity.BOTTOM | Gravity.RIGHT : Gravity.CENTER_VERTICAL | Gravity.RIGHT;
+    }
+
+    /**
+     * @return a new formatter for ratings. A DecimalFormat can't be shared between threads, so
+     * every thread that creates rows needs its own.
+     */
+    static DecimalFormat newRatingFormat() {
+        return new DecimalFormat("0.0");
+    }
+
+    /**
+     * @return the row for a single book.
+     */
+    static BookRow of(Book book, DecimalFormat ratingFormat) {
+        return new BookRow(book, ratingFormat);
+    }
+
+    /**
+     * @return the rows for the given books, in the same order.
+     */
+    static List<BookRow> of(List<Book> books) {
+        DecimalFormat ratingFormat = newRatingFormat();
+        List<BookRow> rows = new ArrayList<>(books.size());
+        for (Book book : books) {
+            rows.add(new BookRow(book, ratingFormat));
+        }
+        return rows;
+    }
+
+    /**
+     * @return true if the row shows the same book as the other row. It may look different.
+     */
+    boolean isSameBook(BookRow other) {
+        return book == other.book || equal(book.getKey(), other.book.getKey());
+    }
+
+    /**
+     * @return true if the row looks exactly like the other row.
+     */
+    boolean looksTheSame(BookRow other) {
+        return equal(title, other.title)
+                && equal(subtitle, other.subtitle)
+                && equal(author, other.author)
+                && equal(rating, other.rating)
+                && equal(imageUrl, other.imageUrl);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.talha.booksearch;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.preference.PreferenceManager;
+
+import java.io.File;
+
+/**
+ * Sets up the objects that are shared across the whole app when it starts.
+ */
+public class BookSearchApplication extends Application {
+
+    /** The most disk space cached API responses may take up */
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /** The most disk space downloaded book covers may take up */
+    private static final long COVER_CACHE_SIZE = 20 * 1024 * 1024;
+
+    /** The most space the index of every book ever seen may take up */
+    private static final long BOOK_INDEX_SIZE = 4 * 1024 * 1024;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Record metrics from the start if they are turned on in the settings.
+        Metrics.setEnabled(PreferenceManager.getDefaultSharedPreferences(this).getBoolean(
+                getString(R.string.settings_metrics_key),
+                getResources().getBoolean(R.bool.settings_metrics_default)));
+
+        // Cache API responses on disk, so repeated searches can be answered without downloading
+        // the same books again.
+        HttpCache.install(new File(getCacheDir(), "http"), HTTP_CACHE_SIZE);
+
+        // Index every book that is downloaded, so the app can still search them offline.
+        BookIndex.install(new File(getFilesDir(), "book_index"), BOOK_INDEX_SIZE);
+
+        // Open the shelf of saved books in the background, so it's ready when it's needed.
+        BookShelf.install(new File(getFilesDir(), "shelf"));
+
+        // Cache book covers in memory and on disk. They are downloaded through the shared
+        // NetworkClient, so cover downloads and API requests share one pool of connections.
+        CoverLoader.install(new File(getCacheDir(), "covers"), COVER_CACHE_SIZE);
+
+        // Tell the NetworkClient which network the device is on, now and whenever it changes, so
+        // it learns separate timeouts for Wi-Fi and mobile data.
+        updateNetworkType();
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updateNetworkType();
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Passes the type of the active network, such as "WIFI" or "MOBILE/LTE", to the
+     * NetworkClient.
+     */
+    private void updateNetworkType() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivityManager != null
+                ? connectivityManager.getActiveNetworkInfo() : null;
+        String networkType;
+        if (network == null) {
+            networkType = "NONE";
+        } else if (network.getSubtypeName() == null || network.getSubtypeName().isEmpty()) {
+            networkType = network.getTypeName();
+        } else {
+            networkType = network.getTypeName() + "/" + network.getSubtypeName();
+        }
+        NetworkClient.getInstance().setNetworkType(networkType);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CoverLoader.getInstance().trimMemory(level);
+    }
+}
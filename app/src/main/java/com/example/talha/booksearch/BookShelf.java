@@ -0,0 +1,218 @@
+package com.example.talha.booksearch;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * The user's shelf of saved books, kept in a single append-only log file by a {@link ShelfLog}.
+ *
+ * The log only reads the small header of each record when it is opened, and decodes the books
+ * one at a time, when the list scrolls to them. Appends are synced to disk before they count,
+ * and a record that was cut short by a crash is dropped the next time the shelf is opened.
+ * Deleted and replaced books leave dead records behind, so the file is compacted once the dead
+ * records take up more space than the live ones.
+ *
+ * The shelf is shared by the whole app, so every method is synchronized.
+ */
+public final class BookShelf {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = BookShelf.class.getSimpleName();
+
+    /** The shelf shared by the whole app, or null if it hasn't been installed */
+    private static BookShelf sInstance;
+
+    /** The log file and its index */
+    private final ShelfLog mLog;
+
+    private boolean mOpened;
+
+    /** Why the shelf couldn't be opened, or null if it could */
+    private IOException mOpenError;
+
+    private BookShelf(File file) {
+        mLog = new ShelfLog(file);
+    }
+
+    /**
+     * Sets up the shelf shared by the whole app, and opens it on a background thread so it is
+     * ready by the time it is first used.
+     */
+    public static synchronized void install(File file) {
+        final BookShelf shelf = new BookShelf(file);
+        sInstance = shelf;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shelf.size();
+            }
+        }, "BookShelf").start();
+    }
+
+    /**
+     * @return the shelf shared by the whole app.
+     */
+    public static synchronized BookShelf getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @return the number of books on the shelf.
+     */
+    public synchronized int size() {
+        ensureOpen();
+        return mLog.size();
+    }
+
+    /**
+     * Looks up whether the book is on the shelf. This waits while the shelf is being opened or
+     * written to, so it shouldn't be called on the main thread.
+     *
+     * @return true if the book is on the shelf.
+     */
+    public synchronized boolean contains(Book book) {
+        ensureOpen();
+        return mLog.contains(book.getKey());
+    }
+
+    /**
+     * Decodes the book at the given position. Books are decoded every time they are asked for,
+     * so only the books that are on screen are ever held in memory.
+     *
+     * @return the book. If its record is damaged, a book with only its key is returned, so the
+     * list doesn't change size while it is being shown; it can still be removed.
+     */
+    public synchronized Book get(int position) {
+        ensureOpen();
+        try {
+            return mLog.get(position);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem decoding a saved book", e);
+            String key = mLog.getKey(position);
+            return new Book(key, "", null, null, null, null, key, key, null, null, null);
+        }
+    }
+
+    /**
+     * Finds a saved book by its key, see {@link Book#getKey()}.
+     *
+     * @return the book, or null if it isn't on the shelf or its record is damaged.
+     */
+    public synchronized Book get(String key) {
+        ensureOpen();
+        try {
+            return mLog.get(key);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem decoding a saved book", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return a list that reads the books from the shelf as they are needed, and always reflects
+     * what is on the shelf right now. It can't be changed.
+     */
+    public List<Book> asList() {
+        return new AbstractList<Book>() {
+            @Override
+            public Book get(int position) {
+                return BookShelf.this.get(position);
+            }
+
+            @Override
+            public int size() {
+                return BookShelf.this.size();
+            }
+        };
+    }
+
+    /**
+     * Saves a book on the shelf, replacing it if it's already there. This writes to disk, so it
+     * must not be called on the main thread.
+     */
+    public synchronized void add(Book book) throws IOException {
+        ensureWritable();
+        mLog.put(book);
+        compactQuietly();
+    }
+
+    /**
+     * Removes a book from the shelf. This writes to disk, so it must not be called on the main
+     * thread.
+     */
+    public synchronized void remove(Book book) throws IOException {
+        ensureWritable();
+        if (mLog.remove(book.getKey())) {
+            compactQuietly();
+        }
+    }
+
+    /**
+     * Opens the log, the first time the shelf is used.
+     *
+     * Only a file that isn't a shelf at all, or is of an older version, is replaced with an empty
+     * one. If the file can't be read for any other reason, such as running out of memory for the
+     * mapping, the shelf is shown as empty but the file is left as it is, so no saved book is
+     * lost. Writing to it is tried again with {@link #ensureWritable()}.
+     */
+    private void ensureOpen() {
+        if (mOpened) {
+            return;
+        }
+        mOpened = true;
+        long startTime = System.nanoTime();
+
+        try {
+            if (!mLog.open()) {
+                Log.e(LOG_TAG, "Not a shelf file, or an old version, so started a new shelf");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem opening the shelf, leaving the file as it is", e);
+            mOpenError = e;
+            return;
+        }
+
+        compactQuietly();
+        Log.d(LOG_TAG, "Opened " + mLog.size() + " saved books in "
+                + (System.nanoTime() - startTime) / 1000 + " us");
+    }
+
+    /**
+     * Opens the log if it hasn't been, and tries again if opening it failed last time.
+     *
+     * @throws IOException if the log still can't be opened. Appending to it then could put a
+     *                     record in the wrong place, so nothing must be written.
+     */
+    private void ensureWritable() throws IOException {
+        if (mOpenError != null) {
+            mOpened = false;
+            mOpenError = null;
+        }
+        ensureOpen();
+        if (mOpenError != null) {
+            throw new IOException("The shelf couldn't be opened", mOpenError);
+        }
+    }
+
+    /**
+     * Compacts the log if enough of it is dead. Compacting is only a saving of space, so if it
+     * fails, such as when the disk is full, the log is simply kept as it is.
+     */
+    private void compactQuietly() {
+        long startTime = System.nanoTime();
+        int oldSize = mLog.getFileSize();
+        try {
+            if (mLog.compactIfNeeded()) {
+                Log.d(LOG_TAG, "Compacted the shelf from " + oldSize + " to "
+                        + mLog.getFileSize() + " bytes in "
+                        + (System.nanoTime() - startTime) / 1000000 + " ms");
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem compacting the shelf, keeping it as it is", e);
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package com.example.talha.booksearch;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads book covers and shows them in ImageViews.
+ *
+ * Covers are kept in two caches:
+ * <ul>
+ *     <li>A memory cache of decoded bitmaps, which is bounded by how many bytes the bitmaps take
+ *     up rather than by how many there are. Covers found here are shown straight away.</li>
+ *     <li>A {@link DiskLruCache} of the downloaded files, exactly as the server sent them, so a
+ *     cover is only downloaded once even after the app restarts.</li>
+ * </ul>
+ * Covers are decoded no larger than the view they are shown in. Thumbnails in the list are
+ * decoded as RGB_565, which takes half the memory of ARGB_8888 and looks the same for a cover
+ * (they have no transparency).
+ *
+ * If several views ask for the same cover at once, it is only downloaded and decoded once, and
+ * then shown in all of them. When a view is given a new cover, such as when a row of the list is
+ * recycled, the old request is forgotten, and cancelled if no other view is waiting for it.
+ *
+ * A large cover can be given a smaller one to show while it loads, such as the thumbnail the list
+ * already decoded (see {@link #load(String, ImageView, Quality, String)}).
+ *
+ * All methods apart from the constructor must be called on the main thread.
+ */
+public final class CoverLoader {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = CoverLoader.class.getSimpleName();
+
+    /**
+     * How a cover is decoded.
+     */
+    public enum Quality {
+        /** Small covers in a list, decoded with 2 bytes per pixel */
+        THUMBNAIL(Bitmap.Config.RGB_565),
+        /** Large covers, decoded with full colour */
+        FULL(Bitmap.Config.ARGB_8888);
+
+        final Bitmap.Config config;
+
+        Quality(Bitmap.Config config) {
+            this.config = config;
+        }
+    }
+
+    /** How many covers are downloaded and decoded at once */
+    private static final int LOAD_THREADS = 3;
+
+    /** How many URLs {@link #mUrlKeys} remembers */
+    private static final int URL_KEY_COUNT = 256;
+
+    /** The loader shared by the whole app, or null if it hasn't been installed */
+    private static CoverLoader sInstance;
+
+    /** Decoded covers, keyed by {@link #memoryKey(String, int, Quality)} */
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    /** The downloaded cover files */
+    private final DiskLruCache mDiskCache;
+
+    /** Downloads and decodes the covers that are shown */
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(LOAD_THREADS,
+            new LoaderThreadFactory("CoverLoader", Process.THREAD_PRIORITY_BACKGROUND));
+
+    /**
+     * Downloads covers that aren't shown yet, one at a time and at a lower priority, so they
+     * never hold up a cover the user is waiting for.
+     */
+    private final ExecutorService mPrefetchExecutor = Executors.newSingleThreadExecutor(
+            new LoaderThreadFactory("CoverPrefetcher", Process.THREAD_PRIORITY_LOWEST));
+
+    /** Makes sure a cover that is asked for twice at once is only downloaded once */
+    private final SingleFlight<String, File> mDownloads = new SingleFlight<>();
+
+    /** Used to show decoded covers on the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** The loads that are running, by memory key. Only used on the main thread. */
+    private final Map<String, Load> mLoads = new HashMap<>();
+
+    /** The load each view is waiting for. Only used on the main thread. */
+    private final Map<ImageView, Load> mViewLoads = new WeakHashMap<>();
+
+    /**
+     * The load of the placeholder each view shows until its cover arrives, if the placeholder
+     * wasn't in memory. Only used on the main thread.
+     */
+    private final Map<ImageView, Load> mViewPlaceholders = new WeakHashMap<>();
+
+    /**
+     * The memory key each URL was last decoded under, so a cover that is in memory can be found
+     * without knowing the size it was decoded at.
+     */
+    private final LruCache<String, String> mUrlKeys = new LruCache<>(URL_KEY_COUNT);
+
+    /** The prefetches that were started, by their tag. Only used on the main thread. */
+    private final Map<Object, List<Future<?>>> mPrefetches = new HashMap<>();
+
+    /** Statistics, for the logs */
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mMemoryMisses = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mDownloadCount = new AtomicLong();
+    private final AtomicLong mMergedCount = new AtomicLong();
+    private final AtomicLong mDecodeCount = new AtomicLong();
+    private final AtomicLong mDecodedBytes = new AtomicLong();
+
+    private CoverLoader(File directory, long maxDiskSize, int maxMemorySize) {
+        mDiskCache = new DiskLruCache(directory, maxDiskSize);
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemorySize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Sets up the loader shared by the whole app. The memory cache may take up an eighth of the
+     * memory the app is allowed to use.
+     *
+     * @param directory   is where downloaded covers are kept.
+     * @param maxDiskSize is the most bytes the downloaded covers may take up.
+     */
+    public static synchronized void install(File directory, long maxDiskSize) {
+        int maxMemorySize = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        sInstance = new CoverLoader(directory, maxDiskSize, maxMemorySize);
+        // Show the hit rates and memory use on the metrics screen.
+        Metrics.addReport(sInstance);
+    }
+
+    /**
+     * @return the loader shared by the whole app.
+     */
+    public static synchronized CoverLoader getInstance() {
+        if (sInstance == null) {
+            throw new IllegalStateException("CoverLoader.install() hasn't been called");
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the cover at the given URL in the view. If the cover isn't in memory, the view is
+     * cleared until it has been loaded. Whatever the view was loading before is forgotten.
+     */
+    public void load(String url, ImageView view, Quality quality) {
+        load(url, view, quality, null);
+    }
+
+    /**
+     * Shows the cover at the given URL in the view. If the cover isn't in memory, a smaller
+     * placeholder cover is shown until it has been loaded: straight away if it is in memory in any
+     * size, and otherwise as soon as it has been read from disk or downloaded. If the cover can't
+     * be loaded, the placeholder stays.
+     *
+     * @param placeholderUrl is the URL of the placeholder cover, or null to clear the view.
+     */
+    public void load(String url, ImageView view, Quality quality, String placeholderUrl) {
+        cancel(view);
+
+        int targetWidth = targetWidth(view);
+        String key = memoryKey(url, targetWidth, quality);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            mMemoryHits.incrementAndGet();
+            mUrlKeys.put(url, key);
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        mMemoryMisses.incrementAndGet();
+
+        Bitmap placeholder = null;
+        if (placeholderUrl != null && !placeholderUrl.equals(url)) {
+            String placeholderKey = mUrlKeys.get(placeholderUrl);
+            placeholder = placeholderKey != null ? mMemoryCache.get(placeholderKey) : null;
+            if (placeholder == null) {
+                // A placeholder is never larger than the cover, so decode it as it is.
+                mViewPlaceholders.put(view,
+                        start(placeholderUrl, targetWidth, Quality.THUMBNAIL, view));
+            }
+        }
+        if (placeholder != null) {
+            view.setImageBitmap(placeholder);
+        } else {
+            view.setImageDrawable(null);
+        }
+        mViewLoads.put(view, start(url, targetWidth, quality, view));
+    }
+
+    /**
+     * Starts loading a cover for the view, or joins the load of the same cover if one is already
+     * running.
+     */
+    private Load start(String url, int targetWidth, Quality quality, ImageView view) {
+        String key = memoryKey(url, targetWidth, quality);
+        Load load = mLoads.get(key);
+        if (load == null) {
+            load = new Load(key, url, targetWidth, quality);
+            mLoads.put(key, load);
+            load.future = mExecutor.submit(load);
+        } else {
+            mMergedCount.incrementAndGet();
+        }
+        load.views.add(view);
+        return load;
+    }
+
+    /**
+     * Stops the view from showing the cover, and the placeholder, it is loading. A load is
+     * cancelled if no other view is waiting for it.
+     */
+    public void cancel(ImageView view) {
+        detach(view, mViewLoads.remove(view));
+        detach(view, mViewPlaceholders.remove(view));
+    }
+
+    /**
+     * Stops the view from waiting for the given load, and cancels the load if no other view is.
+     */
+    private void detach(ImageView view, Load load) {
+        if (load == null) {
+            return;
+        }
+        load.views.remove(view);
+        if (load.views.isEmpty()) {
+            load.future.cancel(false);
+            if (mLoads.get(load.key) == load) {
+                mLoads.remove(load.key);
+            }
+        }
+    }
+
+    /**
+     * Downloads the cover at the given URL to the disk cache in the background, so it can be
+     * shown without waiting later on. It isn't decoded, since the size it will be shown at isn't
+     * known yet.
+     *
+     * @param tag is given to {@link #cancelPrefetches(Object)} to cancel the prefetch.
+     */
+    public void prefetch(final String url, Object tag) {
+        Future<?> future = mPrefetchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                fetchFile(url);
+            }
+        });
+        List<Future<?>> futures = mPrefetches.get(tag);
+        if (futures == null) {
+            futures = new ArrayList<>();
+            mPrefetches.put(tag, futures);
+        }
+        futures.add(future);
+    }
+
+    /**
+     * Cancels the prefetches with the given tag that haven't started yet.
+     */
+    public void cancelPrefetches(Object tag) {
+        List<Future<?>> futures = mPrefetches.remove(tag);
+        if (futures != null) {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Frees memory when the system asks for it. Covers in memory can always be decoded again from
+     * the disk cache.
+     *
+     * @param level is the level given to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * @return how many covers were found in memory and on disk, and how much was decoded, for
+     * the logs.
+     */
+    @Override
+    public String toString() {
+        long hits = mMemoryHits.get();
+        long requests = hits + mMemoryMisses.get();
+        return "CoverLoader[memoryHits=" + hits + "/" + requests
+                + ", memoryHitRate=" + (requests > 0 ? 100 * hits / requests : 0) + "%"
+                + ", diskHits=" + mDiskHits.get()
+                + ", downloads=" + mDownloadCount.get()
+                + ", merged=" + mMergedCount.get()
+                + ", decoded=" + mDecodeCount.get()
+                + ", decodedBytes=" + mDecodedBytes.get()
+                + ", memoryBytes=" + mMemoryCache.size() + "/" + mMemoryCache.maxSize() + "]";
+    }
+
+    /**
+     * @return the width the cover should be decoded at, in pixels. This is the width of the view
+     * if it has a fixed one, and otherwise the width of the screen.
+     */
+    private static int targetWidth(ImageView view) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (params != null && params.width > 0) {
+            return params.width;
+        }
+        if (view.getWidth() > 0) {
+            return view.getWidth();
+        }
+        return view.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    /**
+     * @return the key of a decoded cover in the memory cache. The same cover decoded for a
+     * different size or quality is a different bitmap.
+     */
+    private static String memoryKey(String url, int targetWidth, Quality quality) {
+        return quality.ordinal() + "/" + targetWidth + "/" + url;
+    }
+
+    /**
+     * Makes sure the cover at the given URL is in the disk cache, downloading it if it isn't.
+     * Runs on a background thread.
+     *
+     * @return the file, or null if the cover couldn't be downloaded.
+     */
+    private File fetchFile(final String url) {
+        final String diskKey = DiskLruCache.hashKey(url);
+        File file = mDiskCache.get(diskKey);
+        if (file != null) {
+            mDiskHits.incrementAndGet();
+            return file;
+        }
+        return mDownloads.execute(url, new Callable<File>() {
+            @Override
+            public File call() {
+                // Another thread may have downloaded it while this one was checking.
+                File file = mDiskCache.get(diskKey);
+                if (file != null) {
+                    mDiskHits.incrementAndGet();
+                    return file;
+                }
+                try {
+                    mDownloadCount.incrementAndGet();
+                    return download(url, diskKey);
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Could not download cover " + url, e);
+                    return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads the cover at the given URL into the disk cache.
+     *
+     * @return the file, or null if the server didn't return the cover.
+     */
+    private File download(String url, String diskKey) throws IOException {
+        NetworkClient.Response response = NetworkClient.getInstance().get(new URL(url));
+        try {
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                Log.w(LOG_TAG, "Response code " + response.getCode() + " for cover " + url);
+                return null;
+            }
+
+            // Write to a temporary file first, so a download that fails half way never ends up
+            // in the cache.
+            File temp = mDiskCache.newTempFile(diskKey);
+            InputStream in = response.getBody();
+            OutputStream out = new FileOutputStream(temp);
+            byte[] buffer = BufferPool.acquireBytes();
+            try {
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            } finally {
+                BufferPool.releaseBytes(buffer);
+                out.close();
+            }
+            mDiskCache.commit(diskKey, temp);
+        } finally {
+            response.close();
+        }
+        return mDiskCache.get(diskKey);
+    }
+
+    /**
+     * Decodes a downloaded cover, skipping pixels so it is no more than about twice as wide as it
+     * will be shown.
+     *
+     * @return the cover, or null if the file isn't an image.
+     */
+    private Bitmap decode(File file, int targetWidth, Quality quality) {
+        // Read only the size first, to work out how many pixels can be skipped.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0) {
+            return null;
+        }
+
+        // Only powers of two are decoded quickly, so use the largest one that still leaves the
+        // cover at least as wide as the view.
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = quality.config;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap != null) {
+            mDecodeCount.incrementAndGet();
+            mDecodedBytes.addAndGet(bitmap.getByteCount());
+        }
+        return bitmap;
+    }
+
+    /**
+     * Loads one cover, for every view that is waiting for it. The views are only used on the
+     * main thread.
+     */
+    private final class Load implements Runnable {
+        final String key;
+        final String url;
+        final int targetWidth;
+        final Quality quality;
+        final List<ImageView> views = new ArrayList<>();
+        Future<?> future;
+
+        Load(String key, String url, int targetWidth, Quality quality) {
+            this.key = key;
+            this.url = url;
+            this.targetWidth = targetWidth;
+            this.quality = quality;
+        }
+
+        @Override
+        public void run() {
+            File file = fetchFile(url);
+            final Bitmap bitmap = file != null ? decode(file, targetWidth, quality) : null;
+            if (bitmap != null) {
+                // Keep it even if nobody is waiting any more, since the row will probably be
+                // scrolled back to.
+                mMemoryCache.put(key, bitmap);
+                mUrlKeys.put(url, key);
+            }
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    finish(bitmap);
+                }
+            });
+        }
+
+        /**
+         * Shows the cover in every view that is still waiting for it. Runs on the main thread.
+         */
+        void finish(Bitmap bitmap) {
+            if (mLoads.get(key) == this) {
+                mLoads.remove(key);
+            }
+            for (ImageView view : views) {
+                if (mViewLoads.get(view) == this) {
+                    mViewLoads.remove(view);
+                    if (bitmap != null) {
+                        view.setImageBitmap(bitmap);
+                        // The placeholder isn't needed any more.
+                        detach(view, mViewPlaceholders.remove(view));
+                    }
+                } else if (mViewPlaceholders.get(view) == this) {
+                    // The cover itself hasn't arrived yet, or couldn't be loaded, since it would
+                    // have removed the placeholder.
+                    mViewPlaceholders.remove(view);
+                    if (bitmap != null) {
+                        view.setImageBitmap(bitmap);
+                    }
+                }
+            }
+            views.clear();
+        }
+    }
+
+    /**
+     * Creates the threads of the loader, with a name and priority.
+     */
+    private static final class LoaderThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final int mPriority;
+
+        LoaderThreadFactory(String name, int priority) {
+            mName = name;
+            mPriority = priority;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(mPriority);
+                    runnable.run();
+                }
+            }, mName);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.talha.booksearch;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+/**
+ * Loads the description of a single book. Searches leave descriptions out to keep the responses
+ * small, so the detail screen loads the description of the book it shows with this loader.
+ */
+public class DescriptionLoader extends AsyncTaskLoader<String> {
+
+    /** The volume id of the book whose description is loaded */
+    private final String mVolumeId;
+
+    /** The description that was loaded, so it isn't loaded again after a rotation */
+    private String mDescription;
+
+    /** Whether a load has finished, since a book may not have a description at all */
+    private boolean mLoaded;
+
+    /**
+     * Constructs a new {@link DescriptionLoader}.
+     *
+     * @param context  of the activity
+     * @param volumeId is the id of the book
+     */
+    public DescriptionLoader(Context context, String volumeId) {
+        super(context);
+        mVolumeId = volumeId;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mLoaded) {
+            deliverResult(mDescription);
+        } else {
+            forceLoad();
+        }
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public String loadInBackground() {
+        return Utils.fetchBookDescription(mVolumeId);
+    }
+
+    @Override
+    public void deliverResult(String description) {
+        mDescription = description;
+        mLoaded = true;
+        super.deliverResult(description);
+    }
+}
@@ -1,33 +1,86 @@
 package com.example.talha.booksearch;
 
+import android.app.LoaderManager;
+import android.content.Context;
 import android.content.Intent;
+import android.content.Loader;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.customtabs.CustomTabsIntent;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
-import com.squareup.picasso.Picasso;
-
+import java.io.IOException;
 import java.text.DecimalFormat;
 
-public class DetailActivity extends AppCompatActivity {
+public class DetailActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<String> {
+
+    /** Key of the Intent extra holding the key of the book to show, see {@link Book#getKey()} */
+    private static final String EXTRA_BOOK_KEY = "bookKey";
+
+    /** Loader IDs for the description loader, and for rebuilding the book after process death */
+    private static final int DESCRIPTION_LOADER_ID = 1;
+    private static final int BOOK_LOADER_ID = 2;
 
     private Book currentBook;
 
+    /**
+     * Whether the book is on the shelf, or null until that has been looked up. The shelf is
+     * locked while it writes to disk, so it is only asked in the background, and the menu shows
+     * this copy instead.
+     */
+    private Boolean mOnShelf;
+
+    private TextView mDescriptionView;
+
+    /**
+     * Creates an Intent that opens the given book. Only the key of the book is put in the Intent,
+     * and the book itself is kept in the {@link BookRepository}, so a long description isn't
+     * parceled up and copied into the new Activity.
+     */
+    public static Intent createIntent(Context context, Book book) {
+        Intent intent = new Intent(context, DetailActivity.class);
+        intent.putExtra(EXTRA_BOOK_KEY, BookRepository.getInstance().put(book));
+        return intent;
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_detail);
 
-        // Get the intent and retrieve the Book object from it.
-        Intent intent = getIntent();
-        currentBook = intent.getParcelableExtra("currentBook");
+        // Get the intent and look up the book by the key it holds. The book is only missing if
+        // Android killed the app since it was opened, and then it is rebuilt in the background.
+        currentBook = BookRepository.getInstance().get(getIntent().getStringExtra(EXTRA_BOOK_KEY));
+        if (currentBook != null) {
+            showBook();
+            new CheckShelfTask().execute(currentBook);
+        } else {
+            getLoaderManager().initLoader(BOOK_LOADER_ID, null, mBookLoaderCallbacks);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Stop loading the large cover if the user left before it arrived, and don't keep the
+        // cover view, and with it this Activity, around until it does.
+        CoverLoader.getInstance().cancel((ImageView) findViewById(R.id.detail_image_view));
+    }
 
+    /**
+     * Fills the layout with the details of {@link #currentBook}.
+     */
+    private void showBook() {
         // Get references to the views in the layout.
         ImageView bookCoverView = (ImageView) findViewById(R.id.detail_image_view);
         TextView bookTitleView = (TextView) findViewById(R.id.detail_book_title);
@@ -35,16 +88,18 @@ public class DetailActivity extends AppCompatActivity {
         TextView bookAuthorView = (TextView) findViewById(R.id.detail_book_author);
         TextView bookRatingView = (TextView) findViewById(R.id.detail_book_rating);
         TextView bookPriceView = (TextView) findViewById(R.id.detail_book_price);
-        TextView bookDescriptionView = (TextView) findViewById(R.id.detail_book_description);
+        mDescriptionView = (TextView) findViewById(R.id.detail_book_description);
         Button viewOnGoogle = (Button) findViewById(R.id.view_on_google);
         Button previewBook = (Button) findViewById(R.id.preview_book);
 
-        // Retrieve the book cover and display it, using Picasso. Picasso will automatically check
+        // Retrieve the largest book cover and display it. The CoverLoader will automatically check
         // if the image has been downloaded before, and if it has, will display that instead of
-        // re-downloading it.
-        String imageUrl = currentBook.getImageUrl();
+        // re-downloading it. Until it arrives, the small cover the list showed is shown instead,
+        // which is usually still in memory.
+        String imageUrl = currentBook.getLargestImageUrl();
         if (imageUrl != null) {
-            Picasso.with(this).load(imageUrl).into(bookCoverView);
+            CoverLoader.getInstance().load(imageUrl, bookCoverView, CoverLoader.Quality.FULL,
+                    currentBook.getImageUrl());
         } else {
             bookCoverView.setVisibility(View.GONE);
         }
@@ -90,12 +145,17 @@ public class DetailActivity extends AppCompatActivity {
             infoSeparator.setVisibility(View.GONE);
         }
 
-        // Set description according to current book if it has one. If not, set visibility to GONE.
+        // Set description according to current book if it has one. Search results don't include
+        // descriptions, so if the book doesn't have one, load it with its id. Until then (or if
+        // the book really has no description) set visibility to GONE.
         String bookDescription = currentBook.getDescription();
         if (bookDescription != null) {
-            bookDescriptionView.setText(bookDescription);
+            mDescriptionView.setText(bookDescription);
         } else {
-            bookDescriptionView.setVisibility(View.GONE);
+            mDescriptionView.setVisibility(View.GONE);
+            if (currentBook.getId() != null) {
+                getLoaderManager().initLoader(DESCRIPTION_LOADER_ID, null, this);
+            }
         }
 
         viewOnGoogle.setOnClickListener(new View.OnClickListener() {
@@ -136,6 +196,144 @@ public class DetailActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Callbacks for the loader that rebuilds the book if it wasn't in memory.
+     */
+    private final LoaderManager.LoaderCallbacks<Book> mBookLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Book>() {
+                @Override
+                public Loader<Book> onCreateLoader(int id, Bundle args) {
+                    return new BookRestoreLoader(DetailActivity.this,
+                            getIntent().getStringExtra(EXTRA_BOOK_KEY));
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Book> loader, Book book) {
+                    if (book == null) {
+                        // There's nothing to show, so go back to where the user came from.
+                        Toast.makeText(DetailActivity.this, R.string.book_unavailable,
+                                Toast.LENGTH_SHORT).show();
+                        finish();
+                        return;
+                    }
+                    currentBook = book;
+                    showBook();
+                    new CheckShelfTask().execute(currentBook);
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Book> loader) {
+                }
+            };
+
+    @Override
+    public Loader<String> onCreateLoader(int id, Bundle args) {
+        return new DescriptionLoader(this, currentBook.getId());
+    }
+
+    @Override
+    public void onLoadFinished(Loader<String> loader, String description) {
+        if (description != null) {
+            // Keep the description with the book, so it's there if the book is saved.
+            currentBook = new Book(currentBook.getId(), currentBook.getTitle(),
+                    currentBook.getSubtitle(), description, currentBook.getAuthor(),
+                    currentBook.getRating(), currentBook.getUrl(), currentBook.getPreviewUrl(),
+                    currentBook.getImageUrls(), currentBook.getLocale(), currentBook.getPrice());
+            BookRepository.getInstance().put(currentBook);
+            mDescriptionView.setText(description);
+            mDescriptionView.setVisibility(View.VISIBLE);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<String> loader) {
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.detail, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Offer to save the book, or to remove it if it's already on the shelf.
+        MenuItem item = menu.findItem(R.id.action_toggle_shelf);
+        if (currentBook == null || mOnShelf == null) {
+            // The book is still being rebuilt, or looked up on the shelf.
+            item.setVisible(false);
+            return super.onPrepareOptionsMenu(menu);
+        }
+        item.setVisible(true);
+        item.setTitle(mOnShelf ? R.string.remove_from_shelf : R.string.save_to_shelf);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_toggle_shelf) {
+            new ToggleShelfTask().execute(currentBook);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Looks up whether the book is on the shelf, which may have to wait for the shelf to be opened
+     * or for another book to be written, so it is done in the background.
+     */
+    private class CheckShelfTask extends AsyncTask<Book, Void, Boolean> {
+
+        @Override
+        protected Boolean doInBackground(Book... books) {
+            return BookShelf.getInstance().contains(books[0]);
+        }
+
+        @Override
+        protected void onPostExecute(Boolean onShelf) {
+            mOnShelf = onShelf;
+            // Show the menu item, with the right title.
+            invalidateOptionsMenu();
+        }
+    }
+
+    /**
+     * Saves the book on the shelf, or removes it if it's already there. Writing to the shelf
+     * waits for the disk, so it is done in the background.
+     *
+     * The result is whether the book is on the shelf afterwards, or null if writing failed.
+     */
+    private class ToggleShelfTask extends AsyncTask<Book, Void, Boolean> {
+
+        @Override
+        protected Boolean doInBackground(Book... books) {
+            BookShelf shelf = BookShelf.getInstance();
+            try {
+                if (shelf.contains(books[0])) {
+                    shelf.remove(books[0]);
+                    return false;
+                } else {
+                    shelf.add(books[0]);
+                    return true;
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean onShelf) {
+            if (onShelf == null) {
+                Toast.makeText(DetailActivity.this, R.string.shelf_error, Toast.LENGTH_SHORT)
+                        .show();
+                return;
+            }
+            mOnShelf = onShelf;
+            // Update the title of the menu item.
+            invalidateOptionsMenu();
+        }
+    }
+
     private String formatRating(Double rating) {
 
         // Create an instance of the DecimalFormat class to format our doubles to 2 decimal places
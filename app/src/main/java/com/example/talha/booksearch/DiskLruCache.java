@@ -0,0 +1,212 @@
+package com.example.talha.booksearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A directory of files that is kept under a maximum total size. When it grows too big, the files
+ * that were used least recently are deleted first.
+ *
+ * The order files were used in is stored in their last-modified time, so the cache keeps its
+ * order when the app is restarted. Files are written to a temporary file first and only renamed
+ * into place once they are complete, so a crash never leaves a half-written file behind.
+ */
+public class DiskLruCache {
+
+    /** Suffix given to files that are still being written */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The directory the files are kept in */
+    private final File mDirectory;
+
+    /** The most bytes the files in the directory may take up */
+    private final long mMaxSize;
+
+    /** Size of every file in the cache, in order from least to most recently used */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of every file in the cache */
+    private long mSize;
+
+    /** Whether the directory has been read yet. This is done lazily, off the main thread. */
+    private boolean mInitialized;
+
+    /** Counter used to give temporary files unique names */
+    private int mNextTempId;
+
+    /**
+     * @param directory is the directory the files are kept in. It is created if it doesn't exist.
+     * @param maxSize   is the most bytes the files may take up.
+     */
+    public DiskLruCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Turns any string, such as a URL, into a name that is safe to use as a key.
+     */
+    public static String hashKey(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(value.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every platform supports SHA-1 and UTF-8, so this can't happen.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return the file stored under the given key, or null if there isn't one. The file is marked
+     * as the most recently used.
+     */
+    public synchronized File get(String key) {
+        initialize();
+        if (!mEntries.containsKey(key)) {
+            return null;
+        }
+        File file = new File(mDirectory, key);
+        if (!file.exists()) {
+            // The file was deleted behind our back.
+            mSize -= mEntries.remove(key);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * @return a new temporary file which can be written to and then stored with
+     * {@link #commit(String, File)}.
+     */
+    public synchronized File newTempFile(String key) {
+        initialize();
+        return new File(mDirectory, key + "." + (mNextTempId++) + TEMP_SUFFIX);
+    }
+
+    /**
+     * Stores a finished temporary file under the given key, replacing whatever was there before.
+     * Least recently used files are then deleted until the cache is small enough.
+     */
+    public synchronized void commit(String key, File tempFile) throws IOException {
+        initialize();
+        File file = new File(mDirectory, key);
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile + " to " + file);
+        }
+        file.setLastModified(System.currentTimeMillis());
+        updateSize(key, file.length());
+        trimToSize();
+    }
+
+    /**
+     * Records that the file stored under the given key was changed in place.
+     */
+    public synchronized void update(String key) {
+        initialize();
+        File file = new File(mDirectory, key);
+        if (file.exists()) {
+            updateSize(key, file.length());
+            trimToSize();
+        }
+    }
+
+    /**
+     * Deletes the file stored under the given key.
+     */
+    public synchronized void remove(String key) {
+        initialize();
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSize -= size;
+        }
+        new File(mDirectory, key).delete();
+    }
+
+    /**
+     * @return the total size of every file in the cache.
+     */
+    public synchronized long size() {
+        initialize();
+        return mSize;
+    }
+
+    /**
+     * @return the most bytes the files in the cache may take up.
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    private void updateSize(String key, long size) {
+        Long oldSize = mEntries.put(key, size);
+        if (oldSize != null) {
+            mSize -= oldSize;
+        }
+        mSize += size;
+    }
+
+    /**
+     * Deletes the least recently used files until the cache fits in its maximum size.
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(mDirectory, eldest.getKey()).delete();
+            mSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Reads the directory and rebuilds the order files were used in from their last-modified
+     * times. Temporary files left over from a crash are deleted.
+     */
+    private void initialize() {
+        if (mInitialized) {
+            return;
+        }
+        mInitialized = true;
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Sort the files from oldest to newest, so they're added to the LinkedHashMap in
+        // least recently used order.
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (file.isFile()) {
+                updateSize(file.getName(), file.length());
+            }
+        }
+        trimToSize();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.talha.booksearch;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * Shows a view, such as a message, whenever an adapter has no items, and hides it otherwise.
+ * This does the job ListView.setEmptyView did for a ListView, which RecyclerView doesn't have.
+ */
+public class EmptyViewObserver extends RecyclerView.AdapterDataObserver {
+
+    private final RecyclerView.Adapter<?> mAdapter;
+    private final View mEmptyView;
+
+    /**
+     * Creates the observer, registers it with the adapter and updates the empty view straight
+     * away.
+     */
+    public static void attach(RecyclerView.Adapter<?> adapter, View emptyView) {
+        EmptyViewObserver observer = new EmptyViewObserver(adapter, emptyView);
+        adapter.registerAdapterDataObserver(observer);
+        observer.update();
+    }
+
+    private EmptyViewObserver(RecyclerView.Adapter<?> adapter, View emptyView) {
+        mAdapter = adapter;
+        mEmptyView = emptyView;
+    }
+
+    private void update() {
+        mEmptyView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public void onChanged() {
+        update();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        update();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        update();
+    }
+}
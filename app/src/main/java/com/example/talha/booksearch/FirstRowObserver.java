@@ -0,0 +1,93 @@
+package com.example.talha.booksearch;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewTreeObserver;
+
+/**
+ * Records how long a search took from the moment it started until its first rows were drawn,
+ * which is the wait the user actually sees. See {@link Metrics}.
+ *
+ * Once a search has started, the observer waits for the adapter to get rows, and then for the
+ * next time the list is about to be drawn. While metrics are off, nothing is waited for.
+ */
+public class FirstRowObserver extends RecyclerView.AdapterDataObserver
+        implements ViewTreeObserver.OnPreDrawListener {
+
+    /** Time from the start of a search until its first rows are drawn */
+    private static final Metrics.Histogram sFirstRowTimer = Metrics.timer("search.first_row");
+
+    /** How much of the Java heap was in use when the rows were drawn */
+    private static final Metrics.Gauge sHeapUsed = Metrics.gauge("memory.heap_used_bytes");
+
+    private final RecyclerView mRecyclerView;
+
+    /** When the search started, as returned by {@link Metrics#startTimer()}, or 0 for none */
+    private long mStartTime;
+
+    /** True while waiting for the list to be drawn */
+    private boolean mWaitingForDraw;
+
+    /**
+     * Creates the observer and registers it with the adapter of the given list, which must
+     * already have been set.
+     */
+    public static FirstRowObserver attach(RecyclerView recyclerView) {
+        FirstRowObserver observer = new FirstRowObserver(recyclerView);
+        recyclerView.getAdapter().registerAdapterDataObserver(observer);
+        return observer;
+    }
+
+    private FirstRowObserver(RecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+    }
+
+    /**
+     * Starts timing a new search. A search that was still being timed is forgotten.
+     *
+     * @param startTime is what {@link Metrics#startTimer()} returned when the search started.
+     */
+    public void start(long startTime) {
+        mStartTime = startTime;
+    }
+
+    private void update() {
+        if (mStartTime == 0 || mWaitingForDraw || mRecyclerView.getAdapter().getItemCount() == 0) {
+            return;
+        }
+        mWaitingForDraw = true;
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+        mWaitingForDraw = false;
+        if (mStartTime != 0) {
+            sFirstRowTimer.recordSince(mStartTime);
+            Runtime runtime = Runtime.getRuntime();
+            sHeapUsed.set(runtime.totalMemory() - runtime.freeMemory());
+            mStartTime = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void onChanged() {
+        update();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        update();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        update();
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        update();
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.talha.booksearch;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of HTTP responses, keyed by the full request URL.
+ *
+ * Each response is stored in a single file, with a small header in front of the body:
+ * <pre>
+ *     int    MAGIC
+ *     long   time the response was received (or last revalidated)
+ *     long   max-age, in milliseconds
+ *     long   stale-while-revalidate window, in milliseconds
+ *     long   CRC32 of the body
+ *     UTF    ETag, or an empty string
+ *     ...    the body, exactly as it was decoded
+ * </pre>
+ * The freshness fields have a fixed position, so a revalidated response can be updated in place
+ * without copying the body. The files are kept in a {@link DiskLruCache}, so the cache survives
+ * restarts and the least recently used responses are evicted first when it is full.
+ */
+public final class HttpCache {
+
+    /** Marks the start of every cache file, so we never try to read something else */
+    private static final int MAGIC = 0x42534331;
+
+    /** Positions of the fixed header fields that change when a response is revalidated */
+    private static final int FRESHNESS_OFFSET = 4;
+    private static final int CRC_OFFSET = 28;
+
+    /**
+     * How long a response may be shown while it is being revalidated, if the server doesn't say.
+     * Google Books sends "max-age=0, must-revalidate", so without this the cache could never show
+     * anything before the network responds. Stale responses are always revalidated right away.
+     */
+    private static final long DEFAULT_STALE_WHILE_REVALIDATE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * The most bytes we're willing to read from a body nobody wants any more, just so it can be
+     * cached. If there is more left than this, it's cheaper to give up on caching it.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /** The cache shared by the whole app, or null if it hasn't been installed */
+    private static HttpCache sInstance;
+
+    /** The files the responses are stored in */
+    private final DiskLruCache mFiles;
+
+    private HttpCache(File directory, long maxSize) {
+        mFiles = new DiskLruCache(directory, maxSize);
+    }
+
+    /**
+     * Sets up the cache shared by the whole app. The directory isn't read until the cache is first
+     * used, so this is safe to call on the main thread.
+     */
+    public static synchronized void install(File directory, long maxSize) {
+        sInstance = new HttpCache(directory, maxSize);
+    }
+
+    /**
+     * @return the cache shared by the whole app, or null if there isn't one.
+     */
+    public static synchronized HttpCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @return the cached response for the given URL, or null if there isn't one.
+     */
+    public Entry get(String url) {
+        String key = DiskLruCache.hashKey(url);
+        File file = mFiles.get(key);
+        if (file == null) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            // Count the bytes the header takes up, so the body can be found later.
+            CountingInputStream header =
+                    new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            in = new DataInputStream(header);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cache file");
+            }
+            long receivedAt = in.readLong();
+            long maxAge = in.readLong();
+            long staleWhileRevalidate = in.readLong();
+            long crc = in.readLong();
+            String etag = in.readUTF();
+            return new Entry(key, file, (int) header.getCount(), receivedAt, maxAge,
+                    staleWhileRevalidate, crc, etag.isEmpty() ? null : etag);
+        } catch (IOException e) {
+            // The file is damaged, so get rid of it.
+            mFiles.remove(key);
+            return null;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Marks a cached response as fresh again, after the server said it hasn't changed.
+     *
+     * @param cacheControl is the Cache-Control header of the server's response.
+     */
+    public void refresh(Entry entry, String cacheControl) {
+        Policy policy = new Policy(cacheControl);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(entry.mFile, "rw");
+            file.seek(FRESHNESS_OFFSET);
+            file.writeLong(System.currentTimeMillis());
+            file.writeLong(policy.maxAge);
+            file.writeLong(policy.staleWhileRevalidate);
+        } catch (IOException e) {
+            mFiles.remove(entry.mKey);
+        } finally {
+            Utils.closeQuietly(file);
+        }
+        mFiles.update(entry.mKey);
+    }
+    /**
+     * Forgets a cached response, for example because its body turned out to be cut short.
+     */
+    public void remove(Entry entry) {
+        mFiles.remove(entry.mKey);
+    }
+
+    /**
+     * Wraps a response body so that everything read from it is also written to the cache. The
+     * response is only stored once the body has been read to the end, which happens at the
+     * latest when the returned stream is closed.
+     *
+     * @param url          is the URL the response belongs to.
+     * @param cacheControl is the Cache-Control header of the response.
+     * @param etag         is the ETag header of the response, or null.
+     * @param body         is the decoded response body.
+     * @return a stream to read the body from instead, or the body itself if it may not be cached.
+     */
+    public InputStream store(String url, String cacheControl, String etag, InputStream body) {
+        Policy policy = new Policy(cacheControl);
+        String key = DiskLruCache.hashKey(url);
+        if (policy.noStore) {
+            // The response we had is out of date now, and its replacement may not be kept, so
+            // forget it rather than showing or comparing against it later.
+            mFiles.remove(key);
+            return body;
+        }
+        File tempFile = mFiles.newTempFile(key);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeLong(System.currentTimeMillis());
+            header.writeLong(policy.maxAge);
+            header.writeLong(policy.staleWhileRevalidate);
+            header.writeLong(0);
+            header.writeUTF(etag != null ? etag : "");
+            header.flush();
+            return new CachingInputStream(body, key, tempFile, out);
+        } catch (IOException e) {
+            Utils.closeQuietly(out);
+            tempFile.delete();
+            return body;
+        }
+    }
+
+    /**
+     * Tells whether a body returned by {@link #store} has been read to the end and stored. Only
+     * then does the cache hold the new response, rather than the old one or none at all.
+     *
+     * @param body is the stream {@link #store} returned, after it has been closed.
+     */
+    public static boolean isStored(InputStream body) {
+        return body instanceof CachingInputStream && ((CachingInputStream) body).mStored;
+    }
+
+    /**
+     * The parts of a Cache-Control header that the cache cares about.
+     */
+    private static class Policy {
+        boolean noStore;
+        long maxAge;
+        long staleWhileRevalidate = DEFAULT_STALE_WHILE_REVALIDATE_MILLIS;
+
+        Policy(String cacheControl) {
+            if (cacheControl == null) {
+                return;
+            }
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) {
+                    noStore = true;
+                } else if (directive.equals("no-cache")) {
+                    maxAge = 0;
+                } else if (directive.startsWith("max-age=")) {
+                    maxAge = parseSeconds(directive.substring("max-age=".length()), maxAge);
+                } else if (directive.startsWith("stale-while-revalidate=")) {
+                    staleWhileRevalidate = parseSeconds(
+                            directive.substring("stale-while-revalidate=".length()),
+                            staleWhileRevalidate);
+                }
+            }
+        }
+
+        private static long parseSeconds(String value, long defaultMillis) {
+            try {
+                return Long.parseLong(value.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                return defaultMillis;
+            }
+        }
+    }
+
+    /**
+     * A response stored in the cache.
+     */
+    public static class Entry {
+
+        private final String mKey;
+        private final File mFile;
+        private final int mHeaderSize;
+        private final long mReceivedAt;
+        private final long mMaxAge;
+        private final long mStaleWhileRevalidate;
+        private final long mCrc;
+        private final String mEtag;
+
+        Entry(String key, File file, int headerSize, long receivedAt, long maxAge,
+              long staleWhileRevalidate, long crc, String etag) {
+            mKey = key;
+            mFile = file;
+            mHeaderSize = headerSize;
+            mReceivedAt = receivedAt;
+            mMaxAge = maxAge;
+            mStaleWhileRevalidate = staleWhileRevalidate;
+            mCrc = crc;
+            mEtag = etag;
+        }
+
+        /**
+         * @return true if the response can be used without asking the server.
+         */
+        public boolean isFresh() {
+            return age() < mMaxAge;
+        }
+
+        /**
+         * @return true if the response may be shown while it is being revalidated.
+         */
+        public boolean isUsableWhileRevalidating() {
+            return age() < mMaxAge + mStaleWhileRevalidate;
+        }
+
+        /**
+         * @return the ETag the server sent with the response, or null.
+         */
+        public String getEtag() {
+            return mEtag;
+        }
+
+        /**
+         * @return the CRC32 of the body, which changes whenever the body does.
+         */
+        public long getCrc() {
+            return mCrc;
+        }
+
+        /**
+         * @return a stream containing the body of the response.
+         */
+        public InputStream openBody() throws IOException {
+            FileInputStream in = new FileInputStream(mFile);
+            long skipped = 0;
+            while (skipped < mHeaderSize) {
+                long count = in.skip(mHeaderSize - skipped);
+                if (count <= 0) {
+                    in.close();
+                    throw new IOException("Cache file is truncated");
+                }
+                skipped += count;
+            }
+            return in;
+        }
+
+        private long age() {
+            return System.currentTimeMillis() - mReceivedAt;
+        }
+    }
+
+    /**
+     * Copies everything that is read from a response body into a temporary file, and stores the
+     * file in the cache once the end of the body has been reached.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String mKey;
+        private final File mTempFile;
+        private final FileOutputStream mOut;
+        private final CRC32 mCrc = new CRC32();
+        private boolean mDone;
+        private boolean mStored;
+
+        CachingInputStream(InputStream in, String key, File tempFile, FileOutputStream out) {
+            super(in);
+            mKey = key;
+            mTempFile = tempFile;
+            mOut = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count;
+            try {
+                count = super.read(buffer, offset, length);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            if (mDone) {
+                return count;
+            }
+            if (count == -1) {
+                finish();
+            } else {
+                try {
+                    mOut.write(buffer, offset, count);
+                    mCrc.update(buffer, offset, count);
+                } catch (IOException e) {
+                    // Failing to cache the response shouldn't stop it from being read.
+                    abort();
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes still have to go into the cache, so read them instead.
+            byte[] buffer = BufferPool.acquireBytes();
+            try {
+                int count = read(buffer, 0, (int) Math.min(n, buffer.length));
+                return count == -1 ? 0 : count;
+            } finally {
+                BufferPool.releaseBytes(buffer);
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Reads the rest of the body, up to {@link #MAX_DRAIN_BYTES}, so it can be cached, and
+         * closes the stream. If there is more left than that, the response isn't cached.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!mDone) {
+                byte[] buffer = BufferPool.acquireBytes();
+                try {
+                    int total = 0;
+                    int count;
+                    while (!mDone && (count = read(buffer, 0, buffer.length)) != -1) {
+                        total += count;
+                        if (total > MAX_DRAIN_BYTES) {
+                            abort();
+                        }
+                    }
+                } catch (IOException e) {
+                    abort();
+                } finally {
+                    BufferPool.releaseBytes(buffer);
+                }
+            }
+            super.close();
+        }
+
+        private void finish() {
+            mDone = true;
+            try {
+                // Now that the whole body has been seen, fill in its CRC in the header.
+                ByteBuffer crc = ByteBuffer.allocate(8);
+                crc.putLong(0, mCrc.getValue());
+                mOut.getChannel().write(crc, CRC_OFFSET);
+                mOut.close();
+                mFiles.commit(mKey, mTempFile);
+                mStored = true;
+            } catch (IOException e) {
+                Utils.closeQuietly(mOut);
+                mTempFile.delete();
+            }
+        }
+
+        private void abort() {
+            if (!mDone) {
+                mDone = true;
+                Utils.closeQuietly(mOut);
+                mTempFile.delete();
+            }
+        }
+    }
+}
@@ -7,26 +7,29 @@ import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.inputmethod.EditorInfo;
-import android.widget.AdapterView;
 import android.widget.EditText;
-import android.widget.ListView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * NOTICE: This application was built prior to the introduction of RecyclerView, ViewModel,
- * Android Jetpack etc. Some components (like {@link BookAdapter} and {@link BookLoader}) are outdated.
+ * NOTICE: This application was built prior to the introduction of ViewModel, Android Jetpack
+ * etc. Some components (like {@link BookLoader}) are outdated.
  */
 public class MainActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<List<Book>> {
@@ -42,11 +45,21 @@ public class MainActivity extends AppCompatActivity implements
 
     private static final String PREVIOUS_SEARCH_KEY = "previousSearchQuery";
 
+    /** Keys of the loader arguments: the text to search for, and whether there's no connection */
+    private static final String ARG_QUERY = "query";
+    private static final String ARG_OFFLINE = "offline";
+
+    /** Time from the start of a search until its first result reaches the activity */
+    private static final Metrics.Histogram sDeliveredTimer = Metrics.timer("search.delivered");
+
     /** Adapter for list of books */
     private BookAdapter mAdapter;
 
-    /** URL for book data from the Google Books API */
-    private static final String GOOGLE_BOOKS_URL = "https://www.googleapis.com/books/v1/volumes";
+    /** Loads the pages of results after the first one while the user scrolls */
+    private BookPager mPager;
+
+    /** Loads the covers and descriptions of the top results in the background */
+    private BookPrefetcher mPrefetcher;
 
     /** Variables to check network status and to get Loader Manager */
     private ConnectivityManager connMgr;
@@ -63,6 +76,18 @@ public class MainActivity extends AppCompatActivity implements
     /** Boolean which is used to tell if the user just accessed the settings menu */
     private boolean justAccessedSettings;
 
+    /** Whether results update while the user types, and the debouncer that decides when */
+    private boolean mSearchAsYouType;
+    private SearchDebouncer mDebouncer;
+
+    /**
+     * When the current search started, as returned by {@link Metrics#startTimer()}, or 0 once
+     * its first result has been delivered, and the observer that times it until the first rows
+     * are drawn.
+     */
+    private long mSearchStartTime;
+    private FirstRowObserver mFirstRowObserver;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -75,19 +100,58 @@ public class MainActivity extends AppCompatActivity implements
         // Hide the progress bar so it doesn't show until a search begins.
         mProgressBar.setVisibility(View.GONE);
 
-        // Find the ListView in the layout.
-        ListView listView = (ListView) findViewById(R.id.list);
-
-        // Create a new adapter that takes an empty list of books as input
-        mAdapter = new BookAdapter(this, new ArrayList<Book>());
+        // Find the RecyclerView in the layout, and lay its rows out in a vertical list with a
+        // divider between them.
+        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.addItemDecoration(
+                new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        recyclerView.setHasFixedSize(true);
+
+        // Create a new adapter that starts with an empty list of books. When a book is clicked,
+        // open it in the DetailActivity. Only its key goes in the intent, the book itself is
+        // looked up in the BookRepository.
+        mAdapter = new BookAdapter(new BookAdapter.OnBookClickListener() {
+            @Override
+            public void onBookClick(Book book) {
+                startActivity(DetailActivity.createIntent(MainActivity.this, book));
+            }
+        });
 
-        // Set the adapter on the {@link ListView}
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
-        listView.setAdapter(mAdapter);
+        recyclerView.setAdapter(mAdapter);
+        mFirstRowObserver = FirstRowObserver.attach(recyclerView);
+
+        // Reuse the pager from before a rotation, so the pages that were loaded aren't lost.
+        mPager = (BookPager) getLastCustomNonConfigurationInstance();
+        if (mPager == null) {
+            mPager = new BookPager();
+        }
+        mPager.setListener(new BookPager.Listener() {
+            @Override
+            public void onBooksAppended(List<Book> books) {
+                mAdapter.addBooks(books);
+            }
+        });
+
+        mPrefetcher = new BookPrefetcher(this);
+
+        // Tell the pager how far the user has scrolled, so it can load the next pages in time.
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+                if (lastVisiblePosition != RecyclerView.NO_POSITION) {
+                    mPager.onScrolled(lastVisiblePosition);
+                }
+            }
+        });
 
-        // Find the emptyView in the layout and set it on the listView.
+        // Find the emptyView in the layout, and show it whenever the list is empty.
         mEmptyTextView = (TextView) findViewById(R.id.empty_view);
-        listView.setEmptyView(mEmptyTextView);
+        EmptyViewObserver.attach(mAdapter, mEmptyTextView);
 
         // Set the text of the empty layout to prompt the user to search.
         mEmptyTextView.setText(R.string.Search_for_a_book);
@@ -95,23 +159,6 @@ public class MainActivity extends AppCompatActivity implements
         // Retrieve our previous state is there is any
         retrievePreviousState(savedInstanceState);
 
-        // Set up a clickListener on the listView to open up the DetailActivity if the user clicks
-        // on a list item.
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-
-                // Find the current book that was clicked on
-                Book currentBook = mAdapter.getItem(position);
-
-                // Create an intent to the DetailActivity, and send the currentBook to the Activity
-                // as well.
-                Intent intent = new Intent(MainActivity.this, DetailActivity.class);
-                intent.putExtra("currentBook", currentBook);
-                startActivity(intent);
-            }
-        });
-
         // Get a reference to the ConnectivityManager to check state of network connectivity
         connMgr = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
 
@@ -119,33 +166,9 @@ public class MainActivity extends AppCompatActivity implements
             @Override
             public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
                 if (actionId == EditorInfo.IME_ACTION_SEARCH) {
-                    // Get details on the currently active default data network
-                    networkInfo = connMgr.getActiveNetworkInfo();
-
-                    // Test if the user has a network connection, otherwise give the user an error message
-                    // informing them.
-                    if (networkInfo != null && networkInfo.isConnected()) {
-                        // Test if the user is not searching the same thing as before. If they are,
-                        // do not restart the loader as it is a waste of system resources. Also test
-                        // if they just accessed the settings menu. If so, allow the search to take place,
-                        // even if they did search the same thing before because we want to update the
-                        // list according to the user's latest settings.
-                        if (!mPreviousSearchQuery.equals(mEditText.getText().toString().trim()) || justAccessedSettings) {
-                            // Set the previous search query to be the current search, so that it can be
-                            // tested again for the next search.
-                            mPreviousSearchQuery = mEditText.getText().toString().trim();
-                            justAccessedSettings = false;
-                            // Restarts/Initialises the loader. Pass in the int ID constant defined
-                            // above and pass in null for the bundle. Pass in this activity for the
-                            // LoaderCallbacks parameter (which is valid because this activity
-                            // implements the LoaderCallbacks interface).
-                            getLoaderManager().restartLoader(BOOK_LOADER_ID, null, MainActivity.this);
-                        }
-                    } else {
-                        // Update empty state with no connection error message.
-                        mEmptyTextView.setText(R.string.no_internet);
-                        mPreviousSearchQuery = "";
-                    }
+                    String query = mEditText.getText().toString();
+                    mDebouncer.onSubmitted(query);
+                    search(query);
                     return true;
                 } else {
                     return false;
@@ -153,6 +176,112 @@ public class MainActivity extends AppCompatActivity implements
             }
         });
 
+        // In search-as-you-type mode, the debouncer decides when the text typed so far is
+        // searched for.
+        mDebouncer = new SearchDebouncer(new SearchDebouncer.Listener() {
+            @Override
+            public void onSearch(String query) {
+                search(query);
+            }
+        }, 0);
+        mEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (mSearchAsYouType) {
+                    mDebouncer.onTextChanged(s.toString());
+                }
+            }
+        });
+
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        // Read the search-as-you-type settings, which may have just been changed.
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        mSearchAsYouType = sharedPreferences.getBoolean(
+                getString(R.string.settings_search_as_you_type_key),
+                getResources().getBoolean(R.bool.settings_search_as_you_type_default));
+        mDebouncer.setDebounceMillis(Long.parseLong(sharedPreferences.getString(
+                getString(R.string.settings_debounce_key),
+                getString(R.string.settings_debounce_default))));
+
+        // Turn metrics on or off, and show or hide the menu item of the metrics screen.
+        Metrics.setEnabled(sharedPreferences.getBoolean(getString(R.string.settings_metrics_key),
+                getResources().getBoolean(R.bool.settings_metrics_default)));
+        invalidateOptionsMenu();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Don't start a search for text typed just before the user left, and stop prefetching,
+        // so the next screen gets the whole connection.
+        mDebouncer.cancel();
+        mPrefetcher.cancel();
+    }
+
+    /**
+     * Searches for the given text, unless it is the search that is already showing.
+     *
+     * Restarting the loader supersedes any load that is still running for an older search, so
+     * only the results of the latest search reach {@link #onLoadFinished(Loader, List)}.
+     */
+    private void search(String text) {
+        String query = text.trim();
+
+        // Get details on the currently active default data network
+        networkInfo = connMgr.getActiveNetworkInfo();
+
+        // Test if the user has a network connection, otherwise give the user an error message
+        // informing them.
+        if (networkInfo != null && networkInfo.isConnected()) {
+            // Test if the user is not searching the same thing as before. If they are,
+            // do not restart the loader as it is a waste of system resources. Also test
+            // if they just accessed the settings menu. If so, allow the search to take place,
+            // even if they did search the same thing before because we want to update the
+            // list according to the user's latest settings.
+            if (!mPreviousSearchQuery.equals(query) || justAccessedSettings) {
+                // Set the previous search query to be the current search, so that it can be
+                // tested again for the next search.
+                mPreviousSearchQuery = query;
+                justAccessedSettings = false;
+                // Restarts/Initialises the loader. Pass in the int ID constant defined
+                // above and pass in null for the bundle. Pass in this activity for the
+                // LoaderCallbacks parameter (which is valid because this activity
+                // implements the LoaderCallbacks interface).
+                getLoaderManager().restartLoader(BOOK_LOADER_ID, createLoaderArgs(query, false),
+                        MainActivity.this);
+            }
+        } else {
+            // Update empty state with no connection error message.
+            mEmptyTextView.setText(R.string.no_internet);
+            mPreviousSearchQuery = "";
+
+            // Search the books saved on the device instead. The previous search query stays
+            // empty, so the same search goes to the network once there is a connection again.
+            if (!query.isEmpty()) {
+                getLoaderManager().restartLoader(BOOK_LOADER_ID, createLoaderArgs(query, true),
+                        MainActivity.this);
+            }
+        }
+    }
+
+    private static Bundle createLoaderArgs(String query, boolean offline) {
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query);
+        args.putBoolean(ARG_OFFLINE, offline);
+        return args;
     }
 
     @Override
@@ -163,6 +292,22 @@ public class MainActivity extends AppCompatActivity implements
         super.onSaveInstanceState(outState);
     }
 
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        // Keep the pager, and the pages it loaded, when the activity is recreated.
+        return mPager;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPager.setListener(null);
+        // Only stop the pager for good if the activity isn't coming back.
+        if (isFinishing()) {
+            mPager.shutdown();
+        }
+    }
+
     private void retrievePreviousState(Bundle savedInstanceState) {
         // Check if our loader has been initialised already. If so, then than means there was an
         // orientation change. Therefore, call initLoader so the current list of books is restored.
@@ -183,26 +328,46 @@ public class MainActivity extends AppCompatActivity implements
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // The metrics screen is only useful while metrics are being recorded.
+        menu.findItem(R.id.action_metrics).setVisible(Metrics.isEnabled());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
+        if (id == R.id.action_shelf) {
+            startActivity(new Intent(this, ShelfActivity.class));
+            return true;
+        }
         if (id == R.id.action_settings) {
             Intent settingsIntent = new Intent(this, SettingsActivity.class);
             justAccessedSettings = true;
             startActivity(settingsIntent);
             return true;
         }
+        if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
     @Override
     public Loader<List<Book>> onCreateLoader(int id, Bundle args) {
 
+        // Start timing the search, if metrics are on.
+        mSearchStartTime = Metrics.startTimer();
+        mFirstRowObserver.start(mSearchStartTime);
+
         // Set Empty TextView to an empty string, so it doesn't show while loading results.
         mEmptyTextView.setText("");
 
-        // Clear the adapter of previous book data
-        mAdapter.clear();
+        // Stop loading pages of the old search. The old books stay in the list until the new
+        // ones arrive, and then only the rows that changed are updated.
+        mPager.reset();
 
         // Set the progress bar to be visible, so the user knows we're handling their request.
         mProgressBar.setVisibility(View.VISIBLE);
@@ -222,18 +387,15 @@ public class MainActivity extends AppCompatActivity implements
                 getString(R.string.settings_print_type_key),
                 getString(R.string.settings_print_type_default));
 
-        // Parse the base URL and prepare it for query parameters to be added.
-        Uri baseUri = Uri.parse(GOOGLE_BOOKS_URL);
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+        boolean showIndexFirst = sharedPreferences.getBoolean(
+                getString(R.string.settings_instant_results_key),
+                getResources().getBoolean(R.bool.settings_instant_results_default));
 
-        // Add query parameters according to user actions.
-        uriBuilder.appendQueryParameter("q", mEditText.getText().toString().trim());
-        uriBuilder.appendQueryParameter("maxResults", String.valueOf(maxResults));
-        uriBuilder.appendQueryParameter("orderBy", orderBy);
-        uriBuilder.appendQueryParameter("printType", printType);
-        uriBuilder.appendQueryParameter("prettyPrint", "false");
+        String text = args != null ? args.getString(ARG_QUERY) : mPreviousSearchQuery;
+        boolean offline = args != null && args.getBoolean(ARG_OFFLINE);
+        BookQuery query = new BookQuery(text, maxResults, orderBy, printType);
 
-        return new BookLoader(this, uriBuilder.toString());
+        return new BookLoader(this, query, offline, showIndexFirst);
     }
 
     @Override
@@ -242,16 +404,41 @@ public class MainActivity extends AppCompatActivity implements
         // Hide the progress bar
         mProgressBar.setVisibility(View.GONE);
 
+        // Record how long the first result of the search took to arrive. A loader may deliver
+        // again later, such as after revalidating, but that isn't what the user waited for.
+        sDeliveredTimer.recordSince(mSearchStartTime);
+        mSearchStartTime = 0;
+
         // Set the empty text view to inform the user that no books were found. This will only be
-        // displayed if there are no books to display.
-        mEmptyTextView.setText(R.string.no_books_found);
-
-        // If there is a valid list of {@link Book}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update. If there is not valid list, then do
-        // nothing. The empty text view will display and inform the user.
-        if (mAdapter.isEmpty()) {
-            if (books != null && !books.isEmpty()) {
-                mAdapter.addAll(books);
+        // displayed if there are no books to display. Without a connection, say so instead.
+        BookLoader bookLoader = (BookLoader) loader;
+        mEmptyTextView.setText(bookLoader.isOffline() ? R.string.no_internet
+                : R.string.no_books_found);
+
+        // Hand the first page to the pager. If it's the page the pager already has (for example
+        // after a rotation), the adapter keeps every page loaded so far. Books from the index
+        // aren't a page of API results, so there are no further pages to load for them.
+        BookQuery query = bookLoader.getQuery();
+        boolean localResult = bookLoader.isLocalResult();
+        if (!mPager.setFirstPage(query, books, !localResult) && mAdapter.getItemCount() > 0) {
+            return;
+        }
+
+        // Replace the adapter's data set with the books. The adapter works out which rows
+        // changed in the background and only updates those. A loader can deliver more than once
+        // (a cached list first, then the revalidated one), and the second list usually only
+        // changes a few rows. If there are no books, the empty text view will display and inform
+        // the user.
+        List<Book> allBooks = mPager.getBooks();
+        mAdapter.setBooks(allBooks);
+        if (!allBooks.isEmpty()) {
+            if (bookLoader.isOffline()) {
+                Toast.makeText(this, R.string.offline_results, Toast.LENGTH_SHORT).show();
+            } else {
+                // Start loading the next pages straight away, and warm up the top results in
+                // case the user opens one of them.
+                mPager.onScrolled(0);
+                mPrefetcher.prefetch(allBooks);
             }
         }
     }
@@ -259,7 +446,7 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public void onLoaderReset(Loader<List<Book>> loader) {
         // Loader reset, so we can clear out our existing data.
-        mAdapter.clear();
+        mAdapter.setBooks(new ArrayList<Book>());
     }
 
 }
\ No newline at end of file
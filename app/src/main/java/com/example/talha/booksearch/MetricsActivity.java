@@ -0,0 +1,98 @@
+package com.example.talha.booksearch;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A debugging screen that shows the {@link Metrics} recorded so far: how long each stage of a
+ * search took, where the results came from, and how much was allocated. The table can be reset,
+ * written to the log, or saved to a file so it can be compared with another run.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = MetricsActivity.class.getSimpleName();
+
+    /** Shows the table of metrics */
+    private TextView mMetricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mMetricsTextView = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    /**
+     * Shows the metrics as they are now.
+     */
+    private void refresh() {
+        mMetricsTextView.setText(Metrics.dump());
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_refresh) {
+            refresh();
+            return true;
+        }
+        if (id == R.id.action_reset) {
+            Metrics.reset();
+            refresh();
+            return true;
+        }
+        if (id == R.id.action_log) {
+            // One line at a time, so logcat doesn't cut the table short.
+            for (String line : Metrics.dump().split("\n")) {
+                Log.i(LOG_TAG, line);
+            }
+            Toast.makeText(this, R.string.metrics_logged, Toast.LENGTH_SHORT).show();
+            return true;
+        }
+        if (id == R.id.action_save) {
+            save();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Saves the metrics to a file in the app's external files directory, which can be copied off
+     * the device without root, or in its internal one if there is no external storage.
+     */
+    private void save() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        try {
+            File file = Metrics.dumpToFile(new File(directory, "metrics"));
+            Toast.makeText(this, getString(R.string.metrics_saved, file.getPath()),
+                    Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem saving metrics.", e);
+            Toast.makeText(this, R.string.metrics_save_error, Toast.LENGTH_SHORT).show();
+        }
+    }
+}
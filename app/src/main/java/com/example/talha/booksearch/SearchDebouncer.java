@@ -0,0 +1,140 @@
+package com.example.talha.booksearch;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Turns the text the user types into searches, for the search-as-you-type mode.
+ *
+ * A search only starts once the user has stopped typing for the debounce window, so typing a
+ * word makes one request instead of one per letter. On top of that, each query the user types
+ * may only start a limited number of requests (the budget). Once the budget is used up, the
+ * results only update when the user presses search. A query is finished when the user presses
+ * search or clears the text box, which also resets the budget.
+ *
+ * All methods must be called on the main thread.
+ */
+public class SearchDebouncer {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = SearchDebouncer.class.getSimpleName();
+
+    /** The most requests that typing a single query may start */
+    private static final int REQUEST_BUDGET = 3;
+
+    /** Queries shorter than this are too vague to be worth a request */
+    private static final int MIN_QUERY_LENGTH = 3;
+
+    /**
+     * Listens for the searches the debouncer decides to make.
+     */
+    public interface Listener {
+        void onSearch(String query);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+
+    /** How long the user has to stop typing before a search starts */
+    private long mDebounceMillis;
+
+    /** The text waiting for the debounce window to end, and the last text that was searched */
+    private String mPendingQuery;
+    private String mLastQuery = "";
+
+    /** Changes to the text, and the requests made for them, since the query was started */
+    private int mChanges;
+    private int mRequests;
+
+    /** Total changes and requests since the activity started, for the logs */
+    private int mTotalChanges;
+    private int mTotalRequests;
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            String query = mPendingQuery;
+            mPendingQuery = null;
+            if (query == null || query.equals(mLastQuery) || mRequests >= REQUEST_BUDGET) {
+                return;
+            }
+            mLastQuery = query;
+            mRequests++;
+            mTotalRequests++;
+            mListener.onSearch(query);
+        }
+    };
+
+    /**
+     * @param listener       is told when a search should start.
+     * @param debounceMillis is how long the user has to stop typing before a search starts.
+     */
+    public SearchDebouncer(Listener listener, long debounceMillis) {
+        mListener = listener;
+        mDebounceMillis = debounceMillis;
+    }
+
+    /**
+     * Changes the debounce window, for example after the user changed it in the settings.
+     */
+    public void setDebounceMillis(long debounceMillis) {
+        mDebounceMillis = debounceMillis;
+    }
+
+    /**
+     * Called every time the text in the search box changes. Any search that was waiting is
+     * replaced by one for the new text.
+     */
+    public void onTextChanged(String text) {
+        String query = text.trim();
+        mHandler.removeCallbacks(mSearchRunnable);
+        mPendingQuery = null;
+
+        if (query.isEmpty()) {
+            // Clearing the text box finishes the query.
+            finishQuery();
+            return;
+        }
+
+        mChanges++;
+        mTotalChanges++;
+        if (query.length() >= MIN_QUERY_LENGTH && mRequests < REQUEST_BUDGET) {
+            mPendingQuery = query;
+            mHandler.postDelayed(mSearchRunnable, mDebounceMillis);
+        }
+    }
+
+    /**
+     * Called when the user presses search. The waiting search is dropped, since the caller
+     * searches straight away, and the query is finished.
+     */
+    public void onSubmitted(String text) {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mPendingQuery = null;
+        mLastQuery = text.trim();
+        finishQuery();
+    }
+
+    /**
+     * Drops any search that is waiting. Called when the activity stops.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mPendingQuery = null;
+    }
+
+    /**
+     * Logs how many requests the debounce window and the budget avoided for the query that was
+     * just finished, and resets the budget for the next one.
+     */
+    private void finishQuery() {
+        if (mChanges > 0) {
+            Log.d(LOG_TAG, "Query finished: " + mChanges + " changes, " + mRequests
+                    + " requests, " + (mChanges - mRequests) + " avoided (" + (mTotalChanges
+                    - mTotalRequests) + " avoided in total)");
+        }
+        mChanges = 0;
+        mRequests = 0;
+    }
+}
@@ -38,6 +38,10 @@ public class SettingsActivity extends AppCompatActivity {
             // Find the printTyle preference using it's key and set it's summary
             Preference printType = findPreference(getString(R.string.settings_print_type_key));
             bindPreferenceSummaryToValue(printType);
+
+            // Find the debounce preference using it's key and set it's summary
+            Preference debounce = findPreference(getString(R.string.settings_debounce_key));
+            bindPreferenceSummaryToValue(debounce);
         }
 
         private void bindPreferenceSummaryToValue(Preference preference) {
@@ -0,0 +1,49 @@
+package com.example.talha.booksearch;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Shows the books the user saved on their shelf.
+ *
+ * The adapter reads the books straight from the {@link BookShelf}, which only decodes a book when
+ * its row is shown, so even a long shelf opens instantly.
+ */
+public class ShelfActivity extends AppCompatActivity {
+
+    /** Adapter for the list of saved books */
+    private BookAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_shelf);
+
+        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.shelf_list);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.addItemDecoration(
+                new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+
+        // The list is backed by the shelf itself, so nothing is copied or decoded up front.
+        // Open a saved book in the DetailActivity, just like a search result.
+        mAdapter = new BookAdapter(BookShelf.getInstance().asList(),
+                new BookAdapter.OnBookClickListener() {
+                    @Override
+                    public void onBookClick(Book book) {
+                        startActivity(DetailActivity.createIntent(ShelfActivity.this, book));
+                    }
+                });
+        recyclerView.setAdapter(mAdapter);
+        EmptyViewObserver.attach(mAdapter, findViewById(R.id.shelf_empty_view));
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // A book may have been removed from the shelf in the DetailActivity.
+        mAdapter.notifyDataSetChanged();
+    }
+}
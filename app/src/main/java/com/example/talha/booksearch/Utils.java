@@ -2,20 +2,17 @@ package com.example.talha.booksearch;
 
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Helper methods related to requesting and receiving book data from Google Books.
@@ -24,6 +21,34 @@ public final class Utils {
 
     /** Tag for the log messages */
     private static final String LOG_TAG = Utils.class.getSimpleName();
+
+    /** Shares the result of a search between callers asking for the same URL at the same time */
+    private static final SingleFlight<String, List<Book>> sBookRequests = new SingleFlight<>();
+
+    /** The same for descriptions, which are prefetched in the background and loaded on demand */
+    private static final SingleFlight<String, String> sDescriptionRequests = new SingleFlight<>();
+
+    /**
+     * Metrics for the stages of a search after the response starts to arrive: how long the body
+     * took to download, how long parsing it (and copying it into the cache) took on top of that,
+     * how big it was, and how much was allocated for buffers. See {@link Metrics}.
+     */
+    private static final Metrics.Histogram sDownloadTimer = Metrics.timer("search.download");
+    private static final Metrics.Histogram sParseTimer = Metrics.timer("search.parse");
+    private static final Metrics.Histogram sCachedParseTimer = Metrics.timer("search.parse_cached");
+    private static final Metrics.Histogram sWireBytes = Metrics.histogram("search.wire_bytes");
+    private static final Metrics.Gauge sBufferBytes = Metrics.gauge("buffers.allocated_bytes");
+    private static final Metrics.Counter sFreshCacheHits = Metrics.counter("http.cache_fresh");
+    private static final Metrics.Counter sNotModified = Metrics.counter("http.not_modified");
+    private static final Metrics.Counter sHttpErrors = Metrics.counter("http.errors");
+
+    static {
+        // How many requests were shared shows up on the metrics screen, instead of in the log
+        // after every search.
+        Metrics.addReport(sBookRequests);
+        Metrics.addReport(sDescriptionRequests);
+    }
+
     /**
      * Create a private constructor because no one should ever create a {@link Utils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -33,24 +58,182 @@ public final class Utils {
     }
 
     /**
-     * Query the Google Books API and return a list of {@link Book} objects.
+     * Query the Google Books API and return a list of {@link Book} objects, or null if the request
+     * failed. A search that found no books returns an empty list.
+     *
+     * If the response to this URL is cached and still fresh, it is used without going to the
+     * network. If it is cached but stale, the server is asked whether it has changed, and the
+     * cached copy is used if it hasn't.
+     *
+     * If the same URL is already being fetched on another thread, this waits for that fetch and
+     * returns the same list instead of making a second request. The list must not be changed.
+     *
      * @param requestUrl The URL used to query the API
      */
-    public static List<Book> fetchBookData(String requestUrl) {
+    public static List<Book> fetchBookData(final String requestUrl) {
+        return sBookRequests.execute(requestUrl, new Callable<List<Book>>() {
+            @Override
+            public List<Book> call() {
+                return fetchBookDataNow(requestUrl);
+            }
+        });
+    }
+
+    /**
+     * Does the work of {@link #fetchBookData(String)}, without checking for other callers.
+     */
+    private static List<Book> fetchBookDataNow(String requestUrl) {
+
+        // Look for a cached copy of the response first.
+        HttpCache.Entry entry = getCacheEntry(requestUrl);
+        if (entry != null && entry.isFresh()) {
+            List<Book> books = readCachedBookData(entry);
+            if (books != null) {
+                sFreshCacheHits.increment();
+                return books;
+            }
+        }
 
         //Create URL object
         URL url = createUrl(requestUrl);
 
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request", e);
+        // Perform the HTTP request. The response is parsed while it is being downloaded, and the
+        // relevant fields are returned as Book objects.
+        return makeHttpRequest(url, entry).books;
+
+    }
+
+    /**
+     * Returns the cached books for the given URL if the cached response may be shown while it is
+     * being revalidated (stale-while-revalidate). The network is never used.
+     *
+     * @param requestUrl The URL used to query the API
+     * @return the cached books, or null if there is no usable cached response.
+     */
+    public static List<Book> fetchStaleBookData(String requestUrl) {
+        HttpCache.Entry entry = getCacheEntry(requestUrl);
+        if (entry == null || !entry.isUsableWhileRevalidating()) {
+            return null;
         }
+        return readCachedBookData(entry);
+    }
 
-        // Extract relevant fields from JSON and return them as Book objects.
-        return parseJsonResponse(jsonResponse);
+    /**
+     * Asks the server whether the cached response for the given URL has changed, and returns the
+     * new books if it has.
+     *
+     * @param requestUrl The URL used to query the API
+     * @return the new list of books, or null if they are the same as the cached ones or the
+     * request failed.
+     */
+    public static List<Book> revalidateBookData(String requestUrl) {
+        HttpResult result = makeHttpRequest(createUrl(requestUrl), getCacheEntry(requestUrl));
+        return result.notModified ? null : result.books;
+    }
 
+    /**
+     * Loads the description of a single book, from the cache if possible and otherwise from the
+     * Google Books API. Descriptions hardly ever change, so any cached copy that may still be
+     * shown is used as it is.
+     *
+     * If the description is already being fetched, for example by the prefetcher, this waits
+     * for that request instead of making a second one.
+     *
+     * A description that was loaded is also added to the {@link BookIndex}, so offline searches
+     * can find the book by it.
+     *
+     * @param volumeId The Google Books volume id of the book
+     * @return the description, or null if the book has none or the request failed.
+     */
+    public static String fetchBookDescription(final String volumeId) {
+        final String requestUrl = BookQuery.descriptionUrl(volumeId);
+        String description = sDescriptionRequests.execute(requestUrl, new Callable<String>() {
+            @Override
+            public String call() {
+                return fetchBookDescriptionNow(requestUrl);
+            }
+        });
+
+        BookIndex index = BookIndex.getInstance();
+        if (index != null && description != null) {
+            index.addDescription(volumeId, description);
+        }
+        return description;
+    }
+
+    /**
+     * Does the work of {@link #fetchBookDescription(String)}, without checking for other callers.
+     */
+    private static String fetchBookDescriptionNow(String requestUrl) {
+        return fetchVolume(requestUrl, new VolumeParser<String>() {
+            @Override
+            public String parse(JsonStreamReader reader) throws IOException {
+                return BookJsonParser.parseDescription(reader);
+            }
+        });
+    }
+
+    /**
+     * Loads everything about a single book, including its description, from the cache if
+     * possible and otherwise from the Google Books API. This is only needed when a book has to be
+     * shown that was never seen by this process, for example after Android killed the app while
+     * the detail screen was open.
+     *
+     * @param volumeId The Google Books volume id of the book
+     * @return the book, or null if the request failed.
+     */
+    public static Book fetchBook(String volumeId) {
+        return fetchVolume(BookQuery.volumeUrl(volumeId), new VolumeParser<Book>() {
+            @Override
+            public Book parse(JsonStreamReader reader) throws IOException {
+                return BookJsonParser.parseVolume(reader);
+            }
+        });
+    }
+
+    /**
+     * Reads part of a single volume response with the given parser. Volumes hardly ever change,
+     * so any cached copy that may still be shown is used as it is, and otherwise the response is
+     * downloaded and cached.
+     *
+     * @return what the parser read, or null if the request failed.
+     */
+    private static <T> T fetchVolume(String requestUrl, VolumeParser<T> parser) {
+        HttpCache.Entry entry = getCacheEntry(requestUrl);
+        if (entry != null && entry.isUsableWhileRevalidating()) {
+            try {
+                return parseVolume(entry.openBody(), parser);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading cached volume.", e);
+            }
+        }
+
+        URL url = createUrl(requestUrl);
+        if (url == null) {
+            return null;
+        }
+        NetworkClient.Response response = null;
+        try {
+            response = NetworkClient.getInstance().get(url);
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error: Response code not 200, Code: " + response.getCode());
+                return null;
+            }
+            InputStream body = response.getBody();
+            HttpCache cache = HttpCache.getInstance();
+            if (cache != null) {
+                body = cache.store(requestUrl, response.getHeader("Cache-Control"),
+                        response.getHeader("ETag"), body);
+            }
+            return parseVolume(body, parser);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem retrieving volume.", e);
+            return null;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
     }
 
     /**
@@ -71,180 +254,218 @@ public final class Utils {
     }
 
     /**
-     * Make a HTTP request to the given URL and return a String
+     * Make a HTTP request to the given URL and parse the response as it arrives.
+     *
+     * If there is a cached response with an ETag, the request is made conditional, so the server
+     * can answer "304 Not Modified" instead of sending the same books again.
+     *
      * @param url URL to make HTTP request to
-     * @return String that contains the response.
+     * @param entry the cached response for this URL, or null.
+     * @return the list of books in the response, which is null if the request failed.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static HttpResult makeHttpRequest(URL url, HttpCache.Entry entry) {
+        HttpResult result = new HttpResult();
 
         // If the URL is null, return early.
         if (url == null) {
-            return jsonResponse;
+            return result;
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
-        try{
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.setConnectTimeout(15000);
-            urlConnection.setReadTimeout(10000);
-            urlConnection.connect();
-
-            // If the request was successful (Response Code 200), then read the input stream and
-            // parse the response.
-            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+        HttpCache cache = HttpCache.getInstance();
+        Map<String, String> headers = new HashMap<>();
+        if (entry != null && entry.getEtag() != null) {
+            headers.put("If-None-Match", entry.getEtag());
+        }
+
+        // The request goes through the shared NetworkClient, so it can reuse a connection (and
+        // TLS session) that is still open from a previous search.
+        NetworkClient.Response response = null;
+        try {
+            response = NetworkClient.getInstance().get(url, headers);
+
+            if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                // The cached response is still correct, so mark it as fresh and use it.
+                cache.refresh(entry, response.getHeader("Cache-Control"));
+                result.notModified = true;
+                sNotModified.increment();
+                result.books = readCachedBookData(entry);
+                Log.d(LOG_TAG, "Not modified, first byte after "
+                        + response.getTimeToFirstByte() + " ms");
+
+            } else if (response.getCode() == HttpURLConnection.HTTP_OK) {
+                // If the request was successful (Response Code 200), then parse the response
+                // straight from the input stream, copying it into the cache as it is read.
+                // When metrics are on, time the reads from the network separately, so the time
+                // spent downloading can be told apart from the time spent parsing.
+                long startTime = Metrics.startTimer();
+                InputStream body = response.getBody();
+                TimedInputStream timedBody = null;
+                if (startTime != 0) {
+                    timedBody = new TimedInputStream(body);
+                    body = timedBody;
+                }
+                if (cache != null) {
+                    body = cache.store(url.toString(), response.getHeader("Cache-Control"),
+                            response.getHeader("ETag"), body);
+                }
+                result.books = parseJsonResponse(body);
+                if (timedBody != null) {
+                    long readMicros = timedBody.getReadNanos() / 1000;
+                    sDownloadTimer.record(readMicros);
+                    sParseTimer.record((System.nanoTime() - startTime) / 1000 - readMicros);
+                }
+
+                // Only a body that was stored has a CRC of its own. If it wasn't, for example
+                // because of "no-store", whatever the cache still holds is not this response.
+                boolean stored = HttpCache.isStored(body);
+                if (stored && result.books != null && entry != null) {
+                    // Even a full response may contain exactly what we already had.
+                    HttpCache.Entry newEntry = cache.get(url.toString());
+                    result.notModified = newEntry != null && newEntry.getCrc() == entry.getCrc();
+                } else if (stored && result.books == null) {
+                    // The body was cut short. If the server closed the connection cleanly, the
+                    // cache can't tell and has stored the partial body, so drop it.
+                    HttpCache.Entry newEntry = cache.get(url.toString());
+                    if (newEntry != null) {
+                        cache.remove(newEntry);
+                    }
+                }
+
+                // The pool is shared by every request, so only its total is meaningful. Once the
+                // first searches have filled the pool, it should stop growing.
+                sWireBytes.record(response.getWireBytes());
+                sBufferBytes.set(BufferPool.getBytesAllocated());
+                Log.d(LOG_TAG, "First byte after " + response.getTimeToFirstByte() + " ms, read "
+                        + response.getWireBytes() + " bytes on the wire, "
+                        + response.getBodyBytes() + " bytes decoded");
             } else {
-                Log.e(LOG_TAG, "Error: Response code not 200, Code: " + urlConnection.getResponseCode());
+                sHttpErrors.increment();
+                Log.e(LOG_TAG, "Error: Response code not 200, Code: " + response.getCode());
             }
         } catch (IOException e) {
+            sHttpErrors.increment();
             Log.e(LOG_TAG, "Problem retrieving results.", e);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
+            // Closing the response hands the connection back to the pool instead of
+            // disconnecting it.
+            if (response != null) {
+                response.close();
             }
         }
 
-        return jsonResponse;
+        return result;
 
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
+     * Parses the body of a cached response.
+     *
+     * @return the books in the response, or null if the cached file couldn't be read.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-            String line = bufferedReader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = bufferedReader.readLine();
+    private static List<Book> readCachedBookData(HttpCache.Entry entry) {
+        long startTime = Metrics.startTimer();
+        try {
+            List<Book> books = parseJsonResponse(entry.openBody());
+            if (books == null) {
+                // The cached body is cut short, so it will never be usable.
+                HttpCache.getInstance().remove(entry);
+                return null;
             }
+            sCachedParseTimer.recordSince(startTime);
+            return books;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading cached results.", e);
+            return null;
         }
-
-        return output.toString();
-
     }
 
-    private static List<Book> parseJsonResponse(String jsonResponse) {
+    /**
+     * @return the cached response for the given URL, or null if there isn't one.
+     */
+    private static HttpCache.Entry getCacheEntry(String requestUrl) {
+        HttpCache cache = HttpCache.getInstance();
+        return cache != null ? cache.get(requestUrl) : null;
+    }
 
-        // We set up our for loop counter here, and set it to -1. If the app crashes at this
-        // stage, we write to the logs. If we see this -1, that means the app crashed while
-        // extracting the JSONArray. If it's not -1, then it crashed at that position in the
-        // JSONArray while retrieving book information.
-        int i = -1;
+    /**
+     * Parse the JSON response token by token while it is read from the {@link InputStream}, with
+     * {@link BookFetcher#parse(InputStream, List)}, and remember the books in the index.
+     *
+     * @return the books in the response, or null if it couldn't be read to the end.
+     */
+    private static List<Book> parseJsonResponse(InputStream inputStream) {
 
-        // Create an empty ArrayList that we can start adding books to
+        // Create an empty ArrayList that the parser can start adding books to
         List<Book> books = new ArrayList<>();
 
-        // Try to parse the JSON response string. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        // Try to parse the JSON response. If there's a problem with the way the JSON is formatted,
+        // a MalformedJsonException will be thrown. Catch it so the app doesn't crash, and print
+        // the error message to the logs. Any books that were read before the problem are still
+        // returned, since the rest of the response wouldn't have been any better.
         try {
+            BookFetcher.parse(inputStream, books);
+        } catch (MalformedJsonException e) {
+            // The position of the book that couldn't be read is the number of books read so far.
+            Log.e(LOG_TAG, "Error parsing JSON at object " + books.size(), e);
+        } catch (IOException e) {
+            // The response was cut short, for example because the connection dropped. The books
+            // read so far are only part of the answer, so they must not be cached, shown as the
+            // last page, or compared with the cached response.
+            Log.e(LOG_TAG, "Response ended after " + books.size() + " books", e);
+            return null;
+        }
 
-            // Create a JSONObject from the JSON response string
-            JSONObject baseJsonResponse = new JSONObject(jsonResponse);
-
-            // Extract the JSONArray associated with the key called "items",
-            // which represents a list of items (or books).
-            JSONArray items = baseJsonResponse.getJSONArray("items");
-
-            // For each book in the items array, create a book object.
-            for (i = 0; i < items.length(); i++) {
-
-                // Set the book's subtitle, description, author, rating, currency and price to null
-                // in case the book doesn't have either.
-                String bookSubtitle = null;
-                String bookDescription = null;
-                String bookAuthor = null;
-                Double bookRating = null;
-                String imageUrl = null;
-                String currency = null;
-                Double bookPrice = null;
-
-                // Get a single book at position i within the array of books.
-                JSONObject currentBook = items.getJSONObject(i);
-
-                // For that book, extract the JSONObject with the key called "volumeInfo", which is
-                // all the detailed information about the book.
-                JSONObject bookInfo = currentBook.getJSONObject("volumeInfo");
-
-                // Extract the value for the key called "title".
-                String bookTitle = bookInfo.getString("title");
-
-                // If the book has a subtitle, extract it.
-                if (bookInfo.has("subtitle")) {
-                    bookSubtitle = bookInfo.getString("subtitle");
-                }
-
-                // If the book has a description, extract it.
-                if (bookInfo.has("description")) {
-                    bookDescription = bookInfo.getString("description");
-                }
-
-                // If the book has an Author, extract it.
-                if (bookInfo.has("authors")) {
-                    JSONArray bookAuthors = bookInfo.getJSONArray("authors");
-                        bookAuthor = bookAuthors.getString(0);
-                }
-
-                // If the book has a rating, extract it.
-                if (bookInfo.has("averageRating")) {
-                    bookRating = bookInfo.getDouble("averageRating");
-                }
-
-                // For that book, extract the JSONObject with the key called "imageLinks", which
-                // contain the low and high resolution images of the book, if the book has it.
-                if (bookInfo.has("imageLinks")) {
-                    JSONObject imageLinks = bookInfo.getJSONObject("imageLinks");
+        // Remember every book that was seen, so it can be found again without a connection.
+        BookIndex index = BookIndex.getInstance();
+        if (index != null && !books.isEmpty()) {
+            index.addAll(books);
+        }
 
-                    // Extract the value for the key called "smallThumbnail".
-                    imageUrl = imageLinks.getString("smallThumbnail");
-                }
+        // Return the list of books.
+        return books;
 
-                // Extract the value for the key called "infoLink".
-                String bookUrl = bookInfo.getString("infoLink");
+    }
 
-                // Extract the value for the key called "previewLink".
-                String previewUrl = bookInfo.getString("previewLink");
+    /**
+     * Parses a single volume response with the given parser. The stream is closed.
+     */
+    private static <T> T parseVolume(InputStream inputStream, VolumeParser<T> parser)
+            throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(inputStream);
+        try {
+            return parser.parse(reader);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
 
-                // For that book, extract the JSONObject with the key called "saleInfo", which is
-                // all the price and sale information about the book.
-                JSONObject saleInfo = currentBook.getJSONObject("saleInfo");
+    /**
+     * Reads what is wanted from a single volume response.
+     */
+    private interface VolumeParser<T> {
+        T parse(JsonStreamReader reader) throws IOException;
+    }
 
-                // If the book has a price, extract it and the currency it's in.
-                if (saleInfo.has("listPrice")) {
-                    JSONObject listPrice = saleInfo.getJSONObject("listPrice");
-                    bookPrice = listPrice.getDouble("amount");
-                    currency = listPrice.getString("currencyCode");
-                }
+    /**
+     * The books from a HTTP request, and whether they're the same as the ones that were cached.
+     */
+    private static class HttpResult {
+        List<Book> books;
+        boolean notModified;
+    }
 
-                // Add the book to the ArrayList of books.
-                books.add(new Book(bookTitle, bookSubtitle, bookDescription, bookAuthor,
-                        bookRating, bookUrl, previewUrl, imageUrl, currency, bookPrice));
+    /**
+     * Closes the given object, ignoring any IOException since there is nothing we could do
+     * about it anyway.
+     */
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Problem closing stream", e);
             }
-
-        } catch (JSONException e) {
-            // If an error is thrown while parsing JSON, catch the exception, and print a log message
-            // along with the stack trace.
-            Log.e(LOG_TAG, "Error parsing JSON at object " + i, e);
         }
-
-        // Return the list of books.
-        return books;
-
     }
 
 }
@@ -0,0 +1,192 @@
+package com.example.talha.booksearch;
+
+import android.view.Gravity;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a {@link BookRow} works out everything a row shows when it is created, so that
+ * nothing is left to format or put together when the row is bound while the user scrolls.
+ *
+ * These tests cover the row, not the adapter: {@link BookAdapter#onBindViewHolder} hands the
+ * row's values to views and the {@link CoverLoader}, which need a device, so what those calls
+ * allocate isn't measured here.
+ *
+ * The allocations are counted with the JVM's count of bytes allocated by a thread, so these tests
+ * run as local unit tests on a desktop JVM. BookRow only uses constants of the Android classes,
+ * which are copied into it when it is compiled, so no device is needed.
+ */
+public class BookRowTest {
+
+    private static final int ROW_COUNT = 1000;
+
+    /**
+     * The most a row may allocate when it is created, which is done on a background thread: the
+     * row itself, its rating text, which is formatted and has a star added, and the link to its
+     * cover, which is put back together from the parts the book keeps. About 950 bytes are
+     * measured; the limit leaves room for JVMs that store Strings as UTF-16.
+     */
+    private static final long MAX_BYTES_PER_NEW_ROW = 2048;
+
+    /**
+     * Counting allocations can allocate a little itself, so this many bytes are allowed in a
+     * step that should allocate nothing at all.
+     */
+    private static final long ALLOCATION_SLACK_BYTES = 256;
+
+    private final com.sun.management.ThreadMXBean mThreads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private List<Book> mBooks;
+
+    @Before
+    public void setUp() {
+        mBooks = new ArrayList<>(ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            // Leave out the subtitle, author or rating of some books, so every layout is used.
+            mBooks.add(createBook(i, i % 2 == 0 ? "Subtitle " + i : null,
+                    i % 3 == 0 ? null : "Author " + i, i % 5 == 0 ? null : 3.76));
+        }
+    }
+
+    @Test
+    public void readingTheValuesOfRowsAllocatesNothing() {
+        List<BookRow> rows = BookRow.of(mBooks);
+        // Run it a few times first, so the allocations of loading and compiling the code aren't
+        // counted.
+        for (int i = 0; i < 10; i++) {
+            readValues(rows);
+        }
+
+        long startBytes = allocatedBytes();
+        long checksum = readValues(rows);
+        long allocated = allocatedBytes() - startBytes;
+
+        assertTrue("Reading " + ROW_COUNT + " rows allocated " + allocated + " bytes",
+                allocated <= ALLOCATION_SLACK_BYTES);
+        assertTrue(checksum != 0);
+    }
+
+    @Test
+    public void comparingRowsAllocatesNothing() {
+        List<BookRow> oldRows = BookRow.of(mBooks);
+        List<BookRow> newRows = BookRow.of(mBooks);
+        for (int i = 0; i < 10; i++) {
+            compare(oldRows, newRows);
+        }
+
+        long startBytes = allocatedBytes();
+        int same = compare(oldRows, newRows);
+        long allocated = allocatedBytes() - startBytes;
+
+        assertTrue("Comparing " + ROW_COUNT + " rows allocated " + allocated + " bytes",
+                allocated <= ALLOCATION_SLACK_BYTES);
+        assertEquals(ROW_COUNT, same);
+    }
+
+    @Test
+    public void creatingRowsAllocatesLittle() {
+        DecimalFormat ratingFormat = BookRow.newRatingFormat();
+        for (int i = 0; i < 10; i++) {
+            createRows(ratingFormat);
+        }
+
+        long startBytes = allocatedBytes();
+        BookRow[] rows = createRows(ratingFormat);
+        long allocated = allocatedBytes() - startBytes;
+
+        assertTrue("Creating a row allocated " + allocated / ROW_COUNT + " bytes",
+                allocated / ROW_COUNT <= MAX_BYTES_PER_NEW_ROW);
+        assertEquals(ROW_COUNT, rows.length);
+    }
+
+    @Test
+    public void layoutIsWorkedOutWhenTheRowIsCreated() {
+        DecimalFormat ratingFormat = BookRow.newRatingFormat();
+
+        BookRow full = BookRow.of(createBook(1, "Subtitle", "Author", 3.76), ratingFormat);
+        assertEquals("3.8 ★", full.rating);
+        assertEquals(ViewGroup.LayoutParams.WRAP_CONTENT, full.titleHeight);
+        assertEquals(ViewGroup.LayoutParams.WRAP_CONTENT, full.authorHeight);
+        assertEquals(Gravity.TOP | Gravity.RIGHT, full.authorGravity);
+        assertEquals(Gravity.BOTTOM | Gravity.RIGHT, full.ratingGravity);
+
+        BookRow bare = BookRow.of(createBook(2, "", null, null), ratingFormat);
+        assertNull(bare.subtitle);
+        assertNull(bare.rating);
+        assertEquals(ViewGroup.LayoutParams.MATCH_PARENT, bare.titleHeight);
+        assertEquals(ViewGroup.LayoutParams.MATCH_PARENT, bare.authorHeight);
+        assertEquals(Gravity.CENTER_VERTICAL | Gravity.RIGHT, bare.authorGravity);
+        assertEquals(Gravity.CENTER_VERTICAL | Gravity.RIGHT, bare.ratingGravity);
+    }
+
+    /**
+     * Reads every value onBindViewHolder copies into the views, the way it reads them. This only
+     * shows that the values are ready to use; setting them on the views isn't part of it.
+     *
+     * @return a sum of the values, so the reads can't be left out by the compiler.
+     */
+    private static long readValues(List<BookRow> rows) {
+        long checksum = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            BookRow row = rows.get(i);
+            checksum += row.title.length();
+            checksum += row.subtitle != null ? row.subtitle.length() : 0;
+            checksum += row.author != null ? row.author.length() : 0;
+            checksum += row.rating != null ? row.rating.length() : 0;
+            checksum += row.imageUrl != null ? row.imageUrl.length() : 0;
+            checksum += row.titleHeight + row.authorHeight + row.authorGravity + row.ratingGravity;
+        }
+        return checksum;
+    }
+
+    /**
+     * Compares the rows the way the adapter's diff does.
+     *
+     * @return how many rows show the same book and look the same.
+     */
+    private static int compare(List<BookRow> oldRows, List<BookRow> newRows) {
+        int same = 0;
+        for (int i = 0; i < oldRows.size(); i++) {
+            BookRow oldRow = oldRows.get(i);
+            BookRow newRow = newRows.get(i);
+            if (oldRow.isSameBook(newRow) && oldRow.looksTheSame(newRow)) {
+                same++;
+            }
+        }
+        return same;
+    }
+
+    private BookRow[] createRows(DecimalFormat ratingFormat) {
+        BookRow[] rows = new BookRow[mBooks.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = BookRow.of(mBooks.get(i), ratingFormat);
+        }
+        return rows;
+    }
+
+    private long allocatedBytes() {
+        return mThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Book createBook(int i, String subtitle, String author, Double rating) {
+        String id = "vol" + i;
+        String[] imageUrls = {"http://books.google.com/books/content?id=" + id
+                + "&printsec=frontcover&img=1&zoom=5&source=gbs_api"};
+        return new Book(id, "Title " + i, subtitle, null, author, rating,
+                "https://books.google.com/books?id=" + id,
+                "https://books.google.com/books?id=" + id + "&printsec=frontcover",
+                imageUrls, null, null);
+    }
+}
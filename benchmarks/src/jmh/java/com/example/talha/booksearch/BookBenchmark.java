@@ -0,0 +1,76 @@
+package com.example.talha.booksearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating books and storing them: constructing a {@link Book} from its fields, reading
+ * its description, and turning it into bytes and back with {@link BookCodec}, which is how the
+ * index and the shelf keep them. Every benchmark handles all the books of a response at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BookBenchmark {
+
+    /**
+     * Creates every book again from its fields, which splits and interns its links and author.
+     * The descriptions were decoded before the benchmark started, so only the constructor is
+     * measured.
+     */
+    @Benchmark
+    public void construct(ResponseState state, Blackhole blackhole) {
+        List<Book> books = state.books;
+        List<String> descriptions = state.descriptions;
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            blackhole.consume(new Book(book.getId(), book.getTitle(), book.getSubtitle(),
+                    descriptions.get(i), book.getAuthor(), book.getRating(), book.getUrl(),
+                    book.getPreviewUrl(), book.getImageUrls(), book.getLocale(),
+                    book.getPrice()));
+        }
+    }
+
+    /**
+     * Decodes the description of every book, which the parser keeps as raw JSON until it is
+     * read, and which construct leaves out.
+     */
+    @Benchmark
+    public void readDescriptions(ResponseState state, Blackhole blackhole) {
+        for (Book book : state.books) {
+            blackhole.consume(book.getDescription());
+        }
+    }
+
+    /**
+     * Turns every book into bytes.
+     */
+    @Benchmark
+    public void encode(ResponseState state, Blackhole blackhole) {
+        for (Book book : state.books) {
+            blackhole.consume(BookCodec.encode(book));
+        }
+    }
+
+    /**
+     * Turns the bytes of every book back into a book.
+     */
+    @Benchmark
+    public void decode(ResponseState state, Blackhole blackhole) throws IOException {
+        for (byte[] data : state.encodedBooks) {
+            blackhole.consume(BookCodec.decode(data));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.talha.booksearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a response: tokenizing it with the {@link JsonStreamReader}, turning it into
+ * books the way Utils.parseJsonResponse does, and decoding the descriptions the parser leaves
+ * undecoded until they are shown.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JsonBenchmark {
+
+    /**
+     * Reads every token of the response without building anything, which is the least any
+     * parser has to do.
+     */
+    @Benchmark
+    public void readTokens(ResponseState state) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(new ByteArrayInputStream(state.body));
+        try {
+            reader.skipValue();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Turns the response into books, which is what every search does once the response starts
+     * to arrive.
+     */
+    @Benchmark
+    public List<Book> parse(ResponseState state) throws IOException {
+        return ResponseState.parse(state.body);
+    }
+
+    /**
+     * Turns the response into books and then decodes each description, like opening every book
+     * on the detail screen would.
+     */
+    @Benchmark
+    public void parseAndReadDescriptions(ResponseState state, Blackhole blackhole)
+            throws IOException {
+        for (Book book : ResponseState.parse(state.body)) {
+            blackhole.consume(book.getDescription());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.talha.booksearch;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Google Books API response the benchmarks run over, loaded once before they start. Every
+ * benchmark runs once for each response:
+ *
+ * - small: a search with 5 results, like the first page on a slow connection.
+ * - forty: a search with 40 results, the most the API returns in one page.
+ * - descriptions: 20 volumes with long descriptions, like the detail screen and the prefetcher
+ * load.
+ *
+ * The responses are in src/jmh/resources/responses. They only have the fields the app asks for
+ * with {@link BookJsonParser#searchFields(boolean)}, just like the real responses.
+ */
+@State(Scope.Benchmark)
+public class ResponseState {
+
+    @Param({"small", "forty", "descriptions"})
+    public String response;
+
+    /** The response as it arrives from the network */
+    byte[] body;
+
+    /** The books in the response */
+    List<Book> books;
+
+    /**
+     * The description of every book, already decoded, so creating books can be measured without
+     * decoding them; BookBenchmark.readDescriptions measures that on its own
+     */
+    List<String> descriptions;
+
+    /** The books encoded with {@link BookCodec}, as they are stored in the index and shelf */
+    List<byte[]> encodedBooks;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        body = readResource("/responses/" + response + ".json");
+        books = parse(body);
+        descriptions = new ArrayList<>(books.size());
+        encodedBooks = new ArrayList<>(books.size());
+        for (Book book : books) {
+            descriptions.add(book.getDescription());
+            encodedBooks.add(BookCodec.encode(book));
+        }
+    }
+
+    /**
+     * @return the books in the given response.
+     */
+    static List<Book> parse(byte[] body) throws IOException {
+        List<Book> books = new ArrayList<>();
+        JsonStreamReader reader = new JsonStreamReader(new ByteArrayInputStream(body));
+        try {
+            BookJsonParser.parse(reader, books);
+        } finally {
+            reader.close();
+        }
+        return books;
+    }
+
+    static byte[] readResource(String name) throws IOException {
+        InputStream in = ResponseState.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing response " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
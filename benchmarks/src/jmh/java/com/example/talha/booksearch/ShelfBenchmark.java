@@ -0,0 +1,163 @@
+package com.example.talha.booksearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link ShelfLog} that keeps the user's saved books: saving a book, which waits
+ * until it is on disk, reading a book from a random place on the shelf, the way the shelf list
+ * reads them as it scrolls, and opening a shelf, which the app does before its first screen.
+ *
+ * The shelves are made of the books of the 40 result response, over and over with different ids,
+ * in files in the temporary directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ShelfBenchmark {
+
+    /**
+     * An empty shelf for every iteration, which the books are saved to.
+     */
+    @State(Scope.Thread)
+    public static class EmptyShelf {
+
+        File file;
+        ShelfLog log;
+        List<Book> books;
+        int next;
+
+        @Setup(Level.Trial)
+        public void loadBooks() throws IOException {
+            books = readBooks();
+        }
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            file = File.createTempFile("shelf", ".log");
+            // Start from no file at all, as a new install does.
+            file.delete();
+            log = new ShelfLog(file);
+            log.open();
+        }
+
+        @TearDown(Level.Iteration)
+        public void delete() {
+            file.delete();
+        }
+
+        /**
+         * @return a book that isn't on the shelf yet, so every save appends a new record.
+         */
+        Book nextBook() {
+            return withId(books.get(next % books.size()), "saved" + next++);
+        }
+    }
+
+    /**
+     * A shelf that already has the given number of books, saved once before the benchmarks
+     * start. Saving them waits for the disk every time, so it can take a few seconds.
+     */
+    @State(Scope.Benchmark)
+    public static class FullShelf {
+
+        @Param({"1000", "5000"})
+        public int size;
+
+        File file;
+        ShelfLog log;
+
+        /** The positions the books are read from, in a random order that is the same every run */
+        int[] positions;
+        int next;
+
+        @Setup(Level.Trial)
+        public void fill() throws IOException {
+            List<Book> books = readBooks();
+            file = File.createTempFile("shelf", ".log");
+            file.delete();
+            log = new ShelfLog(file);
+            log.open();
+            for (int i = 0; i < size; i++) {
+                log.put(withId(books.get(i % books.size()), "saved" + i));
+            }
+
+            Random random = new Random(42);
+            positions = new int[1024];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = random.nextInt(size);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            file.delete();
+        }
+
+        int nextPosition() {
+            return positions[next++ & (positions.length - 1)];
+        }
+    }
+
+    /**
+     * Saves a new book, which appends a record and syncs the file to disk.
+     */
+    @Benchmark
+    public void append(EmptyShelf shelf) throws IOException {
+        shelf.log.put(shelf.nextBook());
+    }
+
+    /**
+     * Decodes the book at a random position, checking its CRC, as the shelf list does for every
+     * row it shows.
+     */
+    @Benchmark
+    public Book getRandom(FullShelf shelf) throws IOException {
+        return shelf.log.get(shelf.nextPosition());
+    }
+
+    /**
+     * Opens the shelf from its file, which maps it and reads the header of every record.
+     */
+    @Benchmark
+    public ShelfLog open(FullShelf shelf) throws IOException {
+        ShelfLog log = new ShelfLog(shelf.file);
+        log.open();
+        return log;
+    }
+
+    /**
+     * @return the books of the 40 result response.
+     */
+    static List<Book> readBooks() throws IOException {
+        return ResponseState.parse(ResponseState.readResource("/responses/forty.json"));
+    }
+
+    /**
+     * @return a copy of the book with a different id, so it is saved as a different book.
+     */
+    static Book withId(Book book, String id) {
+        return new Book(id, book.getTitle(), book.getSubtitle(), book.getDescription(),
+                book.getAuthor(), book.getRating(), book.getUrl(), book.getPreviewUrl(),
+                book.getImageUrls(), book.getLocale(), book.getPrice());
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.talha.booksearch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A command line tool that looks up thousands of searches or ISBNs in the Google Books API, and
+ * writes what it found as JSON Lines: one JSON object per line, in the order the lookups finish.
+ *
+ * <pre>
+ * booklookup [options] &lt;input file&gt;
+ *
+ *   --out FILE          write the results to FILE instead of the standard output
+ *   --parallelism N     how many lookups run at once (default 8)
+ *   --max-results N     how many books to return for each line (default 1)
+ *   --order-by ORDER    relevance or newest (default relevance)
+ *   --print-type TYPE   all, books or magazines (default all)
+ *   --base-url URL      send the searches to another server, such as a local stand-in
+ *   --no-retry          make one attempt for each lookup, without retries or hedging
+ * </pre>
+ *
+ * Each line of the input is a search, or an ISBN-10 or ISBN-13 with or without hyphens, which is
+ * searched for with "isbn:". Empty lines and lines starting with # are skipped. A failed lookup
+ * is written as a line with "status":"error" and doesn't stop the others.
+ *
+ * The lookups are run by a {@link BookBatch} on a fixed number of threads. Lines are only read
+ * when there is room to start another lookup, so a file of any size is looked up in constant
+ * memory. When everything is done, the throughput and the percentiles of how long a lookup took
+ * are written to the standard error.
+ */
+public final class BulkLookup {
+
+    /** An ISBN-10 (whose check digit may be X) or an ISBN-13, once hyphens and spaces are gone */
+    private static final Pattern ISBN = Pattern.compile("\\d{9}[\\dXx]|\\d{13}");
+
+    /** How often progress is reported, in finished lookups */
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /** The settings given on the command line */
+    private String mInputFile;
+    private String mOutputFile;
+    private int mParallelism = 8;
+    private int mMaxResults = 1;
+    private String mOrderBy = BookQuery.ORDER_BY_RELEVANCE;
+    private String mPrintType = BookQuery.PRINT_TYPE_ALL;
+    private String mBaseUrl = BookQuery.GOOGLE_BOOKS_URL;
+    private boolean mRetry = true;
+
+    private BulkLookup() {
+    }
+
+    public static void main(String[] args) {
+        BulkLookup lookup = new BulkLookup();
+        try {
+            lookup.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage(System.err);
+            System.exit(2);
+        }
+        try {
+            lookup.run();
+        } catch (IOException e) {
+            System.err.println("booklookup: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.exit(130);
+        }
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("usage: booklookup [--out FILE] [--parallelism N] [--max-results N]"
+                + " [--order-by relevance|newest] [--print-type all|books|magazines]"
+                + " [--base-url URL] [--no-retry] <input file>");
+    }
+
+    /**
+     * Reads the settings from the command line.
+     *
+     * @throws IllegalArgumentException with a message for the user if they aren't valid.
+     */
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--no-retry")) {
+                mRetry = false;
+            } else if (arg.startsWith("--")) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException(arg + " needs a value");
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--out":
+                        mOutputFile = value;
+                        break;
+                    case "--parallelism":
+                        mParallelism = parsePositive(arg, value);
+                        break;
+                    case "--max-results":
+                        mMaxResults = parsePositive(arg, value);
+                        break;
+                    case "--order-by":
+                        mOrderBy = value;
+                        break;
+                    case "--print-type":
+                        mPrintType = value;
+                        break;
+                    case "--base-url":
+                        mBaseUrl = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } else if (mInputFile == null) {
+                mInputFile = arg;
+            } else {
+                throw new IllegalArgumentException("Only one input file can be given");
+            }
+        }
+        if (mInputFile == null) {
+            throw new IllegalArgumentException("No input file given");
+        }
+    }
+
+    private static int parsePositive(String name, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(name + " must be a positive number");
+    }
+
+    /**
+     * Looks up every line of the input file, and reports how long it took.
+     */
+    private void run() throws IOException, InterruptedException {
+        // HttpURLConnection keeps only 5 idle connections per host by default, which would make
+        // most of the threads connect again for every lookup.
+        System.setProperty("http.maxConnections", String.valueOf(mParallelism));
+
+        NetworkClient client = mRetry ? NetworkClient.getInstance()
+                : NetworkClient.create(RequestPolicy.SINGLE_ATTEMPT);
+        BookBatch batch = new BookBatch(new BookFetcher(client), mParallelism);
+
+        InputLines input = new InputLines(new BufferedReader(
+                new InputStreamReader(new FileInputStream(mInputFile), "UTF-8")));
+        ResultWriter output = new ResultWriter(input, new BufferedWriter(new OutputStreamWriter(
+                mOutputFile != null ? new FileOutputStream(mOutputFile) : System.out, "UTF-8")));
+
+        long startTime = System.nanoTime();
+        int lookupCount;
+        try {
+            lookupCount = batch.searchAll(input, output);
+        } finally {
+            input.close();
+            output.close();
+        }
+        if (input.mError != null) {
+            throw input.mError;
+        }
+        if (output.mError != null) {
+            throw output.mError;
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.println(String.format(Locale.US,
+                "%d lookups in %.1f s (%.1f per second): %d found, %d not found, %d failed",
+                lookupCount, seconds, lookupCount / Math.max(seconds, 1e-9),
+                output.mFoundCount, output.mNotFoundCount, output.mFailedCount));
+        LookupTimes times = output.mTimes;
+        System.err.println(String.format(Locale.US,
+                "Lookup time: p50 %d ms, p90 %d ms, p99 %d ms, max %d ms",
+                times.getPercentile(0.5), times.getPercentile(0.9), times.getPercentile(0.99),
+                times.getMax()));
+        System.err.println(client);
+    }
+
+    /**
+     * @return the search for a line of the input: "isbn:" and the digits if it is an ISBN, or
+     * the line as it is otherwise.
+     */
+    static String toSearch(String text) {
+        String digits = text.replaceAll("[\\s-]", "");
+        if (digits.regionMatches(true, 0, "isbn:", 0, 5)) {
+            digits = digits.substring(5);
+        }
+        return ISBN.matcher(digits).matches() ? "isbn:" + digits.toUpperCase(Locale.ROOT) : text;
+    }
+
+    /**
+     * Reads the input file one line at a time as the batch asks for more queries, and remembers
+     * the line each query came from until its result has been written.
+     */
+    private final class InputLines implements Iterator<BookQuery> {
+        private final BufferedReader mReader;
+
+        /** The lines whose results haven't been written yet, by their index in the batch */
+        private final Map<Integer, InputLine> mPending = new ConcurrentHashMap<>();
+
+        /** The next line to look up, if it has been read already */
+        private InputLine mNext;
+        private int mLineNumber;
+        private int mIndex;
+
+        /** The error that stopped the input from being read, if any */
+        IOException mError;
+
+        InputLines(BufferedReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (mNext == null && mError == null) {
+                String line;
+                try {
+                    line = mReader.readLine();
+                } catch (IOException e) {
+                    // The batch can't be told about it, so end the input and throw it afterwards.
+                    mError = e;
+                    return false;
+                }
+                if (line == null) {
+                    return false;
+                }
+                mLineNumber++;
+                String text = line.trim();
+                if (!text.isEmpty() && !text.startsWith("#")) {
+                    mNext = new InputLine(mLineNumber, text);
+                }
+            }
+            return mNext != null;
+        }
+
+        @Override
+        public BookQuery next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            InputLine line = mNext;
+            mNext = null;
+            mPending.put(mIndex++, line);
+            return new BookQuery(line.mSearch, mMaxResults, mOrderBy, mPrintType)
+                    .forBaseUrl(mBaseUrl);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @return the line the result of a lookup belongs to, which is forgotten from now on.
+         */
+        InputLine take(BookBatch.Result result) {
+            return mPending.remove(result.getIndex());
+        }
+
+        void close() throws IOException {
+            mReader.close();
+        }
+    }
+
+    /**
+     * A line of the input that is looked up.
+     */
+    private static final class InputLine {
+        final int mLineNumber;
+        final String mText;
+        final String mSearch;
+
+        InputLine(int lineNumber, String text) {
+            mLineNumber = lineNumber;
+            mText = text;
+            mSearch = toSearch(text);
+        }
+    }
+
+    /**
+     * Writes each result to the output as a line of JSON, as soon as the batch hands it over.
+     * The batch never calls it from two threads at once, and waits for it before starting more
+     * lookups, so a slow output doesn't let the results pile up.
+     */
+    private static final class ResultWriter implements BookBatch.Listener {
+        private final InputLines mInput;
+        private final Writer mOutput;
+
+        /** Counts of the lookups, by how they ended */
+        int mFoundCount;
+        int mNotFoundCount;
+        int mFailedCount;
+
+        /** How long the lookups of this run took */
+        final LookupTimes mTimes = new LookupTimes();
+
+        /** The error that stopped the writer, if any */
+        IOException mError;
+
+        ResultWriter(InputLines input, Writer output) {
+            mInput = input;
+            mOutput = output;
+        }
+
+        @Override
+        public void onResult(BookBatch.Result result) {
+            InputLine input = mInput.take(result);
+            mTimes.record(result.getDurationMillis());
+            JsonLineWriter line = new JsonLineWriter().beginObject()
+                    .name("line").value(input.mLineNumber)
+                    .name("input").value(input.mText)
+                    .name("query").value(input.mSearch);
+            if (result.isSuccessful()) {
+                List<Book> books = result.getBooks();
+                if (books.isEmpty()) {
+                    mNotFoundCount++;
+                } else {
+                    mFoundCount++;
+                }
+                line.name("status").value(books.isEmpty() ? "not_found" : "ok")
+                        .name("millis").value(result.getDurationMillis())
+                        .name("books").value(books);
+            } else {
+                mFailedCount++;
+                line.name("status").value("error")
+                        .name("millis").value(result.getDurationMillis())
+                        .name("error").value(String.valueOf(result.getError()));
+            }
+            if (mError == null) {
+                try {
+                    mOutput.write(line.endObject().toString());
+                    mOutput.write('\n');
+                } catch (IOException e) {
+                    // Let the lookups finish, but stop writing.
+                    mError = e;
+                }
+            }
+            int count = mFoundCount + mNotFoundCount + mFailedCount;
+            if (count % PROGRESS_INTERVAL == 0) {
+                System.err.println(count + " lookups done");
+            }
+        }
+
+        void close() {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * How long the lookups of one run took, to report their percentiles at the end. Every
+     * millisecond up to a minute has a count of its own, so the percentiles are exact, and the
+     * memory used is the same however many lookups there are. Longer lookups are all counted as
+     * a minute, but the longest one is still reported as it was.
+     */
+    private static final class LookupTimes {
+
+        /** The longest time that has a count of its own */
+        private static final int MAX_COUNTED_MILLIS = 60 * 1000;
+
+        /** How many lookups took each number of milliseconds */
+        private final int[] mCounts = new int[MAX_COUNTED_MILLIS + 1];
+        private int mCount;
+        private long mMax;
+
+        void record(long millis) {
+            mCounts[(int) Math.max(0, Math.min(millis, MAX_COUNTED_MILLIS))]++;
+            mCount++;
+            mMax = Math.max(mMax, millis);
+        }
+
+        /**
+         * @param percentile is a number between 0 and 1, such as 0.99 for the 99th percentile.
+         * @return the time that at least the given share of the lookups took no longer than, in
+         * milliseconds, or 0 if there were no lookups.
+         */
+        long getPercentile(double percentile) {
+            long target = Math.max(1, (long) Math.ceil(percentile * mCount));
+            long seen = 0;
+            for (int millis = 0; millis <= MAX_COUNTED_MILLIS && mCount > 0; millis++) {
+                seen += mCounts[millis];
+                if (seen >= target) {
+                    return Math.min(millis, mMax);
+                }
+            }
+            return mMax;
+        }
+
+        long getMax() {
+            return mMax;
+        }
+    }
+}
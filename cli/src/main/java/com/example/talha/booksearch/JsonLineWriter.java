@@ -0,0 +1,195 @@
+package com.example.talha.booksearch;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds one line of JSON, such as the result of a lookup in a JSON Lines file. Values are added
+ * in order with {@link #name(String)} followed by a value, and nested objects and arrays are
+ * opened and closed explicitly, much like reading them with the {@link JsonStreamReader}.
+ *
+ * Null values are left out together with their names, so optional fields of a book simply don't
+ * appear in the output.
+ */
+class JsonLineWriter {
+
+    private final StringBuilder mLine = new StringBuilder(256);
+
+    /** Whether the next value in the current object or array needs a comma before it */
+    private boolean mNeedsComma;
+
+    /** A name that was given, but not written yet because its value may turn out to be null */
+    private String mPendingName;
+
+    JsonLineWriter beginObject() {
+        beforeValue();
+        mLine.append('{');
+        mNeedsComma = false;
+        return this;
+    }
+
+    JsonLineWriter endObject() {
+        mLine.append('}');
+        mNeedsComma = true;
+        return this;
+    }
+
+    JsonLineWriter beginArray() {
+        beforeValue();
+        mLine.append('[');
+        mNeedsComma = false;
+        return this;
+    }
+
+    JsonLineWriter endArray() {
+        mLine.append(']');
+        mNeedsComma = true;
+        return this;
+    }
+
+    /**
+     * Sets the name of the next value in an object.
+     */
+    JsonLineWriter name(String name) {
+        mPendingName = name;
+        return this;
+    }
+
+    JsonLineWriter value(String value) {
+        if (value == null) {
+            mPendingName = null;
+            return this;
+        }
+        beforeValue();
+        appendString(value);
+        return this;
+    }
+
+    JsonLineWriter value(Number value) {
+        if (value == null) {
+            mPendingName = null;
+            return this;
+        }
+        beforeValue();
+        if (value instanceof Double || value instanceof Float) {
+            double number = value.doubleValue();
+            // JSON has no NaN or infinity, and whole numbers are written without ".0".
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                mLine.append("null");
+            } else if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+                mLine.append((long) number);
+            } else {
+                // Double.toString may use an exponent, such as 1.0E-5, which JSON allows.
+                mLine.append(number);
+            }
+        } else {
+            mLine.append(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a book as an object with the fields of the Google Books API it was read from.
+     */
+    JsonLineWriter value(Book book) {
+        beginObject();
+        name("id").value(book.getId());
+        name("title").value(book.getTitle());
+        name("subtitle").value(book.getSubtitle());
+        name("author").value(book.getAuthor());
+        name("averageRating").value(book.getRating());
+        if (book.hasDescription()) {
+            name("description").value(book.getDescription());
+        }
+        name("infoLink").value(book.getUrl());
+        name("previewLink").value(book.getPreviewUrl());
+        if (book.getPrice() != null) {
+            name("listPrice").beginObject()
+                    .name("amount").value(book.getPrice())
+                    .name("currencyCode").value(book.getLocale())
+                    .endObject();
+        }
+        String[] imageUrls = book.getImageUrls();
+        if (imageUrls != null) {
+            name("imageLinks").beginObject();
+            for (Book.ImageSize size : Book.ImageSize.values()) {
+                if (size.ordinal() < imageUrls.length) {
+                    name(size.jsonName).value(imageUrls[size.ordinal()]);
+                }
+            }
+            endObject();
+        }
+        return endObject();
+    }
+
+    /**
+     * Writes a list of books as an array.
+     */
+    JsonLineWriter value(List<Book> books) {
+        beginArray();
+        for (Book book : books) {
+            value(book);
+        }
+        return endArray();
+    }
+
+    /**
+     * @return the line that was built, without a line break.
+     */
+    @Override
+    public String toString() {
+        return mLine.toString();
+    }
+
+    /**
+     * Writes the comma and the name that go before a value.
+     */
+    private void beforeValue() {
+        if (mNeedsComma) {
+            mLine.append(',');
+        }
+        if (mPendingName != null) {
+            appendString(mPendingName);
+            mLine.append(':');
+            mPendingName = null;
+        }
+        mNeedsComma = true;
+    }
+
+    /**
+     * Writes a string in quotes, escaping the characters JSON doesn't allow in one. Line breaks
+     * are escaped too, so each line of the output stays one line.
+     */
+    private void appendString(String value) {
+        mLine.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    mLine.append("\\\"");
+                    break;
+                case '\\':
+                    mLine.append("\\\\");
+                    break;
+                case '\n':
+                    mLine.append("\\n");
+                    break;
+                case '\r':
+                    mLine.append("\\r");
+                    break;
+                case '\t':
+                    mLine.append("\\t");
+                    break;
+                default:
+                    // Other control characters, and the line and paragraph separators, which
+                    // some JavaScript parsers treat as line breaks.
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        mLine.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        mLine.append(c);
+                    }
+            }
+        }
+        mLine.append('"');
+    }
+}
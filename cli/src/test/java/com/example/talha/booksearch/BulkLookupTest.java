@@ -0,0 +1,226 @@
+package com.example.talha.booksearch;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the booklookup tool on input files against a stand-in for the API, which finds a book
+ * titled after each search, fails the searches that start with "fail", finds nothing for
+ * "missing", and takes half a second for searches starting with "slow". Checks that every line
+ * gets exactly one result, that failures don't stop the other lookups, that only as many lookups
+ * run at once as were asked for, and that each run reports only its own lookup times.
+ */
+public class BulkLookupTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Finds the line number of a line of output */
+    private static final Pattern LINE_NUMBER = Pattern.compile("^\\{\"line\":(\\d+),");
+
+    /** How long the stand-in takes to answer, so lookups overlap */
+    private static final long RESPONSE_DELAY_MILLIS = 20;
+
+    /** How long it takes to answer a search starting with "slow" */
+    private static final long SLOW_RESPONSE_DELAY_MILLIS = 500;
+
+    /** Finds the longest lookup time in the report on the standard error */
+    private static final Pattern MAX_TIME = Pattern.compile("max (\\d+) ms");
+
+    /** How many lookups are running on the stand-in right now, and the most there have been */
+    private final AtomicInteger mRunning = new AtomicInteger();
+    private final AtomicInteger mMostRunning = new AtomicInteger();
+
+    private StandInServer mServer;
+    private File mInput;
+    private File mOutput;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                int running = mRunning.incrementAndGet();
+                try {
+                    updateMostRunning(running);
+                    String search = StandInServer.getSearch(exchange);
+                    StandInServer.sleep(search.startsWith("slow")
+                            ? SLOW_RESPONSE_DELAY_MILLIS : RESPONSE_DELAY_MILLIS);
+                    if (search.startsWith("fail")) {
+                        StandInServer.send(exchange, 500, "{}");
+                    } else if (search.equals("missing")) {
+                        StandInServer.send(exchange, 200,
+                                "{\"kind\":\"books#volumes\",\"totalItems\":0}");
+                    } else {
+                        StandInServer.send(exchange, 200, StandInServer.volumesJson(search));
+                    }
+                } finally {
+                    mRunning.decrementAndGet();
+                }
+            }
+        });
+        mInput = File.createTempFile("lookup", ".txt");
+        mOutput = File.createTempFile("lookup", ".jsonl");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+        mInput.delete();
+        mOutput.delete();
+    }
+
+    @Test
+    public void everyLineGetsOneResultAndFailuresDontStopTheOthers() throws IOException {
+        writeInput("# A reading list\n"
+                + "Dune\n"
+                + "\n"
+                + "fail this one\n"
+                + "missing\n"
+                + "978-0-441-01359-3\n");
+
+        Map<Integer, String> results = runLookup(4);
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(2), results.get(2).contains("\"status\":\"ok\""));
+        assertTrue(results.get(2), results.get(2).contains("\"title\":\"Dune\""));
+        assertTrue(results.get(4), results.get(4).contains("\"status\":\"error\""));
+        assertTrue(results.get(5), results.get(5).contains("\"status\":\"not_found\""));
+        assertTrue(results.get(6), results.get(6).contains("\"query\":\"isbn:9780441013593\""));
+        assertTrue(results.get(6), results.get(6).contains("\"status\":\"ok\""));
+        // The comment and the empty line aren't looked up.
+        assertEquals(4, mServer.getHitCount());
+    }
+
+    @Test
+    public void onlyTheGivenNumberOfLookupsRunAtOnce() throws IOException {
+        int lineCount = 200;
+        int parallelism = 8;
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            input.append(i % 10 == 0 ? "fail " : "book ").append(i).append('\n');
+        }
+        writeInput(input.toString());
+
+        Map<Integer, String> results = runLookup(parallelism);
+
+        assertEquals(lineCount, results.size());
+        for (int i = 1; i <= lineCount; i++) {
+            String expectedStatus = (i - 1) % 10 == 0 ? "error" : "ok";
+            assertTrue(results.get(i), results.get(i).contains(
+                    "\"status\":\"" + expectedStatus + "\""));
+        }
+        assertEquals(lineCount, mServer.getHitCount());
+        assertTrue("Ran " + mMostRunning.get() + " lookups at once",
+                mMostRunning.get() <= parallelism);
+        assertTrue("Ran " + mMostRunning.get() + " lookups at once", mMostRunning.get() > 1);
+    }
+
+    @Test
+    public void eachRunReportsTheTimesOfItsOwnLookups() throws IOException {
+        writeInput("slow one\n");
+        String firstReport = runLookupForReport();
+        writeInput("fast one\nfast two\n");
+        String secondReport = runLookupForReport();
+
+        assertTrue(firstReport, getMaxTime(firstReport) >= SLOW_RESPONSE_DELAY_MILLIS - 50);
+        // The slow lookup of the first run must not show up in the second one.
+        assertTrue(secondReport, getMaxTime(secondReport) < SLOW_RESPONSE_DELAY_MILLIS - 50);
+    }
+
+    @Test
+    public void isbnsAreSearchedForAsIsbns() {
+        assertEquals("isbn:9780441013593", BulkLookup.toSearch("978-0-441-01359-3"));
+        assertEquals("isbn:044101359X", BulkLookup.toSearch("0 441 01359 x"));
+        assertEquals("isbn:0441013597", BulkLookup.toSearch("ISBN:0441013597"));
+        assertEquals("Dune 1965", BulkLookup.toSearch("Dune 1965"));
+        // Too many digits to be an ISBN.
+        assertEquals("12345678901234", BulkLookup.toSearch("12345678901234"));
+    }
+
+    /**
+     * Runs the tool on the input file, without retries so the failures fail straight away.
+     *
+     * @return every line of the output, by the number of the input line it belongs to.
+     */
+    private Map<Integer, String> runLookup(int parallelism) throws IOException {
+        BulkLookup.main(new String[]{"--base-url", mServer.getVolumesUrl(), "--no-retry",
+                "--parallelism", String.valueOf(parallelism), "--out", mOutput.getPath(),
+                mInput.getPath()});
+
+        Map<Integer, String> results = new HashMap<>();
+        Scanner scanner = new Scanner(new FileInputStream(mOutput), "UTF-8");
+        try {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                Matcher matcher = LINE_NUMBER.matcher(line);
+                assertTrue(line, matcher.find());
+                String old = results.put(Integer.parseInt(matcher.group(1)), line);
+                assertEquals("A line was looked up twice", null, old);
+            }
+        } finally {
+            scanner.close();
+        }
+        return results;
+    }
+
+    /**
+     * Runs the tool on the input file.
+     *
+     * @return what it reported on the standard error.
+     */
+    private String runLookupForReport() throws IOException {
+        PrintStream oldErr = System.err;
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(report, true, "UTF-8"));
+        try {
+            runLookup(1);
+        } finally {
+            System.setErr(oldErr);
+        }
+        return report.toString("UTF-8");
+    }
+
+    private static long getMaxTime(String report) {
+        Matcher matcher = MAX_TIME.matcher(report);
+        assertTrue(report, matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private void writeInput(String text) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mInput), UTF_8);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void updateMostRunning(int running) {
+        int most;
+        do {
+            most = mMostRunning.get();
+        } while (running > most && !mMostRunning.compareAndSet(most, running));
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.talha.booksearch;
+
+/**
+ * A {@link Book} object represents a single book retrieved from the Google Books API: its title,
+ * subtitle, description, author and rating, the links to its page, its preview and its covers,
+ * and its price. Each book also keeps its volume id, which identifies it across searches.
+ *
+ * Books aren't sent between Activities themselves. Only their key is put in the Intent, and the
+ * book is looked up in the app's BookRepository, so a long description is never copied.
+ *
+ * Thousands of books can be held at once by the caches, the index and the shelf, so a book is
+ * stored compactly:
+ * - The rating and price are primitive doubles, with a bit in {@link #mFlags} saying whether
+ *   the book has them, instead of boxed Doubles.
+ * - The author and currency are shared between books (see {@link CompactStrings#intern}).
+ * - Each link, including the link to every size of cover, is split around the volume id. The
+ *   parts before and after it are the same for most books, so they are shared too, and the
+ *   link is put back together when it is asked for.
+ * - The description is a {@link LazyText}, which is only decoded when it is read. A long
+ *   description that is passed in as a String is kept compressed.
+ * The getters return exactly what was passed to the constructor.
+ */
+public class Book {
+
+    /**
+     * The sizes of cover the API may link to, from smallest to largest. Searches only return the
+     * two thumbnails; the larger sizes are only returned when a single volume is requested.
+     */
+    public enum ImageSize {
+        SMALL_THUMBNAIL("smallThumbnail"),
+        THUMBNAIL("thumbnail"),
+        SMALL("small"),
+        MEDIUM("medium"),
+        LARGE("large"),
+        EXTRA_LARGE("extraLarge");
+
+        /** The name of the link in the "imageLinks" object of a volume */
+        final String jsonName;
+
+        ImageSize(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        /**
+         * @return the size with the given name in the "imageLinks" object, or null if there is
+         * no such size.
+         */
+        static ImageSize fromJsonName(String name) {
+            for (ImageSize size : values()) {
+                if (size.jsonName.equals(name)) {
+                    return size;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Bits of {@link #mFlags} */
+    private static final int HAS_RATING = 1;
+    private static final int HAS_PRICE = 2;
+
+    /**
+     * Stores the Google Books volume id of the book
+     */
+    private final String mId;
+
+    /**
+     * Stores the title of the book
+     */
+    private final String mTitle;
+
+    /**
+     * Stores the subtitle of the book
+     */
+    private final String mSubtitle;
+
+    /**
+     * Stores the description of the book, which is decoded every time it is read.
+     */
+    private final LazyText mDescription;
+
+    /**
+     * Stores the author of the book
+     */
+    private final String mAuthor;
+
+    /**
+     * Stores the rating of the book, which is only set if {@link #HAS_RATING} is.
+     */
+    private final double mRating;
+
+    /**
+     * Stores the url which takes the user to Google's overview of the book, split around the
+     * volume id (see {@link #joinUrl(String, String)}).
+     */
+    private final String mUrlStart;
+    private final String mUrlEnd;
+
+    /**
+     * Stores the url which takes the user to a preview of the book, split the same way.
+     */
+    private final String mPreviewUrlStart;
+    private final String mPreviewUrlEnd;
+
+    /**
+     * Stores the links to the covers of the book, each split the same way. The start and end of
+     * the link for a size are at 2 * its ordinal and the index after. The array ends at the
+     * largest size there is a link for, and is null if the book has no cover at all.
+     */
+    private final String[] mImageUrls;
+
+    /**
+     * Stores the currency the book's price is in.
+     */
+    private final String mLocale;
+
+    /**
+     * Stores the price of the book, which is only set if {@link #HAS_PRICE} is.
+     */
+    private final double mPrice;
+
+    /**
+     * Which of the optional numbers the book has.
+     */
+    private final byte mFlags;
+
+    /**
+     * Rough sizes, in bytes, of the objects a Book is made of. Used to estimate how much memory
+     * a Book takes up. Strings that are shared with other books aren't counted.
+     */
+    private static final int OBJECT_OVERHEAD = 88;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int ARRAY_OVERHEAD = 16;
+
+    /**
+     * Creates a new Book object.
+     *
+     * @param id          is the Google Books volume id of the book.
+     * @param title       is the title of the book.
+     * @param subtitle    is the subtitle of the book.
+     * @param description is the description of the book.
+     * @param author      is the author of the book.
+     * @param rating      is the rating of the book.
+     * @param url         is the url of the book.
+     * @param previewUrl  is the url for the preview of the book.
+     * @param imageUrls   are the links to the covers of the book, indexed by
+     *                    {@link ImageSize#ordinal()}. Sizes there's no link for are null, and the
+     *                    array may be shorter than the number of sizes, or null.
+     * @param locale      is the currency the book's price is in.
+     * @param price       is the price of the book.
+     */
+    public Book(String id, String title, String subtitle, String description, String author,
+                Double rating, String url, String previewUrl, String[] imageUrls, String locale,
+                Double price) {
+        this(id, title, subtitle, LazyText.of(description), author, rating, url, previewUrl,
+                imageUrls, locale, price);
+    }
+
+    /**
+     * Creates a new Book object whose description hasn't been decoded yet. The parameters are the
+     * same as {@link #Book(String, String, String, String, String, Double, String, String,
+     * String[], String, Double)}.
+     */
+    static Book withLazyDescription(String id, String title, String subtitle,
+                                    LazyText description, String author, Double rating, String url,
+                                    String previewUrl, String[] imageUrls, String locale,
+                                    Double price) {
+        return new Book(id, title, subtitle, description, author, rating, url, previewUrl,
+                imageUrls, locale, price);
+    }
+
+    private Book(String id, String title, String subtitle, LazyText description, String author,
+                 Double rating, String url, String previewUrl, String[] imageUrls, String locale,
+                 Double price) {
+        mId = id;
+        mTitle = title;
+        mSubtitle = subtitle;
+        mDescription = description;
+
+        mAuthor = CompactStrings.intern(author);
+        mLocale = CompactStrings.intern(locale);
+
+        mUrlStart = urlStart(url, id);
+        mUrlEnd = urlEnd(url, id);
+        mPreviewUrlStart = urlStart(previewUrl, id);
+        mPreviewUrlEnd = urlEnd(previewUrl, id);
+        mImageUrls = splitImageUrls(imageUrls, id);
+
+        int flags = 0;
+        if (rating != null) {
+            flags |= HAS_RATING;
+        }
+        if (price != null) {
+            flags |= HAS_PRICE;
+        }
+        mFlags = (byte) flags;
+        mRating = rating != null ? rating : 0;
+        mPrice = price != null ? price : 0;
+    }
+
+    /**
+     * @return the Google Books volume id of the book.
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * @return the title of the book.
+     */
+    public String getTitle() {
+        return mTitle;
+    }
+
+    /**
+     * @return the subtitle of the book.
+     */
+    public String getSubtitle() {
+        return mSubtitle;
+    }
+
+    /**
+     * @return the description of the book. It is decoded every time this is called, so callers
+     * should keep the result rather than calling it again.
+     */
+    public String getDescription() {
+        return mDescription != null ? mDescription.read() : null;
+    }
+
+    /**
+     * @return true if the book has a description. Unlike {@link #getDescription()}, this never
+     * decodes the description.
+     */
+    public boolean hasDescription() {
+        return mDescription != null;
+    }
+
+    /**
+     * @return the author of the book.
+     */
+    public String getAuthor() {
+        return mAuthor;
+    }
+
+    /**
+     * @return the rating of the book.
+     */
+    public Double getRating() {
+        return (mFlags & HAS_RATING) != 0 ? mRating : null;
+    }
+
+    /**
+     * @return the url of the book.
+     */
+    public String getUrl() {
+        return joinUrl(mUrlStart, mUrlEnd);
+    }
+
+    /**
+     * @return the preview url of the book.
+     */
+    public String getPreviewUrl() {
+        return joinUrl(mPreviewUrlStart, mPreviewUrlEnd);
+    }
+
+    /**
+     * @return the link to the smallest cover of the book, which is shown in lists, or null if the
+     * book has no cover.
+     */
+    public String getImageUrl() {
+        if (mImageUrls != null) {
+            for (int i = 0; i < mImageUrls.length; i += 2) {
+                if (mImageUrls[i] != null) {
+                    return joinUrl(mImageUrls[i], mImageUrls[i + 1]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the link to the largest cover of the book, or null if the book has no cover.
+     */
+    public String getLargestImageUrl() {
+        // The array always ends with the largest size there is a link for.
+        return mImageUrls != null
+                ? joinUrl(mImageUrls[mImageUrls.length - 2], mImageUrls[mImageUrls.length - 1])
+                : null;
+    }
+
+    /**
+     * @return the link to the cover of the given size, or null if there isn't one.
+     */
+    public String getImageUrl(ImageSize size) {
+        int index = 2 * size.ordinal();
+        if (mImageUrls == null || index >= mImageUrls.length || mImageUrls[index] == null) {
+            return null;
+        }
+        return joinUrl(mImageUrls[index], mImageUrls[index + 1]);
+    }
+
+    /**
+     * @return the links to the covers of the book, indexed by {@link ImageSize#ordinal()}, in the
+     * same form they are given to the constructor. The array is a new copy every time.
+     */
+    public String[] getImageUrls() {
+        if (mImageUrls == null) {
+            return null;
+        }
+        String[] imageUrls = new String[mImageUrls.length / 2];
+        for (int i = 0; i < imageUrls.length; i++) {
+            imageUrls[i] = mImageUrls[2 * i] != null
+                    ? joinUrl(mImageUrls[2 * i], mImageUrls[2 * i + 1]) : null;
+        }
+        return imageUrls;
+    }
+
+    /**
+     * @return the currency of the book's price.
+     */
+    public String getLocale() {
+        return mLocale;
+    }
+
+    /**
+     * @return the price of the book.
+     */
+    public Double getPrice() {
+        return (mFlags & HAS_PRICE) != 0 ? mPrice : null;
+    }
+
+
+    /**
+     * @return a key that identifies the book: its volume id, or its link if it has no id. The same
+     * book has the same key in every search, on the shelf and in the index.
+     */
+    public String getKey() {
+        return mId != null ? mId : getUrl();
+    }
+
+    /**
+     * @return a rough estimate of the memory this book takes up, in bytes, worked out from the
+     * length of its Strings. Used to keep caches of books within a memory budget.
+     */
+    int estimateSize() {
+        int size = OBJECT_OVERHEAD;
+        size += estimateSize(mId) + estimateSize(mTitle) + estimateSize(mSubtitle);
+        if (mDescription != null) {
+            size += mDescription.estimateSize();
+        }
+        // A link that couldn't be split isn't shared with other books.
+        if (mUrlEnd == null) {
+            size += estimateSize(mUrlStart);
+        }
+        if (mPreviewUrlEnd == null) {
+            size += estimateSize(mPreviewUrlStart);
+        }
+        if (mImageUrls != null) {
+            size += ARRAY_OVERHEAD + 4 * mImageUrls.length;
+            for (int i = 0; i < mImageUrls.length; i += 2) {
+                if (mImageUrls[i + 1] == null) {
+                    size += estimateSize(mImageUrls[i]);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int estimateSize(String value) {
+        // Each char of a String takes up 2 bytes.
+        return value == null ? 0 : STRING_OVERHEAD + 2 * value.length();
+    }
+
+    /*
+     * A Google Books link looks like "http://books.google.com/books?id=<volume id>&dq=android...".
+     * It is stored as the shared part before the id, and the shared part after it. A link that
+     * doesn't contain the id is stored whole in the first part, and the second part is null.
+     */
+
+    private static String urlStart(String url, String id) {
+        int idIndex = indexOfId(url, id);
+        return idIndex < 0 ? url : CompactStrings.intern(url.substring(0, idIndex));
+    }
+
+    private static String urlEnd(String url, String id) {
+        int idIndex = indexOfId(url, id);
+        return idIndex < 0 ? null : CompactStrings.intern(url.substring(idIndex + id.length()));
+    }
+
+    /**
+     * @return the given links to the covers, split around the id into the form kept in
+     * {@link #mImageUrls}, or null if there are none.
+     */
+    private static String[] splitImageUrls(String[] imageUrls, String id) {
+        if (imageUrls == null) {
+            return null;
+        }
+        int count = imageUrls.length;
+        while (count > 0 && imageUrls[count - 1] == null) {
+            count--;
+        }
+        if (count == 0) {
+            return null;
+        }
+        String[] split = new String[2 * count];
+        for (int i = 0; i < count; i++) {
+            if (imageUrls[i] != null) {
+                split[2 * i] = urlStart(imageUrls[i], id);
+                split[2 * i + 1] = urlEnd(imageUrls[i], id);
+            }
+        }
+        return split;
+    }
+
+    /**
+     * @return where the volume id starts in the given url, or -1 if it isn't there.
+     */
+    private static int indexOfId(String url, String id) {
+        if (url == null || id == null || id.isEmpty()) {
+            return -1;
+        }
+        return url.indexOf(id);
+    }
+
+    private String joinUrl(String start, String end) {
+        return end == null ? start : start + mId + end;
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.example.talha.booksearch;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many searches at once, such as every title of an imported reading list, with at most a
+ * given number of them running at the same time.
+ *
+ * Each result is handed to a {@link Listener} as soon as its search finishes, so the results
+ * arrive in the order the searches finish rather than the order they were given in, and the first
+ * ones can be shown while the rest are still loading. A search that fails is reported as a failed
+ * {@link Result} for that query; it doesn't stop the others.
+ *
+ * The queries are taken from an iterator only when there is room to start them, so a batch of
+ * any size is searched without holding all of its queries or results in memory.
+ */
+public final class BookBatch {
+
+    /** Time a search of a batch took, from the request until its books had been read */
+    private static final Metrics.Histogram sSearchTimer = Metrics.timer("batch.search");
+
+    /** Numbers the threads of every batch, for thread dumps */
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    /**
+     * Is told about the result of each search of a batch.
+     */
+    public interface Listener {
+
+        /**
+         * Called once for every query of the batch, when its search has finished or failed.
+         * It is called on one of the threads of the batch, but never by two threads at once, so
+         * it doesn't need to be thread safe. While it runs, no other result can be delivered, so
+         * it should return quickly.
+         */
+        void onResult(Result result);
+    }
+
+    /**
+     * The outcome of one search of a batch: either the books that were found, or the error that
+     * made it fail.
+     */
+    public static final class Result {
+        private final int mIndex;
+        private final BookQuery mQuery;
+        private final List<Book> mBooks;
+        private final Exception mError;
+        private final long mDurationNanos;
+
+        Result(int index, BookQuery query, List<Book> books, Exception error,
+               long durationNanos) {
+            mIndex = index;
+            mQuery = query;
+            mBooks = books;
+            mError = error;
+            mDurationNanos = durationNanos;
+        }
+
+        /**
+         * @return the position of the query among the queries of the batch, starting at 0.
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public BookQuery getQuery() {
+            return mQuery;
+        }
+
+        /**
+         * @return whether the search finished. A search that found nothing also succeeded, with
+         * an empty list of books.
+         */
+        public boolean isSuccessful() {
+            return mError == null;
+        }
+
+        /**
+         * @return the books that were found, or null if the search failed.
+         */
+        public List<Book> getBooks() {
+            return mBooks;
+        }
+
+        /**
+         * @return why the search failed, usually an {@link IOException}, or null if it didn't.
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        /**
+         * @return how long the search took, in milliseconds.
+         */
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mDurationNanos);
+        }
+    }
+
+    /** Makes the requests */
+    private final BookFetcher mFetcher;
+
+    /** How many searches run at the same time */
+    private final int mParallelism;
+
+    /**
+     * Creates a batch runner.
+     *
+     * @param fetcher     makes the searches. Its {@link NetworkClient} should be allowed to keep
+     *                    at least this many connections open, or the extra searches will have to
+     *                    connect again every time.
+     * @param parallelism the most searches that run at the same time.
+     */
+    public BookBatch(BookFetcher fetcher, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        mFetcher = fetcher;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Searches every query, and hands each result to the listener as soon as it is ready. This
+     * blocks until every result has been delivered, so it must not be called on the main thread.
+     *
+     * The same runner can be used for more than one batch, even at the same time; each call has
+     * threads of its own, which are stopped when it returns.
+     *
+     * @param queries   the queries to search. The iterator is only used on the calling thread.
+     * @param listener  is told about every result.
+     * @return how many queries were searched.
+     * @throws InterruptedException if the calling thread was interrupted. The searches that were
+     *                              running are interrupted too, and no more results are delivered.
+     */
+    public int searchAll(Iterator<BookQuery> queries, Listener listener)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(mParallelism,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "BookBatch-" + sThreadCount.incrementAndGet());
+                        // Don't keep the JVM of a command line tool alive.
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        Delivery delivery = new Delivery(listener);
+        // A permit is held from the moment a search starts until its result has been delivered,
+        // so a slow listener also slows down how fast new searches are started.
+        Semaphore permits = new Semaphore(mParallelism);
+        int count = 0;
+        boolean finished = false;
+        try {
+            while (true) {
+                // Wait for room before taking the next query, so a query is never taken from the
+                // iterator and then dropped.
+                permits.acquire();
+                if (delivery.isStopped() || !queries.hasNext()) {
+                    // Either the listener threw, so there is no point in starting more searches,
+                    // or every query has been started.
+                    permits.release();
+                    break;
+                }
+                executor.execute(new Search(count++, queries.next(), delivery, permits));
+            }
+            // Every permit is back once the last result has been delivered.
+            permits.acquire(mParallelism);
+            finished = true;
+        } finally {
+            if (!finished) {
+                delivery.stop();
+                executor.shutdownNow();
+            } else {
+                executor.shutdown();
+            }
+        }
+        delivery.rethrowListenerError();
+        return count;
+    }
+
+    /**
+     * Hands the results to the listener one at a time.
+     */
+    private static final class Delivery {
+        private final Listener mListener;
+        private boolean mStopped;
+        private RuntimeException mListenerError;
+
+        Delivery(Listener listener) {
+            mListener = listener;
+        }
+
+        synchronized void deliver(Result result) {
+            if (mStopped) {
+                return;
+            }
+            try {
+                mListener.onResult(result);
+            } catch (RuntimeException e) {
+                // Stop delivering, and let searchAll throw it once the batch has finished.
+                mListenerError = e;
+                mStopped = true;
+            }
+        }
+
+        synchronized boolean isStopped() {
+            return mStopped;
+        }
+
+        synchronized void stop() {
+            mStopped = true;
+        }
+
+        synchronized void rethrowListenerError() {
+            if (mListenerError != null) {
+                throw mListenerError;
+            }
+        }
+    }
+
+    /**
+     * Searches one query of a batch, and hands its result on.
+     */
+    private final class Search implements Runnable {
+        private final int mIndex;
+        private final BookQuery mQuery;
+        private final Delivery mDelivery;
+        private final Semaphore mPermits;
+
+        Search(int index, BookQuery query, Delivery delivery, Semaphore permits) {
+            mIndex = index;
+            mQuery = query;
+            mDelivery = delivery;
+            mPermits = permits;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long startTime = System.nanoTime();
+                List<Book> books = null;
+                Exception error = null;
+                try {
+                    books = mFetcher.search(mQuery);
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+                long duration = System.nanoTime() - startTime;
+                sSearchTimer.record(duration / 1000);
+                mDelivery.deliver(new Result(mIndex, mQuery, books, error, duration));
+            } finally {
+                mPermits.release();
+            }
+        }
+    }
+}
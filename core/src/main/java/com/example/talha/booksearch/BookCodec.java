@@ -0,0 +1,151 @@
+package com.example.talha.booksearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Turns a {@link Book} into a compact array of bytes and back again, so books can be kept on
+ * disk (or in memory) without the overhead of a full object for every field.
+ *
+ * The first byte says which fields are present. Only those fields follow, strings as modified
+ * UTF-8 and numbers as doubles.
+ *
+ * Books used to keep only one cover link, written after {@link #HAS_IMAGE_URL}. They now keep a
+ * link for every size of cover, written after {@link #HAS_IMAGE_LINKS}, but books saved the old
+ * way can still be read.
+ */
+public final class BookCodec {
+
+    /** Bits of the first byte, one for every field that may be missing */
+    private static final int HAS_ID = 1;
+    private static final int HAS_SUBTITLE = 1 << 1;
+    private static final int HAS_DESCRIPTION = 1 << 2;
+    private static final int HAS_AUTHOR = 1 << 3;
+    private static final int HAS_RATING = 1 << 4;
+    private static final int HAS_IMAGE_URL = 1 << 5;
+    private static final int HAS_PRICE = 1 << 6;
+    private static final int HAS_IMAGE_LINKS = 1 << 7;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookCodec} object.
+     * This class only holds static methods.
+     */
+    private BookCodec() {
+    }
+
+    /**
+     * @return the book as an array of bytes, which {@link #decode(byte[])} turns back into it.
+     */
+    public static byte[] encode(Book book) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            // Read the description once, since a long one is expanded every time it is read.
+            String description = book.getDescription();
+            String[] imageUrls = book.getImageUrls();
+            int flags = 0;
+            flags |= book.getId() != null ? HAS_ID : 0;
+            flags |= book.getSubtitle() != null ? HAS_SUBTITLE : 0;
+            flags |= description != null ? HAS_DESCRIPTION : 0;
+            flags |= book.getAuthor() != null ? HAS_AUTHOR : 0;
+            flags |= book.getRating() != null ? HAS_RATING : 0;
+            flags |= imageUrls != null ? HAS_IMAGE_LINKS : 0;
+            flags |= book.getPrice() != null ? HAS_PRICE : 0;
+            out.writeByte(flags);
+
+            if (book.getId() != null) {
+                out.writeUTF(book.getId());
+            }
+            out.writeUTF(book.getTitle());
+            if (book.getSubtitle() != null) {
+                out.writeUTF(book.getSubtitle());
+            }
+            if (description != null) {
+                writeLongString(out, description);
+            }
+            if (book.getAuthor() != null) {
+                out.writeUTF(book.getAuthor());
+            }
+            if (book.getRating() != null) {
+                out.writeDouble(book.getRating());
+            }
+            out.writeUTF(book.getUrl());
+            out.writeUTF(book.getPreviewUrl());
+            if (imageUrls != null) {
+                // One link for each size up to the largest there is, with missing sizes empty.
+                out.writeByte(imageUrls.length);
+                for (String imageUrl : imageUrls) {
+                    out.writeUTF(imageUrl != null ? imageUrl : "");
+                }
+            }
+            if (book.getPrice() != null) {
+                out.writeUTF(book.getLocale());
+                out.writeDouble(book.getPrice());
+            }
+        } catch (IOException e) {
+            // A ByteArrayOutputStream never throws.
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the book that was turned into the given bytes by {@link #encode(Book)}. The book
+     * reads its description straight from the array when it is asked for, so the array must not
+     * be changed afterwards.
+     */
+    public static Book decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int flags = in.readUnsignedByte();
+
+        String id = (flags & HAS_ID) != 0 ? in.readUTF() : null;
+        String title = in.readUTF();
+        String subtitle = (flags & HAS_SUBTITLE) != 0 ? in.readUTF() : null;
+        // The description is left in the data, and only decoded if it is read.
+        LazyText description = null;
+        if ((flags & HAS_DESCRIPTION) != 0) {
+            int length = in.readInt();
+            int offset = data.length - in.available();
+            if (in.skipBytes(length) != length) {
+                throw new EOFException("Description is cut short");
+            }
+            description = LazyText.fromUtf8(data, offset, length);
+        }
+        String author = (flags & HAS_AUTHOR) != 0 ? in.readUTF() : null;
+        Double rating = (flags & HAS_RATING) != 0 ? in.readDouble() : null;
+        String url = in.readUTF();
+        String previewUrl = in.readUTF();
+        String[] imageUrls = null;
+        if ((flags & HAS_IMAGE_URL) != 0) {
+            // Saved before books kept every size, when only the small thumbnail was kept.
+            imageUrls = new String[] {in.readUTF()};
+        } else if ((flags & HAS_IMAGE_LINKS) != 0) {
+            imageUrls = new String[in.readUnsignedByte()];
+            for (int i = 0; i < imageUrls.length; i++) {
+                String imageUrl = in.readUTF();
+                imageUrls[i] = imageUrl.isEmpty() ? null : imageUrl;
+            }
+        }
+        String locale = null;
+        Double price = null;
+        if ((flags & HAS_PRICE) != 0) {
+            locale = in.readUTF();
+            price = in.readDouble();
+        }
+        return Book.withLazyDescription(id, title, subtitle, description, author, rating, url,
+                previewUrl, imageUrls, locale, price);
+    }
+
+    /**
+     * Writes a string that may be longer than the 64KB writeUTF allows, such as a description.
+     */
+    private static void writeLongString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes("UTF-8");
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+}
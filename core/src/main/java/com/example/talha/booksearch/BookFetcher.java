@@ -0,0 +1,76 @@
+package com.example.talha.booksearch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Searches the Google Books API and reads the books in the response. It only uses plain Java, so
+ * the same code runs in the app, in command line tools and in tests on a desktop JVM.
+ *
+ * The requests go through a {@link NetworkClient}, so they reuse open connections and are retried
+ * and hedged as its {@link RequestPolicy} says. Caching the responses and remembering the books
+ * are left to the caller; the app does both in its Utils class.
+ */
+public final class BookFetcher {
+
+    /** Makes the requests */
+    private final NetworkClient mClient;
+
+    /**
+     * Creates a fetcher that makes its requests with the given client.
+     */
+    public BookFetcher(NetworkClient client) {
+        mClient = client;
+    }
+
+    /**
+     * Asks the API for the books of a query, blocking until the whole response has been read.
+     *
+     * @return the books, which is an empty list if the search found nothing.
+     * @throws IOException if the request failed, the server didn't answer 200 OK, or the
+     *                     response couldn't be parsed.
+     */
+    public List<Book> search(BookQuery query) throws IOException {
+        NetworkClient.Response response = mClient.get(new URL(query.toUrl()),
+                Collections.<String, String>emptyMap());
+        try {
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + response.getCode() + " for \""
+                        + query.getQuery() + "\"");
+            }
+            List<Book> books = new ArrayList<>();
+            parse(response.getBody(), books);
+            return books;
+        } finally {
+            // Closing the response hands the connection back to the pool instead of
+            // disconnecting it.
+            response.close();
+        }
+    }
+
+    /**
+     * Parses a volumes response token by token while it is read from the stream, and adds every
+     * book in it to the given list. The response is never held in memory as a whole, and fields
+     * that a {@link Book} doesn't use are skipped without being decoded. The stream is closed.
+     *
+     * Books are added as soon as they have been read, so if an error is thrown part way through
+     * the response, the list still holds every book before the one that failed.
+     *
+     * @throws IOException if the response isn't valid JSON, a book is missing a required field,
+     *                     or the stream couldn't be read.
+     */
+    public static void parse(InputStream in, List<Book> books) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(in);
+        try {
+            BookJsonParser.parse(reader, books);
+        } finally {
+            // Closing the reader hands its buffers back to the pool for the next request.
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.talha.booksearch;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Builds {@link Book} objects directly from a Google Books API response, reading it token by
+ * token with a {@link JsonStreamReader}. Only the fields a {@link Book} needs are decoded,
+ * everything else in the response is skipped.
+ */
+public final class BookJsonParser {
+
+    /**
+     * Names of the fields the parser reads. They are also used to build the "fields" parameter
+     * of a request, so the API only sends what the parser will actually use.
+     */
+    private static final String ITEMS = "items";
+    private static final String ID = "id";
+    private static final String VOLUME_INFO = "volumeInfo";
+    private static final String TITLE = "title";
+    private static final String SUBTITLE = "subtitle";
+    private static final String DESCRIPTION = "description";
+    private static final String AUTHORS = "authors";
+    private static final String AVERAGE_RATING = "averageRating";
+    private static final String IMAGE_LINKS = "imageLinks";
+    private static final String INFO_LINK = "infoLink";
+    private static final String PREVIEW_LINK = "previewLink";
+    private static final String SALE_INFO = "saleInfo";
+    private static final String SALEABILITY = "saleability";
+    private static final String LIST_PRICE = "listPrice";
+    private static final String AMOUNT = "amount";
+    private static final String CURRENCY_CODE = "currencyCode";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookJsonParser}
+     * object. This class only holds static methods.
+     */
+    private BookJsonParser() {
+    }
+
+    /**
+     * Builds the "fields" parameter for a search, which asks the API to leave out everything in
+     * a volume that {@link #parse(JsonStreamReader, List)} would skip anyway. A full volume
+     * carries dozens of fields the app never shows, so this makes the response a lot smaller.
+     *
+     * "saleability" isn't read, but it is always present, so asking for it makes sure every book
+     * still has a "saleInfo" object even when it has no list price.
+     *
+     * @param includeDescription is whether to include the description. It is by far the largest
+     *                           field, and the list of results doesn't show it, so searches leave
+     *                           it out and the detail screen loads it with
+     *                           {@link #descriptionFields()} instead.
+     */
+    public static String searchFields(boolean includeDescription) {
+        return ITEMS + '(' + volumeFields(includeDescription) + ')';
+    }
+
+    /**
+     * Builds the "fields" parameter for a single volume, asking for the same fields as
+     * {@link #searchFields(boolean)} does for each item of a search. The response can be read
+     * with {@link #parseVolume(JsonStreamReader)}.
+     *
+     * @param includeDescription is whether to include the description.
+     */
+    public static String volumeFields(boolean includeDescription) {
+        StringBuilder volumeInfo = new StringBuilder();
+        volumeInfo.append(TITLE).append(',').append(SUBTITLE).append(',');
+        if (includeDescription) {
+            volumeInfo.append(DESCRIPTION).append(',');
+        }
+        volumeInfo.append(AUTHORS).append(',')
+                .append(AVERAGE_RATING).append(',')
+                .append(IMAGE_LINKS).append(',')
+                .append(INFO_LINK).append(',')
+                .append(PREVIEW_LINK);
+
+        return ID + ','
+                + VOLUME_INFO + '(' + volumeInfo + "),"
+                + SALE_INFO + '(' + SALEABILITY + ',' + LIST_PRICE + '(' + AMOUNT + ','
+                + CURRENCY_CODE + "))";
+    }
+
+    /**
+     * @return the "fields" parameter for a single volume, asking only for its description.
+     */
+    public static String descriptionFields() {
+        return VOLUME_INFO + '/' + DESCRIPTION;
+    }
+
+    /**
+     * Reads a volumes response and adds every book in its "items" array to the given list.
+     *
+     * Books are added as soon as they have been read, so if an error is thrown part way through
+     * the response, the list still holds every book before the one that failed.
+     *
+     * @param reader is the reader positioned at the start of the response.
+     * @param books  is the list the books are added to.
+     */
+    public static void parse(JsonStreamReader reader, List<Book> books) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            // Extract the array with the key called "items", which represents a list of items
+            // (or books). Skip anything else, such as "kind" and "totalItems".
+            if (ITEMS.equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    books.add(parseBook(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a single volume response that was requested with {@link #volumeFields(boolean)}.
+     * A volume on its own looks exactly like an item of the "items" array of a search.
+     */
+    public static Book parseVolume(JsonStreamReader reader) throws IOException {
+        return parseBook(reader);
+    }
+
+    /**
+     * Reads a single item of the "items" array and returns it as a {@link Book}.
+     */
+    private static Book parseBook(JsonStreamReader reader) throws IOException {
+
+        // Set every property to null in case the book doesn't have it. The keys can come in any
+        // order, so the book is only created once the whole item has been read.
+        String bookId = null;
+        String bookTitle = null;
+        String bookSubtitle = null;
+        LazyText bookDescription = null;
+        String bookAuthor = null;
+        Double bookRating = null;
+        String bookUrl = null;
+        String previewUrl = null;
+        String[] imageUrls = null;
+        String currency = null;
+        Double bookPrice = null;
+        boolean hasSaleInfo = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (ID.equals(name)) {
+                bookId = reader.nextString();
+
+            } else if (VOLUME_INFO.equals(name)) {
+
+                // "volumeInfo" holds all the detailed information about the book.
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case TITLE:
+                            bookTitle = reader.nextString();
+                            break;
+                        case SUBTITLE:
+                            bookSubtitle = reader.nextString();
+                            break;
+                        case DESCRIPTION:
+                            // The list doesn't show descriptions, so only decode it if it is
+                            // read, which is usually only on the detail screen.
+                            bookDescription = LazyText.fromJson(reader.nextRawString());
+                            break;
+                        case AUTHORS:
+                            // Only the first author is shown, so skip the rest of them.
+                            reader.beginArray();
+                            if (reader.hasNext()) {
+                                bookAuthor = reader.nextString();
+                            }
+                            while (reader.hasNext()) {
+                                reader.skipValue();
+                            }
+                            reader.endArray();
+                            break;
+                        case AVERAGE_RATING:
+                            bookRating = reader.nextDouble();
+                            break;
+                        case IMAGE_LINKS:
+                            // "imageLinks" contains the low and high resolution images of the
+                            // book. Every size is kept: the list shows the smallest one, and the
+                            // detail screen the largest.
+                            imageUrls = new String[Book.ImageSize.values().length];
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                Book.ImageSize imageSize =
+                                        Book.ImageSize.fromJsonName(reader.nextName());
+                                if (imageSize != null) {
+                                    imageUrls[imageSize.ordinal()] = reader.nextString();
+                                } else {
+                                    reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                            break;
+                        case INFO_LINK:
+                            bookUrl = reader.nextString();
+                            break;
+                        case PREVIEW_LINK:
+                            previewUrl = reader.nextString();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+            } else if (SALE_INFO.equals(name)) {
+
+                // "saleInfo" holds all the price and sale information about the book. If the
+                // book has a price, extract it and the currency it's in.
+                hasSaleInfo = true;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (LIST_PRICE.equals(reader.nextName())) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case AMOUNT:
+                                    bookPrice = reader.nextDouble();
+                                    break;
+                                case CURRENCY_CODE:
+                                    currency = reader.nextString();
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        if (bookPrice == null || currency == null) {
+                            throw new MalformedJsonException("Incomplete listPrice");
+                        }
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // The title, links and sale info are required, just like they are for the API's own
+        // volume resource.
+        if (bookTitle == null || bookUrl == null || previewUrl == null || !hasSaleInfo) {
+            throw new MalformedJsonException("Book is missing a required field");
+        }
+
+        return Book.withLazyDescription(bookId, bookTitle, bookSubtitle, bookDescription,
+                bookAuthor, bookRating, bookUrl, previewUrl, imageUrls, currency, bookPrice);
+    }
+
+    /**
+     * Reads a single volume response that was requested with {@link #descriptionFields()}.
+     *
+     * @return the description of the volume, or null if it doesn't have one.
+     */
+    public static String parseDescription(JsonStreamReader reader) throws IOException {
+        String description = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (VOLUME_INFO.equals(reader.nextName())) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (DESCRIPTION.equals(reader.nextName())) {
+                        description = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return description;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.talha.booksearch;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Locale;
+
+/**
+ * A {@link BookQuery} holds everything that decides which books a search returns: the text the
+ * user searched for, and the search settings.
+ */
+public class BookQuery {
+
+    /** URL for book data from the Google Books API */
+    public static final String GOOGLE_BOOKS_URL = "https://www.googleapis.com/books/v1/volumes";
+
+    /** The settings a search uses unless the user changed them */
+    public static final int DEFAULT_MAX_RESULTS = 15;
+    public static final String ORDER_BY_RELEVANCE = "relevance";
+    public static final String ORDER_BY_NEWEST = "newest";
+    public static final String PRINT_TYPE_ALL = "all";
+    public static final String PRINT_TYPE_BOOKS = "books";
+    public static final String PRINT_TYPE_MAGAZINES = "magazines";
+
+    /** The URL of the volumes endpoint the query is sent to */
+    private final String mBaseUrl;
+
+    /** The text the user searched for */
+    private final String mQuery;
+
+    /** The search settings */
+    private final int mMaxResults;
+    private final String mOrderBy;
+    private final String mPrintType;
+
+    /** Position of the first book to return, used to load the pages after the first one */
+    private final int mStartIndex;
+
+    /**
+     * Creates a new BookQuery.
+     *
+     * @param query      is the text the user searched for.
+     * @param maxResults is the number of books to return.
+     * @param orderBy    is the order the books are returned in.
+     * @param printType  is the type of books to return (books, magazines or both).
+     */
+    public BookQuery(String query, int maxResults, String orderBy, String printType) {
+        this(GOOGLE_BOOKS_URL, query, maxResults, orderBy, printType, 0);
+    }
+
+    private BookQuery(String baseUrl, String query, int maxResults, String orderBy,
+                      String printType, int startIndex) {
+        mBaseUrl = baseUrl;
+        mQuery = query.trim();
+        mMaxResults = maxResults;
+        mOrderBy = orderBy;
+        mPrintType = printType;
+        mStartIndex = startIndex;
+    }
+
+    /**
+     * @return the same query, for the given page of results. Each page holds as many books as
+     * the query's maxResults setting, and the first page is page 0.
+     */
+    public BookQuery forPage(int page) {
+        return new BookQuery(mBaseUrl, mQuery, mMaxResults, mOrderBy, mPrintType,
+                page * mMaxResults);
+    }
+
+    /**
+     * @return the same query, sent to another server that answers like the volumes endpoint of
+     * the Google Books API, such as a local stand-in for tests.
+     */
+    public BookQuery forBaseUrl(String baseUrl) {
+        return new BookQuery(baseUrl, mQuery, mMaxResults, mOrderBy, mPrintType, mStartIndex);
+    }
+
+    /**
+     * @return the text the user searched for.
+     */
+    public String getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * @return the number of books in each page of results.
+     */
+    public int getMaxResults() {
+        return mMaxResults;
+    }
+
+    /**
+     * @return the URL that asks the Google Books API for the books of this query.
+     */
+    public String toUrl() {
+        // Add query parameters according to user actions.
+        StringBuilder url = new StringBuilder(mBaseUrl);
+        appendQueryParameter(url, "q", mQuery);
+        appendQueryParameter(url, "maxResults", String.valueOf(mMaxResults));
+        if (mStartIndex > 0) {
+            appendQueryParameter(url, "startIndex", String.valueOf(mStartIndex));
+        }
+        appendQueryParameter(url, "orderBy", mOrderBy);
+        appendQueryParameter(url, "printType", mPrintType);
+        appendQueryParameter(url, "prettyPrint", "false");
+
+        // Only ask for the fields the list shows. The description is loaded separately when a
+        // book is opened.
+        appendQueryParameter(url, "fields", BookJsonParser.searchFields(false));
+
+        return url.toString();
+    }
+
+    /**
+     * @return the URL that asks the Google Books API for everything a {@link Book} holds about a
+     * single book, including its description.
+     */
+    public static String volumeUrl(String volumeId) {
+        StringBuilder url = new StringBuilder(GOOGLE_BOOKS_URL)
+                .append('/').append(encode(volumeId));
+        appendQueryParameter(url, "prettyPrint", "false");
+        appendQueryParameter(url, "fields", BookJsonParser.volumeFields(true));
+        return url.toString();
+    }
+
+    /**
+     * @return the URL that asks the Google Books API for the description of a single book.
+     */
+    public static String descriptionUrl(String volumeId) {
+        StringBuilder url = new StringBuilder(GOOGLE_BOOKS_URL)
+                .append('/').append(encode(volumeId));
+        appendQueryParameter(url, "prettyPrint", "false");
+        appendQueryParameter(url, "fields", BookJsonParser.descriptionFields());
+        return url.toString();
+    }
+
+    /**
+     * Adds a parameter to the query string of the URL, which may or may not have one yet.
+     */
+    private static void appendQueryParameter(StringBuilder url, String name, String value) {
+        url.append(url.indexOf("?") < 0 ? '?' : '&')
+                .append(encode(name)).append('=').append(encode(value));
+    }
+
+    /**
+     * Encodes a part of a URL the same way android.net.Uri does, so responses the app cached
+     * under those URLs are still found: everything but letters, digits and "-_.!~*'()" is
+     * percent-encoded as UTF-8, and spaces become "%20".
+     */
+    private static String encode(String value) {
+        String encoded;
+        try {
+            encoded = URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform supports UTF-8.
+            throw new IllegalStateException(e);
+        }
+        // URLEncoder is meant for HTML forms, so it turns spaces into "+" and encodes a few
+        // characters that don't need it.
+        return encoded.replace("+", "%20").replace("%21", "!").replace("%27", "'")
+                .replace("%28", "(").replace("%29", ")").replace("%7E", "~");
+    }
+
+    /**
+     * @return a key that is the same for every query that returns the same books. The search
+     * text is compared without regard to case or extra spaces, since the API ignores those too.
+     */
+    public String getCacheKey() {
+        String normalizedQuery = mQuery.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return normalizedQuery + '\n' + mMaxResults + '\n' + mOrderBy + '\n' + mPrintType
+                + '\n' + mStartIndex;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.talha.booksearch;
+
+import java.util.ArrayDeque;
+
+/**
+ * A process-wide pool of byte and char buffers used to read network responses.
+ *
+ * Every search needs a byte buffer to read the response into and a char buffer to decode
+ * strings into. Instead of allocating new ones for every request, they are borrowed from this
+ * pool and handed back once the response has been read, so after the first search the reading
+ * itself allocates almost nothing.
+ */
+public final class BufferPool {
+
+    /** Size of the byte buffers handed out by the pool */
+    public static final int BYTE_BUFFER_SIZE = 8192;
+
+    /** Starting size of the char buffers handed out by the pool */
+    public static final int CHAR_BUFFER_SIZE = 1024;
+
+    /**
+     * The largest char buffer that is taken back by the pool. Char buffers grow to fit the
+     * longest string in a response, so this stops one huge description being kept forever.
+     */
+    private static final int MAX_POOLED_CHAR_BUFFER_SIZE = 32 * 1024;
+
+    /** The most buffers of each kind that are kept while nobody is using them */
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final ArrayDeque<byte[]> sByteBuffers = new ArrayDeque<>();
+    private static final ArrayDeque<char[]> sCharBuffers = new ArrayDeque<>();
+
+    /** Lock guarding the pools and the allocation counter */
+    private static final Object sLock = new Object();
+
+    /** Total number of bytes the pool has had to allocate because it was empty */
+    private static long sBytesAllocated;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BufferPool} object.
+     */
+    private BufferPool() {
+    }
+
+    /**
+     * @return a byte buffer of {@link #BYTE_BUFFER_SIZE} bytes, which should be handed back with
+     * {@link #releaseBytes(byte[])} once it is no longer used.
+     */
+    public static byte[] acquireBytes() {
+        synchronized (sLock) {
+            byte[] buffer = sByteBuffers.pollFirst();
+            if (buffer != null) {
+                return buffer;
+            }
+            sBytesAllocated += BYTE_BUFFER_SIZE;
+        }
+        return new byte[BYTE_BUFFER_SIZE];
+    }
+
+    /**
+     * Hands a byte buffer back to the pool so it can be reused by the next request.
+     */
+    public static void releaseBytes(byte[] buffer) {
+        if (buffer == null || buffer.length != BYTE_BUFFER_SIZE) {
+            return;
+        }
+        synchronized (sLock) {
+            if (sByteBuffers.size() < MAX_POOLED_BUFFERS) {
+                sByteBuffers.addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return a char buffer of at least {@link #CHAR_BUFFER_SIZE} chars, which should be handed
+     * back with {@link #releaseChars(char[])} once it is no longer used.
+     */
+    public static char[] acquireChars() {
+        synchronized (sLock) {
+            char[] buffer = sCharBuffers.pollFirst();
+            if (buffer != null) {
+                return buffer;
+            }
+            // A char is two bytes.
+            sBytesAllocated += CHAR_BUFFER_SIZE * 2;
+        }
+        return new char[CHAR_BUFFER_SIZE];
+    }
+
+    /**
+     * Hands a char buffer back to the pool. Buffers that grew while being used are kept, as long
+     * as they are not too big.
+     */
+    public static void releaseChars(char[] buffer) {
+        if (buffer == null || buffer.length > MAX_POOLED_CHAR_BUFFER_SIZE) {
+            return;
+        }
+        synchronized (sLock) {
+            if (sCharBuffers.size() < MAX_POOLED_BUFFERS) {
+                sCharBuffers.addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * Records that a buffer borrowed from the pool had to be replaced by a bigger one, so that
+     * the allocation shows up in {@link #getBytesAllocated()}.
+     */
+    static void recordGrowth(int bytes) {
+        synchronized (sLock) {
+            sBytesAllocated += bytes;
+        }
+    }
+
+    /**
+     * @return the total number of bytes allocated for buffers since the app started, by every
+     * request together. Once the pool has filled up this should stop growing.
+     */
+    public static long getBytesAllocated() {
+        synchronized (sLock) {
+            return sBytesAllocated;
+        }
+    }
+}
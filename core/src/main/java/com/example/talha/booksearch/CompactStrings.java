@@ -0,0 +1,108 @@
+package com.example.talha.booksearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Helpers that let a {@link Book} keep its Strings in less memory.
+ *
+ * Many books hold exactly the same Strings, such as the currency code, the name of a popular
+ * author, or the start of every Google Books link. {@link #intern(String)} returns one shared
+ * copy of each, so thousands of books don't each keep their own. Long descriptions are kept
+ * compressed with {@link #deflate(String)} and only expanded when they are read.
+ */
+final class CompactStrings {
+
+    /**
+     * The shared copies. Both the keys and the values are weak, so a String that no book uses any
+     * more is garbage collected instead of being kept forever (unlike {@link String#intern()}).
+     */
+    private static final WeakHashMap<String, WeakReference<String>> sPool = new WeakHashMap<>();
+
+    /** Size of the buffer used while compressing and expanding */
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link CompactStrings}
+     * object. This class only holds static methods.
+     */
+    private CompactStrings() {
+    }
+
+    /**
+     * @return a shared String equal to the given one, or null if it is null.
+     */
+    static synchronized String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<String> reference = sPool.get(value);
+        String shared = reference != null ? reference.get() : null;
+        if (shared == null) {
+            sPool.put(value, new WeakReference<>(value));
+            shared = value;
+        }
+        return shared;
+    }
+
+    /**
+     * Compresses a String. Text compresses to roughly a third of its UTF-8 size, which is itself
+     * half the size of the chars of a String.
+     */
+    static byte[] deflate(String value) {
+        byte[] input = toUtf8(value);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            // The compressor holds native memory, which must be released straight away.
+            deflater.end();
+        }
+    }
+
+    /**
+     * Expands a String that was compressed with {@link #deflate(String)}.
+     */
+    static String inflate(byte[] packed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(packed.length * 3);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Compressed String is truncated");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toString("UTF-8");
+        } catch (DataFormatException | UnsupportedEncodingException e) {
+            // Only this class ever compresses the data, so it can't be malformed.
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] toUtf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform supports UTF-8.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,657 @@
+package com.example.talha.booksearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A small streaming (pull) JSON reader that decodes UTF-8 JSON straight from an
+ * {@link InputStream}, one token at a time.
+ *
+ * Unlike building a full JSONObject tree, nothing is kept in memory except the token that is
+ * currently being read, so values the caller doesn't care about can be skipped with
+ * {@link #skipValue()} without ever being turned into Strings.
+ *
+ * The API mirrors android.util.JsonReader, but works on raw bytes and has no Android dependencies.
+ */
+public class JsonStreamReader implements Closeable {
+
+    /**
+     * The kinds of token that {@link #peek()} can return.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    /** Scopes that are kept on the stack while reading nested objects and arrays */
+    private static final int SCOPE_OBJECT_NAME = 1;
+    private static final int SCOPE_OBJECT_VALUE = 2;
+    private static final int SCOPE_ARRAY = 3;
+
+    /** The stream the JSON is read from */
+    private final InputStream mIn;
+
+    /** Bytes read from the stream, and the range of them that hasn't been consumed yet */
+    private byte[] mBuffer;
+    private int mPos;
+    private int mLimit;
+
+    /** Whether the stream has ended, so an error from now on means the JSON was cut short */
+    private boolean mEndOfStream;
+
+    /** Reusable storage for decoded strings and literals */
+    private char[] mChars;
+
+    /** Stack of the objects and arrays we're currently inside of */
+    private int[] mStack = new int[32];
+    private int mStackSize;
+
+    /** The token returned by the last call to {@link #peek()}, or null if it was consumed */
+    private Token mPeeked;
+
+    /**
+     * Creates a new reader for the given stream. The stream is expected to be UTF-8 encoded.
+     *
+     * The reader borrows its buffers from the {@link BufferPool}, so it must be closed once it is
+     * no longer needed to hand them back.
+     */
+    public JsonStreamReader(InputStream in) {
+        mIn = in;
+        mBuffer = BufferPool.acquireBytes();
+        mChars = BufferPool.acquireChars();
+    }
+
+    /**
+     * @return the type of the next token, without consuming it.
+     */
+    public Token peek() throws IOException {
+        if (mPeeked != null) {
+            return mPeeked;
+        }
+
+        int c = nextNonWhitespace();
+        switch (c) {
+            case -1:
+                mPeeked = Token.END_DOCUMENT;
+                break;
+            case '{':
+                mPeeked = Token.BEGIN_OBJECT;
+                break;
+            case '}':
+                mPeeked = Token.END_OBJECT;
+                break;
+            case '[':
+                mPeeked = Token.BEGIN_ARRAY;
+                break;
+            case ']':
+                mPeeked = Token.END_ARRAY;
+                break;
+            case '"':
+                // A string is a name if we're inside an object and waiting for the next key.
+                mPeeked = currentScope() == SCOPE_OBJECT_NAME ? Token.NAME : Token.STRING;
+                break;
+            case 't':
+            case 'f':
+                mPeeked = Token.BOOLEAN;
+                break;
+            case 'n':
+                mPeeked = Token.NULL;
+                break;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    mPeeked = Token.NUMBER;
+                } else {
+                    throw syntaxError("Unexpected character '" + (char) c + "'");
+                }
+        }
+
+        // Literals still need their first character, so push it back.
+        if (mPeeked == Token.BOOLEAN || mPeeked == Token.NULL || mPeeked == Token.NUMBER) {
+            mPos--;
+        }
+        return mPeeked;
+    }
+
+    /**
+     * Consumes the next token, which must be the start of an object.
+     */
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(SCOPE_OBJECT_NAME);
+    }
+
+    /**
+     * Consumes the next token, which must be the end of the current object.
+     */
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        mStackSize--;
+    }
+
+    /**
+     * Consumes the next token, which must be the start of an array.
+     */
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(SCOPE_ARRAY);
+    }
+
+    /**
+     * Consumes the next token, which must be the end of the current array.
+     */
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        mStackSize--;
+    }
+
+    /**
+     * @return true if the current object or array has more elements.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * @return the next property name inside the current object.
+     */
+    public String nextName() throws IOException {
+        if (peek() != Token.NAME) {
+            throw syntaxError("Expected a name but was " + mPeeked);
+        }
+        mPeeked = null;
+        mStack[mStackSize - 1] = SCOPE_OBJECT_VALUE;
+        return readString();
+    }
+
+    /**
+     * @return the next string value. Numbers and booleans are returned as their literal text.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        String result;
+        if (token == Token.STRING) {
+            mPeeked = null;
+            result = readString();
+        } else if (token == Token.NUMBER || token == Token.BOOLEAN) {
+            mPeeked = null;
+            result = new String(mChars, 0, readLiteral());
+        } else {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        valueConsumed();
+        return result;
+    }
+
+    /**
+     * Reads the next string value without decoding it, for values that may never be needed. The
+     * result can be turned into a String later with {@link #decodeRawString(byte[])}.
+     *
+     * @return the UTF-8 bytes of the string as they appear in the JSON, with any escapes, up to
+     * and including the closing quote.
+     */
+    public byte[] nextRawString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        mPeeked = null;
+        byte[] result = readRawString();
+        valueConsumed();
+        return result;
+    }
+
+    /**
+     * Decodes a string that was read with {@link #nextRawString()}.
+     */
+    public static String decodeRawString(byte[] raw) {
+        JsonStreamReader reader = new JsonStreamReader(new ByteArrayInputStream(raw));
+        try {
+            return reader.readString();
+        } catch (IOException e) {
+            // The bytes were checked for a closing quote when they were read.
+            throw new IllegalStateException(e);
+        } finally {
+            // Closing a ByteArrayInputStream does nothing, so this can't fail. Not going through
+            // Utils keeps the reader free of Android classes, so it also runs on a plain JVM.
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the next number value. Strings are parsed as numbers if they can be.
+     */
+    public double nextDouble() throws IOException {
+        String value;
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            mPeeked = null;
+            value = new String(mChars, 0, readLiteral());
+        } else if (token == Token.STRING) {
+            mPeeked = null;
+            value = readString();
+        } else {
+            throw syntaxError("Expected a number but was " + token);
+        }
+        valueConsumed();
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but was \"" + value + "\"");
+        }
+    }
+
+    /**
+     * @return the next boolean value.
+     */
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        int length = readLiteral();
+        valueConsumed();
+        if (length == 4 && mChars[0] == 't') {
+            return true;
+        } else if (length == 5 && mChars[0] == 'f') {
+            return false;
+        }
+        throw syntaxError("Expected a boolean but was " + new String(mChars, 0, length));
+    }
+
+    /**
+     * Consumes the next token, which must be a null literal.
+     */
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        readLiteral();
+        valueConsumed();
+    }
+
+    /**
+     * Skips the next value, including every nested object and array inside of it. Strings that
+     * are skipped are never decoded.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            mPeeked = null;
+            switch (token) {
+                case BEGIN_OBJECT:
+                    valueConsumed();
+                    push(SCOPE_OBJECT_NAME);
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    valueConsumed();
+                    push(SCOPE_ARRAY);
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    mStackSize--;
+                    depth--;
+                    break;
+                case NAME:
+                    skipString();
+                    mStack[mStackSize - 1] = SCOPE_OBJECT_VALUE;
+                    break;
+                case STRING:
+                    skipString();
+                    valueConsumed();
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    readLiteral();
+                    valueConsumed();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Closes the underlying stream and hands the buffers back to the {@link BufferPool}.
+     */
+    @Override
+    public void close() throws IOException {
+        mPeeked = null;
+        mStackSize = 0;
+        if (mBuffer != null) {
+            BufferPool.releaseBytes(mBuffer);
+            BufferPool.releaseChars(mChars);
+            mBuffer = null;
+            mChars = null;
+        }
+        mIn.close();
+    }
+
+    /**
+     * Consumes the peeked token if it is of the expected type, otherwise throws an exception.
+     * If the token starts a new object or array, the value is marked as consumed in the parent.
+     */
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        mPeeked = null;
+        if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+            valueConsumed();
+        }
+    }
+
+    /**
+     * Called after a value has been read. If we're inside an object, the next token is a name.
+     */
+    private void valueConsumed() {
+        if (mStackSize > 0 && mStack[mStackSize - 1] == SCOPE_OBJECT_VALUE) {
+            mStack[mStackSize - 1] = SCOPE_OBJECT_NAME;
+        }
+    }
+
+    private int currentScope() {
+        return mStackSize == 0 ? 0 : mStack[mStackSize - 1];
+    }
+
+    private void push(int scope) {
+        if (mStackSize == mStack.length) {
+            int[] newStack = new int[mStackSize * 2];
+            System.arraycopy(mStack, 0, newStack, 0, mStackSize);
+            mStack = newStack;
+        }
+        mStack[mStackSize++] = scope;
+    }
+
+    /**
+     * Refills the buffer from the stream.
+     *
+     * @return false if the end of the stream has been reached.
+     */
+    private boolean fill() throws IOException {
+        mPos = 0;
+        mLimit = 0;
+        int count;
+        while ((count = mIn.read(mBuffer, 0, mBuffer.length)) == 0) {
+            // Keep reading until we either get some bytes or reach the end of the stream.
+        }
+        if (count == -1) {
+            mEndOfStream = true;
+            return false;
+        }
+        mLimit = count;
+        return true;
+    }
+
+    /**
+     * @return the next byte that is not whitespace, commas or colons, or -1 at the end of the
+     * stream. Separators are checked by the scope stack, so they don't need to be returned.
+     */
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            if (mPos == mLimit && !fill()) {
+                return -1;
+            }
+            int c = mBuffer[mPos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != ',' && c != ':') {
+                return c;
+            }
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (mPos == mLimit && !fill()) {
+            throw syntaxError("Unexpected end of document");
+        }
+        return mBuffer[mPos++] & 0xff;
+    }
+
+    /**
+     * Reads a number, true, false or null literal into {@link #mChars}.
+     *
+     * @return the length of the literal.
+     */
+    private int readLiteral() throws IOException {
+        int length = 0;
+        while (true) {
+            if (mPos == mLimit && !fill()) {
+                return length;
+            }
+            int c = mBuffer[mPos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n'
+                    || c == '\r' || c == '\t') {
+                return length;
+            }
+            mPos++;
+            if (length == mChars.length) {
+                growChars(length + 1);
+            }
+            mChars[length++] = (char) c;
+        }
+    }
+
+    /**
+     * Decodes the rest of a string whose opening quote has already been consumed.
+     */
+    private String readString() throws IOException {
+        int length = 0;
+        while (true) {
+            // Fast path: copy a run of plain ASCII characters straight out of the buffer.
+            int pos = mPos;
+            int limit = mLimit;
+            byte[] buffer = mBuffer;
+            if (length + (limit - pos) > mChars.length) {
+                growChars(length + (limit - pos));
+            }
+            char[] chars = mChars;
+            while (pos < limit) {
+                byte b = buffer[pos];
+                if (b == '"' || b == '\\' || b < 0) {
+                    break;
+                }
+                chars[length++] = (char) b;
+                pos++;
+            }
+            mPos = pos;
+
+            if (pos == limit) {
+                if (!fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                continue;
+            }
+
+            int c = buffer[mPos++] & 0xff;
+            if (c == '"') {
+                return new String(mChars, 0, length);
+            }
+
+            // Escapes and multi-byte characters can add up to two chars.
+            if (length + 2 > mChars.length) {
+                growChars(length + 2);
+            }
+            if (c == '\\') {
+                length = readEscape(length);
+            } else {
+                length = readMultiByte(c, length);
+            }
+        }
+    }
+
+    /**
+     * Decodes an escape sequence into {@link #mChars} at the given position.
+     *
+     * @return the new length of the decoded string.
+     */
+    private int readEscape(int length) throws IOException {
+        int c = readByte();
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readByte(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                mChars[length++] = (char) value;
+                break;
+            case 'b':
+                mChars[length++] = '\b';
+                break;
+            case 'f':
+                mChars[length++] = '\f';
+                break;
+            case 'n':
+                mChars[length++] = '\n';
+                break;
+            case 'r':
+                mChars[length++] = '\r';
+                break;
+            case 't':
+                mChars[length++] = '\t';
+                break;
+            default:
+                // \" \\ and \/ are the character itself.
+                mChars[length++] = (char) c;
+        }
+        return length;
+    }
+
+    /**
+     * Decodes a UTF-8 sequence, whose first byte has already been read, into {@link #mChars}.
+     *
+     * @return the new length of the decoded string.
+     */
+    private int readMultiByte(int first, int length) throws IOException {
+        int codePoint;
+        int extraBytes;
+        if ((first & 0xe0) == 0xc0) {
+            codePoint = first & 0x1f;
+            extraBytes = 1;
+        } else if ((first & 0xf0) == 0xe0) {
+            codePoint = first & 0x0f;
+            extraBytes = 2;
+        } else if ((first & 0xf8) == 0xf0) {
+            codePoint = first & 0x07;
+            extraBytes = 3;
+        } else {
+            // Not a valid leading byte, so substitute the replacement character.
+            mChars[length++] = '\uFFFD';
+            return length;
+        }
+        for (int i = 0; i < extraBytes; i++) {
+            codePoint = (codePoint << 6) | (readByte() & 0x3f);
+        }
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            mChars[length++] = Character.highSurrogate(codePoint);
+            mChars[length++] = Character.lowSurrogate(codePoint);
+        } else {
+            mChars[length++] = (char) codePoint;
+        }
+        return length;
+    }
+
+    /**
+     * Copies the rest of a string whose opening quote has already been consumed, without decoding
+     * it. Like {@link #skipString()}, only quotes and backslashes need to be looked at.
+     */
+    private byte[] readRawString() throws IOException {
+        // Most strings end inside the buffer, and are copied out of it in one go. Longer ones
+        // are collected in a stream as the buffer is refilled.
+        ByteArrayOutputStream out = null;
+        boolean escaped = false;
+        while (true) {
+            int start = mPos;
+            int pos = start;
+            int limit = mLimit;
+            byte[] buffer = mBuffer;
+            while (pos < limit) {
+                byte b = buffer[pos++];
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    mPos = pos;
+                    if (out == null) {
+                        return Arrays.copyOfRange(buffer, start, pos);
+                    }
+                    out.write(buffer, start, pos - start);
+                    return out.toByteArray();
+                }
+            }
+            if (out == null) {
+                out = new ByteArrayOutputStream(2 * (pos - start));
+            }
+            out.write(buffer, start, pos - start);
+            mPos = pos;
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a string whose opening quote has already been consumed, without decoding
+     * it. UTF-8 continuation bytes can never look like a quote or a backslash, so it's safe to
+     * scan the raw bytes.
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            int pos = mPos;
+            int limit = mLimit;
+            byte[] buffer = mBuffer;
+            while (pos < limit) {
+                byte b = buffer[pos++];
+                if (b == '"') {
+                    mPos = pos;
+                    return;
+                }
+                if (b == '\\') {
+                    if (pos == limit) {
+                        mPos = pos;
+                        readByte();
+                        pos = mPos;
+                        limit = mLimit;
+                    } else {
+                        pos++;
+                    }
+                }
+            }
+            mPos = pos;
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void growChars(int minCapacity) {
+        char[] newChars = new char[Math.max(minCapacity, mChars.length * 2)];
+        BufferPool.recordGrowth(newChars.length * 2);
+        System.arraycopy(mChars, 0, newChars, 0, mChars.length);
+        mChars = newChars;
+    }
+
+    /**
+     * @return the exception for a problem with the JSON: an {@link EOFException} if the stream
+     * ended before the document did, which usually means the response was cut short, or a
+     * {@link MalformedJsonException} if the JSON itself is wrong.
+     */
+    private IOException syntaxError(String message) {
+        if (mEndOfStream) {
+            return new EOFException(message + " in JSON response");
+        }
+        return new MalformedJsonException(message + " in JSON response");
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.talha.booksearch;
+
+/**
+ * A rolling histogram of how long something took, such as connecting to a host, so the
+ * {@link NetworkClient} can tell how slow is unusually slow for it.
+ *
+ * Times are counted in buckets that are each {@link #BUCKET_GROWTH} times as wide as the one
+ * before, so a percentile is never off by more than a quarter, however long or short the times
+ * are, and recording a time costs the same however many have been recorded. Once
+ * {@link #WINDOW} times have been counted, every count is halved, so older times fade out and
+ * the percentiles follow the network as it gets faster or slower. All methods are thread-safe.
+ */
+final class LatencyTracker {
+
+    /** How much wider each bucket is than the one before */
+    private static final double BUCKET_GROWTH = 1.25;
+
+    /** Times longer than this all go in the last bucket */
+    private static final long MAX_MILLIS = 10 * 60 * 1000;
+
+    /** The longest time, in milliseconds, that goes in each bucket */
+    private static final long[] BUCKET_LIMITS = createBucketLimits();
+
+    /** How many times are counted before the counts are halved */
+    private static final int WINDOW = 128;
+
+    /** How many times are in each bucket. Halving leaves fractions, so these aren't whole. */
+    private final double[] mCounts = new double[BUCKET_LIMITS.length];
+
+    /** The sum of {@link #mCounts} */
+    private double mTotal;
+
+    private static long[] createBucketLimits() {
+        int count = 1;
+        for (long limit = 1; limit < MAX_MILLIS; limit = nextLimit(limit)) {
+            count++;
+        }
+        long[] limits = new long[count];
+        long limit = 1;
+        for (int i = 0; i < count - 1; i++) {
+            limits[i] = limit;
+            limit = nextLimit(limit);
+        }
+        limits[count - 1] = Long.MAX_VALUE;
+        return limits;
+    }
+
+    private static long nextLimit(long limit) {
+        return Math.max(limit + 1, Math.round(limit * BUCKET_GROWTH));
+    }
+
+    /**
+     * Records how long something took.
+     */
+    synchronized void record(long millis) {
+        mCounts[bucketOf(millis)]++;
+        mTotal++;
+        if (mTotal >= WINDOW) {
+            mTotal = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                mCounts[i] /= 2;
+                mTotal += mCounts[i];
+            }
+        }
+    }
+
+    /**
+     * @return roughly how many recent times are counted. Once the window is full this stays
+     * between half the window and the whole window.
+     */
+    synchronized int getCount() {
+        return (int) Math.round(mTotal);
+    }
+
+    /**
+     * @param percentile is a number between 0 and 1, such as 0.99 for the 99th percentile.
+     * @return a time that at least the given share of the recent times were no longer than, or
+     * -1 if nothing has been recorded yet. This is the upper limit of the bucket the percentile
+     * falls in, so it may be up to a quarter longer than the exact percentile.
+     */
+    synchronized long getPercentile(double percentile) {
+        if (mTotal == 0) {
+            return -1;
+        }
+        double target = percentile * mTotal;
+        double count = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            count += mCounts[i];
+            if (count >= target && mCounts[i] > 0) {
+                return BUCKET_LIMITS[i] == Long.MAX_VALUE ? MAX_MILLIS : BUCKET_LIMITS[i];
+            }
+        }
+        return MAX_MILLIS;
+    }
+
+    /**
+     * @return the bucket the given time goes in.
+     */
+    private static int bucketOf(long millis) {
+        int low = 0;
+        int high = BUCKET_LIMITS.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (BUCKET_LIMITS[middle] < millis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.talha.booksearch;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A piece of text that is only turned into a String when it is read.
+ *
+ * A {@link Book} keeps its description like this. The list of results never shows descriptions,
+ * so decoding them while parsing, or while reading books back from the shelf and the index,
+ * would be wasted work. The text is decoded every time {@link #read()} is called, and is never
+ * held as a String by the book, so it doesn't take up more memory once it has been shown.
+ */
+abstract class LazyText {
+
+    /**
+     * Texts longer than this many chars are compressed. Shorter ones wouldn't get much smaller,
+     * and would cost more to expand than they save.
+     */
+    private static final int COMPRESS_LENGTH = 256;
+
+    /** Rough size, in bytes, of a LazyText and the array or String it holds */
+    private static final int OVERHEAD = 56;
+
+    /**
+     * @return the text.
+     */
+    abstract String read();
+
+    /**
+     * @return a rough estimate of the memory this text takes up, in bytes.
+     */
+    abstract int estimateSize();
+
+    /**
+     * @return the given String, compressed if it is long, or null if it is null.
+     */
+    static LazyText of(String text) {
+        if (text == null) {
+            return null;
+        }
+        return text.length() > COMPRESS_LENGTH ? new Deflated(text) : new Plain(text);
+    }
+
+    /**
+     * @return a text that was read with {@link JsonStreamReader#nextRawString()}. It keeps the
+     * raw bytes, so the escapes and UTF-8 are only decoded when it is read.
+     */
+    static LazyText fromJson(byte[] raw) {
+        return new Json(raw);
+    }
+
+    /**
+     * @return a text that is held as UTF-8 inside the given array. The array is kept instead of
+     * being copied, so it must not be changed afterwards.
+     */
+    static LazyText fromUtf8(byte[] data, int offset, int length) {
+        return new Utf8(data, offset, length);
+    }
+
+    /**
+     * A short text, which is kept as it is.
+     */
+    private static final class Plain extends LazyText {
+        private final String mText;
+
+        Plain(String text) {
+            mText = text;
+        }
+
+        @Override
+        String read() {
+            return mText;
+        }
+
+        @Override
+        int estimateSize() {
+            return OVERHEAD + 2 * mText.length();
+        }
+    }
+
+    /**
+     * A long text that was already a String, kept compressed.
+     */
+    private static final class Deflated extends LazyText {
+        private final byte[] mPacked;
+
+        Deflated(String text) {
+            mPacked = CompactStrings.deflate(text);
+        }
+
+        @Override
+        String read() {
+            return CompactStrings.inflate(mPacked);
+        }
+
+        @Override
+        int estimateSize() {
+            return OVERHEAD + mPacked.length;
+        }
+    }
+
+    /**
+     * A JSON string value, kept as it was in the response.
+     */
+    private static final class Json extends LazyText {
+        private final byte[] mRaw;
+
+        Json(byte[] raw) {
+            mRaw = raw;
+        }
+
+        @Override
+        String read() {
+            return JsonStreamReader.decodeRawString(mRaw);
+        }
+
+        @Override
+        int estimateSize() {
+            return OVERHEAD + mRaw.length;
+        }
+    }
+
+    /**
+     * A UTF-8 text inside a larger array, such as a book saved by {@link BookCodec}.
+     */
+    private static final class Utf8 extends LazyText {
+        private final byte[] mData;
+        private final int mOffset;
+        private final int mLength;
+
+        Utf8(byte[] data, int offset, int length) {
+            mData = data;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        String read() {
+            try {
+                return new String(mData, mOffset, mLength, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // Every Java platform supports UTF-8.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        int estimateSize() {
+            // The whole array is kept, even though only part of it is the text.
+            return OVERHEAD + mData.length;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.talha.booksearch;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a response was read completely but isn't what the parser expects: it isn't valid
+ * JSON, or a book in it is missing a required field.
+ *
+ * It is told apart from the other IOExceptions of a request on purpose. Those mean the response
+ * was cut short, for example because the connection dropped, so the books read before them are
+ * not the whole answer and must not be cached or treated as the last page. A malformed response
+ * on the other hand is all the server is going to send, so the books before the bad one can be
+ * used.
+ */
+public class MalformedJsonException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MalformedJsonException(String message) {
+        super(message);
+    }
+}
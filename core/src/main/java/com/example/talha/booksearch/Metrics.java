@@ -0,0 +1,445 @@
+package com.example.talha.booksearch;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small registry of counters, gauges and histograms that records how long each stage of a
+ * search takes and how much it allocates, from the moment the loader is created until the first
+ * row is drawn. The app shows the numbers on its metrics screen, which can also write them to the
+ * log, and {@link #dumpToFile(File)} saves them to a file.
+ *
+ * Metrics are created once, usually in a static final field of the class that records them, and
+ * are looked up by name, so asking for the same name twice returns the same metric.
+ *
+ * Metrics are turned off unless the setting is on (see {@link #setEnabled(boolean)}). While they
+ * are off, recording only reads one volatile flag: {@link #startTimer()} doesn't even read the
+ * clock, and histograms don't allocate their buckets until the first value is recorded.
+ *
+ * All methods are thread-safe and can be called from any thread. Apart from creating a
+ * histogram's buckets the first time, recording never takes a lock.
+ */
+public final class Metrics {
+
+    /** Whether anything is recorded */
+    private static volatile boolean sEnabled;
+
+    /** Every metric that was created, sorted by name so the dump is easy to read */
+    private static final ConcurrentMap<String, Metric> sMetrics = new ConcurrentSkipListMap<>();
+
+    /** Objects that keep statistics of their own, which are added to the end of the dump */
+    private static final List<Object> sReports = new CopyOnWriteArrayList<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Turns recording on or off. Values recorded so far are kept either way.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * @return true if metrics are being recorded.
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return the counter with the given name, which is created if it doesn't exist yet.
+     */
+    public static Counter counter(String name) {
+        return (Counter) register(new Counter(name));
+    }
+
+    /**
+     * @return the gauge with the given name, which is created if it doesn't exist yet.
+     */
+    public static Gauge gauge(String name) {
+        return (Gauge) register(new Gauge(name));
+    }
+
+    /**
+     * @return the histogram of times with the given name, which is created if it doesn't exist
+     * yet. Times are recorded in microseconds and shown in milliseconds.
+     */
+    public static Histogram timer(String name) {
+        return (Histogram) register(new Histogram(name, true));
+    }
+
+    /**
+     * @return the histogram of sizes, such as a number of bytes, with the given name, which is
+     * created if it doesn't exist yet.
+     */
+    public static Histogram histogram(String name) {
+        return (Histogram) register(new Histogram(name, false));
+    }
+
+    private static Metric register(Metric metric) {
+        Metric existing = sMetrics.putIfAbsent(metric.name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (existing.getClass() != metric.getClass()) {
+            throw new IllegalArgumentException(metric.name + " is already a different metric");
+        }
+        return existing;
+    }
+
+    /**
+     * Adds an object that keeps statistics of its own, such as a cache, to the dump. The result
+     * of its toString() is added to the end of the dump every time it is made.
+     */
+    public static void addReport(Object report) {
+        sReports.add(report);
+    }
+
+    /**
+     * Starts timing a stage. Pass the result to {@link Histogram#recordSince(long)} once the
+     * stage is done.
+     *
+     * @return the current time in nanoseconds, or 0 if metrics are off, in which case the clock
+     * isn't read and nothing will be recorded.
+     */
+    public static long startTimer() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Forgets every value recorded so far. The metrics themselves are kept.
+     */
+    public static void reset() {
+        for (Metric metric : sMetrics.values()) {
+            metric.reset();
+        }
+    }
+
+    /**
+     * @return a table of every metric, one per line, followed by the statistics the network
+     * client keeps itself and those of every object added with {@link #addReport(Object)}.
+     */
+    public static String dump() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-28s %7s %9s %9s %9s %9s%n",
+                "histogram", "count", "p50", "p90", "p99", "max"));
+        for (Metric metric : sMetrics.values()) {
+            if (metric instanceof Histogram) {
+                metric.describe(builder);
+            }
+        }
+        builder.append(String.format(Locale.US, "%n%-28s %9s%n", "counter / gauge", "value"));
+        for (Metric metric : sMetrics.values()) {
+            if (!(metric instanceof Histogram)) {
+                metric.describe(builder);
+            }
+        }
+
+        builder.append(String.format(Locale.US, "%n%s%n", NetworkClient.getInstance()));
+        for (NetworkClient.TimeoutEstimate estimate
+                : NetworkClient.getInstance().getTimeoutEstimates()) {
+            builder.append(estimate).append('\n');
+        }
+        for (Object report : sReports) {
+            builder.append(String.format(Locale.US, "%n%s%n", report));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the table of every metric to a file in the given directory.
+     *
+     * @return the file that was written.
+     */
+    public static File dumpToFile(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File file = new File(directory, "metrics-" + System.currentTimeMillis() + ".txt");
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(dump());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Anything the registry keeps.
+     */
+    abstract static class Metric {
+        final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        /** Forgets every value recorded so far */
+        abstract void reset();
+
+        /** Adds one line describing the metric to the dump */
+        abstract void describe(StringBuilder builder);
+    }
+
+    /**
+     * Counts how often something happened, such as a cache hit.
+     */
+    public static final class Counter extends Metric {
+        private final AtomicLong mCount = new AtomicLong();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        /**
+         * Adds one to the count, if metrics are on.
+         */
+        public void increment() {
+            add(1);
+        }
+
+        /**
+         * Adds the given amount to the count, if metrics are on.
+         */
+        public void add(long amount) {
+            if (sEnabled) {
+                mCount.addAndGet(amount);
+            }
+        }
+
+        /**
+         * @return the count so far.
+         */
+        public long get() {
+            return mCount.get();
+        }
+
+        @Override
+        void reset() {
+            mCount.set(0);
+        }
+
+        @Override
+        void describe(StringBuilder builder) {
+            builder.append(String.format(Locale.US, "%-28s %9d%n", name, get()));
+        }
+    }
+
+    /**
+     * Remembers the latest value of something, such as how much of the heap is used.
+     */
+    public static final class Gauge extends Metric {
+        private final AtomicLong mValue = new AtomicLong();
+
+        Gauge(String name) {
+            super(name);
+        }
+
+        /**
+         * Sets the value, if metrics are on.
+         */
+        public void set(long value) {
+            if (sEnabled) {
+                mValue.set(value);
+            }
+        }
+
+        /**
+         * @return the latest value.
+         */
+        public long get() {
+            return mValue.get();
+        }
+
+        @Override
+        void reset() {
+            mValue.set(0);
+        }
+
+        @Override
+        void describe(StringBuilder builder) {
+            builder.append(String.format(Locale.US, "%-28s %9d%n", name, get()));
+        }
+    }
+
+    /**
+     * Counts values, such as how long a stage took, so their percentiles can be worked out.
+     *
+     * Like an HDR histogram, values below {@link #SUB_BUCKETS} each get their own bucket, and
+     * every power of two above that is split into {@link #SUB_BUCKETS} equal buckets. A
+     * percentile is therefore never off by more than one part in {@link #SUB_BUCKETS}, whether
+     * it is a few microseconds or a few minutes, and recording a value is one atomic increment
+     * without any searching or locking. Values up to 2^40 are kept apart, which is about 12 days
+     * in microseconds or a terabyte in bytes; larger ones go in the last bucket.
+     */
+    public static final class Histogram extends Metric {
+
+        /** log2 of {@link #SUB_BUCKETS} */
+        private static final int SUB_BUCKET_BITS = 4;
+
+        /** How many buckets each power of two is split into */
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        /** The largest value that gets its own bucket */
+        private static final long MAX_VALUE = (1L << 40) - 1;
+
+        /** How many buckets there are */
+        private static final int BUCKET_COUNT = bucketOf(MAX_VALUE) + 1;
+
+        /** Whether the values are times in microseconds, which are shown in milliseconds */
+        private final boolean mTime;
+
+        /** How many values are in each bucket, created when the first value is recorded */
+        private volatile AtomicLongArray mBuckets;
+
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        Histogram(String name, boolean time) {
+            super(name);
+            mTime = time;
+        }
+
+        /**
+         * Records how long a stage took, if metrics are on.
+         *
+         * @param startNanos is what {@link Metrics#startTimer()} returned when the stage started.
+         *                   Nothing is recorded if it is 0, which means metrics were off then.
+         */
+        public void recordSince(long startNanos) {
+            if (startNanos != 0) {
+                record((System.nanoTime() - startNanos) / 1000);
+            }
+        }
+
+        /**
+         * Records a value, if metrics are on. Negative values count as 0.
+         */
+        public void record(long value) {
+            if (!sEnabled) {
+                return;
+            }
+            value = Math.max(0, Math.min(value, MAX_VALUE));
+            getBuckets().incrementAndGet(bucketOf(value));
+            mCount.incrementAndGet();
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value)) {
+                max = mMax.get();
+            }
+        }
+
+        private AtomicLongArray getBuckets() {
+            AtomicLongArray buckets = mBuckets;
+            if (buckets == null) {
+                synchronized (this) {
+                    buckets = mBuckets;
+                    if (buckets == null) {
+                        buckets = new AtomicLongArray(BUCKET_COUNT);
+                        mBuckets = buckets;
+                    }
+                }
+            }
+            return buckets;
+        }
+
+        /**
+         * @return how many values have been recorded.
+         */
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * @return the largest value recorded.
+         */
+        public long getMax() {
+            return mMax.get();
+        }
+
+        /**
+         * @param percentile is a number between 0 and 1, such as 0.99 for the 99th percentile.
+         * @return a value that at least the given share of the values were no larger than, or 0
+         * if nothing has been recorded. This is the largest value in the bucket the percentile
+         * falls in, so it is never below the exact percentile.
+         */
+        public long getPercentile(double percentile) {
+            AtomicLongArray buckets = mBuckets;
+            long count = mCount.get();
+            if (buckets == null || count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return Math.min(highestValueIn(i), mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        /**
+         * @return the bucket the given value, between 0 and {@link #MAX_VALUE}, goes in.
+         */
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * @return the largest value that goes in the given bucket.
+         */
+        private static long highestValueIn(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+            int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+
+        @Override
+        void reset() {
+            // Values recorded while this runs may be lost, which is fine for a debugging tool.
+            AtomicLongArray buckets = mBuckets;
+            if (buckets != null) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    buckets.set(i, 0);
+                }
+            }
+            mCount.set(0);
+            mMax.set(0);
+        }
+
+        @Override
+        void describe(StringBuilder builder) {
+            builder.append(String.format(Locale.US, "%-28s %7d %9s %9s %9s %9s%n",
+                    name + (mTime ? " (ms)" : ""), getCount(),
+                    format(getPercentile(0.5)), format(getPercentile(0.9)),
+                    format(getPercentile(0.99)), format(getMax())));
+        }
+
+        private String format(long value) {
+            return mTime ? String.format(Locale.US, "%.1f", value / 1000.0)
+                    : String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,775 @@
+package com.example.talha.booksearch;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A single HTTP client that is shared by every network request in the app, both the Google Books
+ * API calls and the book cover downloads.
+ *
+ * {@link HttpURLConnection} already keeps a pool of open connections for each host, but a
+ * connection only goes back into the pool if its response has been read to the end and it is
+ * not disconnected. This client makes sure that happens, so later requests to the same host
+ * reuse the open socket instead of connecting again. All HTTPS connections also share one
+ * {@link SSLSocketFactory}, so when a new connection is needed its TLS session can be resumed
+ * instead of paying for a full handshake.
+ *
+ * HttpURLConnection only speaks HTTP/1.1, so requests are not multiplexed over HTTP/2.
+ *
+ * Requests that fail, or are answered with 429 or a 5xx error, are retried, and requests that
+ * take unusually long are hedged with a second copy, as the {@link RequestPolicy} says. Every
+ * request this client makes is a GET, so sending it more than once is safe.
+ *
+ * The connect and read timeouts aren't fixed, but follow how long requests to the same host, on
+ * the same type of network, have recently taken, as the {@link TimeoutPolicy} says. The current
+ * estimates can be seen with {@link #getTimeoutEstimates()}.
+ */
+public final class NetworkClient {
+
+    /** Size of the buffer used to decompress gzip responses */
+    private static final int GZIP_BUFFER_SIZE = 4096;
+
+    /**
+     * The most bytes we're willing to read from an unfinished response just so its connection can
+     * be reused. If there is more left than this, it's cheaper to close the connection.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /** Number of TLS sessions remembered for resumption, and for how long */
+    private static final int TLS_SESSION_CACHE_SIZE = 16;
+    private static final int TLS_SESSION_TIMEOUT_SECONDS = 60 * 60;
+
+    /**
+     * How many requests must have been made to a host before its response times are trusted to
+     * decide when to hedge. Until then, requests wait for the longest hedge delay.
+     */
+    private static final int MIN_HEDGE_SAMPLES = 10;
+
+    /**
+     * Metrics for each attempt: how long opening the connection took (including the DNS lookup
+     * and the TLS handshake), how long the server then took to start responding, and how many
+     * attempts failed. See {@link Metrics}.
+     */
+    private static final Metrics.Histogram sConnectTimer = Metrics.timer("http.connect");
+    private static final Metrics.Histogram sWaitTimer = Metrics.timer("http.wait");
+    private static final Metrics.Counter sFailedAttempts = Metrics.counter("http.failed_attempts");
+
+    /** The client shared by the whole app */
+    private static NetworkClient sInstance;
+
+    /** Socket factory shared by every HTTPS connection, so TLS sessions can be resumed */
+    private final SSLSocketFactory mSocketFactory;
+
+    /** How hard requests are tried */
+    private volatile RequestPolicy mPolicy = RequestPolicy.DEFAULT;
+
+    /** How the timeouts are worked out */
+    private volatile TimeoutPolicy mTimeoutPolicy = TimeoutPolicy.DEFAULT;
+
+    /** The type of network the device is on, such as "WIFI" or "MOBILE/LTE" */
+    private volatile String mNetworkType = "UNKNOWN";
+
+    /** Recent response times, by host and type of network */
+    private final ConcurrentMap<String, Endpoint> mEndpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Runs both copies of a request that may be hedged, so the caller can wait for either one.
+     * The threads are daemons, so an idle one doesn't keep a command line tool from exiting.
+     */
+    private final ExecutorService mHedgeExecutor = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "NetworkClient-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** Adds jitter to the backoff between retries */
+    private final Random mRandom = new Random();
+
+    /** Statistics, for the logs */
+    private final AtomicInteger mAttemptCount = new AtomicInteger();
+    private final AtomicInteger mRetryCount = new AtomicInteger();
+    private final AtomicInteger mHedgeCount = new AtomicInteger();
+    private final AtomicInteger mHedgeWinCount = new AtomicInteger();
+    private final AtomicInteger mTimeoutCount = new AtomicInteger();
+
+    /**
+     * @return the client shared by the whole app.
+     */
+    public static synchronized NetworkClient getInstance() {
+        if (sInstance == null) {
+            sInstance = new NetworkClient();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Creates a client of its own, rather than the one shared by the app, such as one for a
+     * command line tool or one that tries out a policy against a stand-in server.
+     */
+    public static NetworkClient create(RequestPolicy policy) {
+        NetworkClient client = new NetworkClient();
+        client.setPolicy(policy);
+        return client;
+    }
+
+    private NetworkClient() {
+        SSLSocketFactory socketFactory;
+        try {
+            SSLContext sslContext = SSLContext.getDefault();
+            SSLSessionContext sessions = sslContext.getClientSessionContext();
+            sessions.setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+            sessions.setSessionTimeout(TLS_SESSION_TIMEOUT_SECONDS);
+            socketFactory = sslContext.getSocketFactory();
+        } catch (NoSuchAlgorithmException e) {
+            // Fall back to whatever factory the platform uses by default.
+            socketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        mSocketFactory = socketFactory;
+    }
+
+    /**
+     * Makes a GET request to the given URL and waits for the response headers.
+     *
+     * The returned {@link Response} must always be closed, which hands its connection back to the
+     * pool so the next request to the same host can reuse it.
+     *
+     * @param url is the URL to request.
+     * @return the response, whatever its response code is.
+     */
+    public Response get(URL url) throws IOException {
+        return get(url, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Changes how hard requests are tried from now on.
+     */
+    public void setPolicy(RequestPolicy policy) {
+        mPolicy = policy;
+    }
+
+    /**
+     * Changes how timeouts are worked out from now on.
+     */
+    public void setTimeoutPolicy(TimeoutPolicy policy) {
+        mTimeoutPolicy = policy;
+    }
+
+    /**
+     * Tells the client which type of network the device is on now, so response times on
+     * different networks are kept apart.
+     *
+     * @param networkType is a name for the network, such as "WIFI" or "MOBILE/LTE".
+     */
+    public void setNetworkType(String networkType) {
+        mNetworkType = networkType;
+    }
+
+    /**
+     * @return what the client has learned about every host on every type of network: recent
+     * response times, and the timeouts that are used because of them. For debugging.
+     */
+    public List<TimeoutEstimate> getTimeoutEstimates() {
+        TimeoutPolicy policy = mTimeoutPolicy;
+        List<TimeoutEstimate> estimates = new ArrayList<>();
+        for (Endpoint endpoint : mEndpoints.values()) {
+            estimates.add(new TimeoutEstimate(endpoint, policy));
+        }
+        return estimates;
+    }
+
+    /**
+     * Makes a GET request to the given URL with extra request headers, such as If-None-Match.
+     *
+     * Failed requests are retried and slow ones hedged, as the {@link RequestPolicy} says. If
+     * every attempt fails, the error of the last one is thrown, or the last error response is
+     * returned.
+     *
+     * @param url     is the URL to request.
+     * @param headers are the extra headers to send.
+     * @return the response, whatever its response code is.
+     */
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        RequestPolicy policy = mPolicy;
+        for (int attempt = 1; ; attempt++) {
+            Response response;
+            try {
+                response = getHedged(url, headers, policy);
+            } catch (IOException e) {
+                if (attempt >= policy.maxAttempts || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                mRetryCount.incrementAndGet();
+                sleep(policy.backoffMillis(attempt, mRandom));
+                continue;
+            }
+
+            if (attempt >= policy.maxAttempts || !RequestPolicy.isRetryable(response.getCode())) {
+                return response;
+            }
+            long delay = getRetryAfterMillis(response);
+            if (delay < 0) {
+                delay = policy.backoffMillis(attempt, mRandom);
+            } else if (delay > policy.maxRetryAfterMillis) {
+                // The server wants us to wait longer than the user would, so give up now.
+                return response;
+            }
+            response.close();
+            mRetryCount.incrementAndGet();
+            sleep(delay);
+        }
+    }
+
+    /**
+     * Makes one attempt at a request, hedging it with a second copy if it is slow.
+     */
+    private Response getHedged(URL url, Map<String, String> headers, RequestPolicy policy)
+            throws IOException {
+        if (!policy.isHedging()) {
+            return getOnce(url, headers);
+        }
+
+        Race race = new Race(url, headers);
+        race.start(false);
+        Response response = race.await(getHedgeDelayMillis(url.getHost(), policy));
+        if (response == null) {
+            // The first copy is slower than most requests to this host, so send another one.
+            mHedgeCount.incrementAndGet();
+            race.start(true);
+            response = race.await(-1);
+        }
+        return response;
+    }
+
+    /**
+     * @return how long a request to the given host may take before it is hedged.
+     */
+    private long getHedgeDelayMillis(String host, RequestPolicy policy) {
+        LatencyTracker firstByteTimes = getEndpoint(host).firstByteTimes;
+        if (firstByteTimes.getCount() < MIN_HEDGE_SAMPLES) {
+            return policy.maxHedgeDelayMillis;
+        }
+        long delay = firstByteTimes.getPercentile(policy.hedgePercentile);
+        return Math.max(policy.minHedgeDelayMillis, Math.min(delay, policy.maxHedgeDelayMillis));
+    }
+
+    /**
+     * @return how long the server asked us to wait with a Retry-After header, or -1 if it didn't.
+     * The header holds either a number of seconds or an HTTP date.
+     */
+    private static long getRetryAfterMillis(Response response) {
+        String retryAfter = response.getHeader("Retry-After");
+        if (retryAfter == null) {
+            return -1;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(retryAfter) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date.
+        }
+        SimpleDateFormat httpDate =
+                new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = httpDate.parse(retryAfter);
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Waits between attempts. The wait ends early if the thread is interrupted, for example
+     * because the request is no longer needed.
+     */
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * @return the number of attempts, retries and hedged requests so far, for the logs.
+     */
+    @Override
+    public String toString() {
+        return "NetworkClient[attempts=" + mAttemptCount.get()
+                + ", retries=" + mRetryCount.get()
+                + ", hedged=" + mHedgeCount.get()
+                + ", hedgesWon=" + mHedgeWinCount.get()
+                + ", timeouts=" + mTimeoutCount.get() + "]";
+    }
+
+    /**
+     * Makes a single attempt at a request, without retrying or hedging it.
+     */
+    private Response getOnce(URL url, Map<String, String> headers) throws IOException {
+        mAttemptCount.incrementAndGet();
+        long startTime = System.nanoTime();
+        Endpoint endpoint = getEndpoint(url.getHost());
+        TimeoutPolicy timeoutPolicy = mTimeoutPolicy;
+
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        if (urlConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) urlConnection).setSSLSocketFactory(mSocketFactory);
+        }
+        urlConnection.setRequestMethod("GET");
+        urlConnection.setConnectTimeout(
+                timeoutPolicy.getConnectTimeoutMillis(endpoint.connectTimes));
+        urlConnection.setReadTimeout(timeoutPolicy.getReadTimeoutMillis(endpoint.waitTimes));
+
+        // Ask for a compressed response. Because we set the header ourselves, the response is not
+        // decompressed for us, so the Response does that.
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            urlConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        long connectedTime = -1;
+        try {
+            urlConnection.connect();
+            connectedTime = System.nanoTime();
+            // Asking for the response code waits until the first byte of the response arrives.
+            int responseCode = urlConnection.getResponseCode();
+            long doneTime = System.nanoTime();
+            long timeToFirstByte = (doneTime - startTime) / 1000000;
+            sConnectTimer.record((connectedTime - startTime) / 1000);
+            sWaitTimer.record((doneTime - connectedTime) / 1000);
+            endpoint.recordConnect((connectedTime - startTime) / 1000000);
+            endpoint.waitTimes.record((doneTime - connectedTime) / 1000000);
+            endpoint.firstByteTimes.record(timeToFirstByte);
+            return new Response(urlConnection, responseCode, timeToFirstByte);
+        } catch (IOException e) {
+            // A request that failed, such as one that timed out, took at least this long, which
+            // the timeouts and the hedge delay should know.
+            long failedTime = System.nanoTime();
+            sFailedAttempts.increment();
+            if (connectedTime < 0) {
+                endpoint.recordConnect((failedTime - startTime) / 1000000);
+            } else {
+                endpoint.waitTimes.record((failedTime - connectedTime) / 1000000);
+            }
+            endpoint.firstByteTimes.record((failedTime - startTime) / 1000000);
+            if (e instanceof SocketTimeoutException) {
+                mTimeoutCount.incrementAndGet();
+            }
+            // The connection is in an unknown state, so make sure it isn't reused.
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the response times of the given host on the current type of network.
+     */
+    private Endpoint getEndpoint(String host) {
+        String networkType = mNetworkType;
+        String key = host + '|' + networkType;
+        Endpoint endpoint = mEndpoints.get(key);
+        if (endpoint == null) {
+            Endpoint newEndpoint = new Endpoint(host, networkType);
+            endpoint = mEndpoints.putIfAbsent(key, newEndpoint);
+            if (endpoint == null) {
+                endpoint = newEndpoint;
+            }
+        }
+        return endpoint;
+    }
+
+    /**
+     * The recent response times of one host, on one type of network.
+     */
+    private static final class Endpoint {
+        final String host;
+        final String networkType;
+
+        /** How long it took to open a new connection */
+        final LatencyTracker connectTimes = new LatencyTracker();
+
+        /** How long the server took to start responding once the connection was open */
+        final LatencyTracker waitTimes = new LatencyTracker();
+
+        /** How long it took from starting a request to the first byte of the response */
+        final LatencyTracker firstByteTimes = new LatencyTracker();
+
+        Endpoint(String host, String networkType) {
+            this.host = host;
+            this.networkType = networkType;
+        }
+
+        /**
+         * Records how long connect() took. A connection that was reused from the pool takes no
+         * time at all, and would make a new connection look much faster than it is, so it isn't
+         * counted.
+         */
+        void recordConnect(long millis) {
+            if (millis > 0) {
+                connectTimes.record(millis);
+            }
+        }
+    }
+
+    /**
+     * What the client has learned about one host on one type of network, at the moment it was
+     * asked for. See {@link #getTimeoutEstimates()}.
+     */
+    public static final class TimeoutEstimate {
+        private final String mHost;
+        private final String mNetworkType;
+        private final int mSampleCount;
+        private final long mConnectMedian;
+        private final long mConnectPercentile;
+        private final int mConnectTimeout;
+        private final long mWaitMedian;
+        private final long mWaitPercentile;
+        private final int mReadTimeout;
+        private final double mPercentile;
+
+        TimeoutEstimate(Endpoint endpoint, TimeoutPolicy policy) {
+            mHost = endpoint.host;
+            mNetworkType = endpoint.networkType;
+            mSampleCount = endpoint.waitTimes.getCount();
+            mPercentile = policy.percentile;
+            mConnectMedian = endpoint.connectTimes.getPercentile(0.5);
+            mConnectPercentile = endpoint.connectTimes.getPercentile(policy.percentile);
+            mConnectTimeout = policy.getConnectTimeoutMillis(endpoint.connectTimes);
+            mWaitMedian = endpoint.waitTimes.getPercentile(0.5);
+            mWaitPercentile = endpoint.waitTimes.getPercentile(policy.percentile);
+            mReadTimeout = policy.getReadTimeoutMillis(endpoint.waitTimes);
+        }
+
+        public String getHost() {
+            return mHost;
+        }
+
+        public String getNetworkType() {
+            return mNetworkType;
+        }
+
+        /**
+         * @return roughly how many recent requests the estimate is based on.
+         */
+        public int getSampleCount() {
+            return mSampleCount;
+        }
+
+        /**
+         * @return the connect timeout that is used, in milliseconds.
+         */
+        public int getConnectTimeoutMillis() {
+            return mConnectTimeout;
+        }
+
+        /**
+         * @return the read timeout that is used, in milliseconds.
+         */
+        public int getReadTimeoutMillis() {
+            return mReadTimeout;
+        }
+
+        /**
+         * @return the estimate on one line, with times in milliseconds, for the logs or a debug
+         * screen. A time of -1 means nothing has been recorded yet.
+         */
+        @Override
+        public String toString() {
+            String percentile = "p" + Math.round(mPercentile * 100);
+            return mHost + " on " + mNetworkType + " (" + mSampleCount + " samples): "
+                    + "connect p50=" + mConnectMedian + " " + percentile + "=" + mConnectPercentile
+                    + " timeout=" + mConnectTimeout
+                    + ", wait p50=" + mWaitMedian + " " + percentile + "=" + mWaitPercentile
+                    + " timeout=" + mReadTimeout;
+        }
+    }
+
+    /**
+     * Runs one or two copies of the same request on {@link #mHedgeExecutor}, and hands the first
+     * response to arrive to the waiting thread. A response that arrives after that is closed, so
+     * its connection goes back into the pool.
+     */
+    private final class Race {
+        private final URL mUrl;
+        private final Map<String, String> mHeaders;
+
+        /** The responses, or the IOExceptions of the copies that failed */
+        private final BlockingQueue<Object> mResults = new LinkedBlockingQueue<>();
+
+        /** Set once a response has been handed over, or the waiting thread has given up */
+        private final AtomicBoolean mDecided = new AtomicBoolean();
+
+        /** How many copies haven't failed. Only used by the waiting thread. */
+        private int mRunning;
+
+        Race(URL url, Map<String, String> headers) {
+            mUrl = url;
+            mHeaders = headers;
+        }
+
+        /**
+         * Starts another copy of the request.
+         *
+         * @param hedge is whether this is the hedged copy, for the statistics.
+         */
+        void start(final boolean hedge) {
+            mRunning++;
+            mHedgeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Response response = getOnce(mUrl, mHeaders);
+                        if (mDecided.compareAndSet(false, true)) {
+                            if (hedge) {
+                                mHedgeWinCount.incrementAndGet();
+                            }
+                            mResults.add(response);
+                        } else {
+                            response.close();
+                        }
+                    } catch (IOException e) {
+                        mResults.add(e);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Waits for the first response.
+         *
+         * @param timeoutMillis is how long to wait, or -1 to wait until every copy has finished.
+         * @return the response, or null if there was none within the timeout.
+         * @throws IOException if every copy failed, or the thread was interrupted.
+         */
+        Response await(long timeoutMillis) throws IOException {
+            try {
+                while (true) {
+                    Object result = timeoutMillis >= 0
+                            ? mResults.poll(timeoutMillis, TimeUnit.MILLISECONDS)
+                            : mResults.take();
+                    if (result == null) {
+                        return null;
+                    }
+                    if (result instanceof Response) {
+                        return (Response) result;
+                    }
+                    // A copy failed. Keep waiting if the other one is still running.
+                    mRunning--;
+                    if (mRunning == 0) {
+                        throw (IOException) result;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Nobody will read a response that arrives from now on, so make sure it's closed.
+                mDecided.set(true);
+                Object result;
+                while ((result = mResults.poll()) != null) {
+                    if (result instanceof Response) {
+                        ((Response) result).close();
+                    }
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a response");
+            }
+        }
+    }
+
+    /**
+     * The response to a request made with {@link #get(URL)}.
+     */
+    public static class Response implements Closeable {
+
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mTimeToFirstByte;
+
+        /** Counts the bytes that arrive over the network, before any decompression */
+        private CountingInputStream mWireStream;
+
+        /** Counts the bytes of the body after decompression */
+        private CountingInputStream mBodyStream;
+
+        /** The body handed out by {@link #getBody()}. Closing it closes the whole response. */
+        private InputStream mBody;
+
+        private boolean mClosed;
+
+        Response(HttpURLConnection connection, int code, long timeToFirstByte) {
+            mConnection = connection;
+            mCode = code;
+            mTimeToFirstByte = timeToFirstByte;
+        }
+
+        /**
+         * @return the HTTP response code, such as 200.
+         */
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * @return the value of the given response header, or null if there isn't one.
+         */
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * @return the number of milliseconds between starting the request and receiving the first
+         * byte of the response.
+         */
+        public long getTimeToFirstByte() {
+            return mTimeToFirstByte;
+        }
+
+        /**
+         * @return the length of the response body as it was sent over the network, or -1 if the
+         * server didn't say.
+         */
+        public long getContentLength() {
+            String length = mConnection.getHeaderField("Content-Length");
+            try {
+                return length != null ? Long.parseLong(length) : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * @return the decompressed response body. For unsuccessful responses this is the error body.
+         * Closing the body is the same as closing the whole response.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                InputStream inputStream = mCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getErrorStream() : mConnection.getInputStream();
+                if (inputStream == null) {
+                    throw new IOException("Response has no body");
+                }
+                mWireStream = new CountingInputStream(inputStream);
+                inputStream = mWireStream;
+                if ("gzip".equalsIgnoreCase(mConnection.getContentEncoding())) {
+                    inputStream = new GZIPInputStream(inputStream, GZIP_BUFFER_SIZE);
+                }
+                mBodyStream = new CountingInputStream(inputStream);
+                mBody = new FilterInputStream(mBodyStream) {
+                    @Override
+                    public void close() {
+                        Response.this.close();
+                    }
+                };
+            }
+            return mBody;
+        }
+
+        /**
+         * @return the number of bytes of the body that came over the network so far.
+         */
+        public long getWireBytes() {
+            return mWireStream != null ? mWireStream.getCount() : 0;
+        }
+
+        /**
+         * @return the number of bytes of the body that were read after decompression so far.
+         */
+        public long getBodyBytes() {
+            return mBodyStream != null ? mBodyStream.getCount() : 0;
+        }
+
+        /**
+         * Finishes with the response. Whatever is left of the body is read, so the connection can
+         * go back into the pool. If too much is left, the connection is closed instead.
+         */
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            InputStream wireStream = mWireStream;
+            try {
+                if (wireStream == null) {
+                    wireStream = mCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                            ? mConnection.getErrorStream() : mConnection.getInputStream();
+                }
+                if (wireStream != null) {
+                    if (drain(wireStream)) {
+                        wireStream.close();
+                        return;
+                    }
+                    wireStream.close();
+                }
+            } catch (IOException e) {
+                // Fall through and close the connection, since it can't be reused.
+            }
+            mConnection.disconnect();
+        }
+
+        /**
+         * Reads the rest of the stream, up to {@link #MAX_DRAIN_BYTES}.
+         *
+         * @return true if the end of the stream was reached.
+         */
+        private static boolean drain(InputStream inputStream) throws IOException {
+            byte[] buffer = BufferPool.acquireBytes();
+            try {
+                int total = 0;
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    total += count;
+                    if (total > MAX_DRAIN_BYTES) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                BufferPool.releaseBytes(buffer);
+            }
+        }
+    }
+}
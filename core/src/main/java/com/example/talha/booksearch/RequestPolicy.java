@@ -0,0 +1,119 @@
+package com.example.talha.booksearch;
+
+import java.util.Random;
+
+/**
+ * Decides how hard the {@link NetworkClient} tries to get a response: how often a failed request
+ * is retried, how long it waits in between, and when a second, hedged copy of a slow request is
+ * sent.
+ *
+ * A request is retried if it fails with an IOException (such as a timeout), or if the server
+ * answers 429 Too Many Requests or a 5xx error. Between attempts the client waits for an
+ * exponential backoff with full jitter: a random time between zero and
+ * {@code baseBackoffMillis * 2^(retry - 1)}, capped at {@code maxBackoffMillis}. The jitter keeps
+ * many clients that failed at the same moment from all retrying at the same moment too. If the
+ * server sends a Retry-After header, that is waited for instead, unless it is longer than
+ * {@code maxRetryAfterMillis}, in which case the error is returned straight away.
+ *
+ * A request is hedged if its response hasn't started to arrive once it has taken longer than the
+ * given percentile of recent requests to the same host. The first of the two responses is used,
+ * and the other is closed. Only a few percent of requests are hedged, so this costs little extra
+ * traffic, but it takes the slowest requests out of the tail.
+ *
+ * Policies never change once they have been created, so they can be shared between threads.
+ */
+public final class RequestPolicy {
+
+    /** The policy the app uses */
+    public static final RequestPolicy DEFAULT = new RequestPolicy(3, 250, 4000, 10000,
+            0.95, 150, 3000);
+
+    /** Makes one attempt and never hedges, which is how the app used to make requests */
+    public static final RequestPolicy SINGLE_ATTEMPT = new RequestPolicy(1, 0, 0, 0, 0, 0, 0);
+
+    /** HTTP 429 Too Many Requests, which HttpURLConnection has no constant for */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /** The most attempts made for one request, including the first one */
+    final int maxAttempts;
+
+    /** The backoff before the first retry, which doubles for every retry after it */
+    final long baseBackoffMillis;
+
+    /** The longest backoff, however many retries there have been */
+    final long maxBackoffMillis;
+
+    /** The longest Retry-After the client will wait for */
+    final long maxRetryAfterMillis;
+
+    /** The percentile of recent response times after which a request is hedged, or 0 for never */
+    final double hedgePercentile;
+
+    /** Limits on how long a request waits before it is hedged */
+    final long minHedgeDelayMillis;
+    final long maxHedgeDelayMillis;
+
+    /**
+     * Creates a new RequestPolicy.
+     *
+     * @param maxAttempts         is the most attempts made for one request, at least 1.
+     * @param baseBackoffMillis   is the backoff before the first retry.
+     * @param maxBackoffMillis    is the longest backoff.
+     * @param maxRetryAfterMillis is the longest Retry-After that is waited for.
+     * @param hedgePercentile     is the percentile, between 0 and 1, of recent response times
+     *                            after which a request is hedged, or 0 to never hedge.
+     * @param minHedgeDelayMillis is the shortest time a request waits before it is hedged.
+     * @param maxHedgeDelayMillis is the longest time a request waits before it is hedged. This is
+     *                            also used until enough requests have been made to the host.
+     */
+    public RequestPolicy(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis,
+                         long maxRetryAfterMillis, double hedgePercentile,
+                         long minHedgeDelayMillis, long maxHedgeDelayMillis) {
+        if (maxAttempts < 1 || hedgePercentile < 0 || hedgePercentile >= 1) {
+            throw new IllegalArgumentException("Invalid request policy");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+        this.maxHedgeDelayMillis = maxHedgeDelayMillis;
+    }
+
+    /**
+     * @return true if slow requests are hedged.
+     */
+    boolean isHedging() {
+        return hedgePercentile > 0;
+    }
+
+    /**
+     * @return true if a response with the given code is worth retrying.
+     */
+    static boolean isRetryable(int responseCode) {
+        return responseCode == HTTP_TOO_MANY_REQUESTS || responseCode >= 500;
+    }
+
+    /**
+     * @return how long to wait before the given retry (1 for the first one), with jitter.
+     */
+    long backoffMillis(int retry, Random random) {
+        // Stop doubling before the shift overflows; the cap is reached long before then anyway.
+        long backoff = baseBackoffMillis << Math.min(retry - 1, 20);
+        backoff = Math.min(backoff, maxBackoffMillis);
+        return backoff > 0 ? (long) (random.nextDouble() * backoff) : 0;
+    }
+
+    /**
+     * @return a description of the policy, for the logs.
+     */
+    @Override
+    public String toString() {
+        return "RequestPolicy[maxAttempts=" + maxAttempts
+                + ", backoff=" + baseBackoffMillis + ".." + maxBackoffMillis + " ms"
+                + ", maxRetryAfter=" + maxRetryAfterMillis + " ms"
+                + ", hedge=" + (isHedging() ? "p" + Math.round(hedgePercentile * 100) + " ("
+                + minHedgeDelayMillis + ".." + maxHedgeDelayMillis + " ms)" : "off") + "]";
+    }
+}
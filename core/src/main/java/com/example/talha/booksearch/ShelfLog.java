@@ -0,0 +1,448 @@
+package com.example.talha.booksearch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The append-only log file that keeps the user's shelf of saved books. It only uses plain Java,
+ * so it can be benchmarked on a desktop JVM; the app uses it through its BookShelf, which adds
+ * logging, locking and a shared instance.
+ *
+ * Every change is a record added to the end of the file:
+ * <pre>
+ *     int    length of the body
+ *     int    CRC32 of the body
+ *     body:
+ *       byte   PUT or DELETE
+ *       short  length of the key, followed by the key as UTF-8
+ *       ...    for PUT, the book encoded with {@link BookCodec}
+ * </pre>
+ * The file is memory-mapped for reading. Opening the log only reads the small header of each
+ * record to build an index of where every book starts; the books themselves are decoded one at
+ * a time, when they are asked for. Appends are synced to disk before they count, and a record
+ * that was cut short by a crash is dropped the next time the log is opened.
+ *
+ * Deleted and replaced books leave dead records behind, so the file can be compacted (rewritten
+ * with only the live records) once the dead records take up more space than the live ones.
+ *
+ * A ShelfLog is not thread safe.
+ */
+public final class ShelfLog {
+
+    /** Marks the start of the file, followed by the version of its format */
+    private static final int MAGIC = 0x42535346;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+
+    /** Size of the length and CRC in front of every record */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** Types of record */
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /** The file isn't compacted until there are at least this many dead bytes */
+    private static final int MIN_COMPACTION_BYTES = 16 * 1024;
+
+    /** The log file */
+    private final File mFile;
+
+    /** Where every saved book's record starts, in the order the books were saved */
+    private final List<Record> mRecords = new ArrayList<>();
+    private final Map<String, Record> mRecordsByKey = new HashMap<>();
+
+    /** The file, mapped into memory for reading */
+    private MappedByteBuffer mBuffer;
+
+    /** Where the next record is appended, and the number of bytes taken up by dead records */
+    private int mEnd;
+    private int mDeadBytes;
+
+    /**
+     * Creates a log for the given file. Nothing is read until {@link #open()} is called.
+     */
+    public ShelfLog(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the index of the log, creating the file if it doesn't exist. Only the type and key of
+     * every record are read; the CRC is only checked for the last record, since that is the one
+     * a crash could have cut short, and a damaged last record is dropped. The other records are
+     * checked when they are decoded.
+     *
+     * Only a file that isn't a shelf at all, or is of an older version, is replaced with an
+     * empty one. If the file can't be read for any other reason, it is left as it is and an
+     * IOException is thrown; nothing must be written until opening it has succeeded.
+     *
+     * @return false if the file wasn't a shelf, or was of an older version, and was replaced.
+     */
+    public boolean open() throws IOException {
+        mRecords.clear();
+        mRecordsByKey.clear();
+        mBuffer = null;
+        mEnd = 0;
+        mDeadBytes = 0;
+
+        if (!mFile.exists() || mFile.length() < FILE_HEADER_SIZE) {
+            createEmptyFile();
+        }
+        map();
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            createEmptyFile();
+            map();
+            return false;
+        }
+        readRecords();
+        return true;
+    }
+
+    /**
+     * @return the number of books in the log.
+     */
+    public int size() {
+        return mRecords.size();
+    }
+
+    /**
+     * @return true if there is a book with the given key, see {@link Book#getKey()}.
+     */
+    public boolean contains(String key) {
+        return mRecordsByKey.containsKey(key);
+    }
+
+    /**
+     * @return the key of the book at the given position, which can be read even if the book
+     * itself is damaged.
+     */
+    public String getKey(int position) {
+        return mRecords.get(position).mKey;
+    }
+
+    /**
+     * Decodes the book at the given position. Books are decoded every time they are asked for,
+     * so only the books that are needed are ever held in memory.
+     *
+     * @throws IOException if the record is damaged.
+     */
+    public Book get(int position) throws IOException {
+        return BookCodec.decode(readBody(mRecords.get(position), true));
+    }
+
+    /**
+     * Finds a book by its key.
+     *
+     * @return the book, or null if it isn't in the log.
+     * @throws IOException if the record is damaged.
+     */
+    public Book get(String key) throws IOException {
+        Record record = mRecordsByKey.get(key);
+        return record != null ? BookCodec.decode(readBody(record, true)) : null;
+    }
+
+    /**
+     * Saves a book, replacing it if it's already there, and waits until it is on disk.
+     */
+    public void put(Book book) throws IOException {
+        String key = book.getKey();
+        Record record = append(PUT, key, BookCodec.encode(book));
+
+        Record oldRecord = mRecordsByKey.put(key, record);
+        if (oldRecord != null) {
+            // Keep the book in the place it was saved in.
+            mRecords.set(mRecords.indexOf(oldRecord), record);
+            mDeadBytes += oldRecord.mSize;
+        } else {
+            mRecords.add(record);
+        }
+    }
+
+    /**
+     * Removes the book with the given key, and waits until that is on disk.
+     *
+     * @return false if there was no such book.
+     */
+    public boolean remove(String key) throws IOException {
+        Record oldRecord = mRecordsByKey.get(key);
+        if (oldRecord == null) {
+            return false;
+        }
+        Record deleteRecord = append(DELETE, key, new byte[0]);
+        mRecordsByKey.remove(key);
+        mRecords.remove(oldRecord);
+        mDeadBytes += oldRecord.mSize + deleteRecord.mSize;
+        return true;
+    }
+
+    /**
+     * Rewrites the log with only the live records, if enough of it is dead. If this fails, such
+     * as when the disk is full, the log is left exactly as it was, so a caller can simply carry
+     * on without compacting.
+     *
+     * @return true if the log was compacted.
+     */
+    public boolean compactIfNeeded() throws IOException {
+        int liveBytes = mEnd - FILE_HEADER_SIZE - mDeadBytes;
+        if (mDeadBytes < MIN_COMPACTION_BYTES || mDeadBytes < liveBytes) {
+            return false;
+        }
+
+        // Copy every live record, as it is, into a new file, then move that file into place.
+        MappedByteBuffer oldBuffer = buffer();
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tempFile, "rw");
+        List<Record> newRecords = new ArrayList<>(mRecords.size());
+        MappedByteBuffer newBuffer;
+        int offset = FILE_HEADER_SIZE;
+        try {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            channel.write(fileHeader());
+            for (Record record : mRecords) {
+                ByteBuffer source = oldBuffer.duplicate();
+                source.position(record.mOffset);
+                source.limit(record.mOffset + record.mSize);
+                channel.write(source);
+                newRecords.add(new Record(record.mKey, offset, record.mSize));
+                offset += record.mSize;
+            }
+            channel.force(false);
+            // Map the new file before it replaces the old one; the mapping stays valid after the
+            // rename. Once the file has been moved, nothing is left that could fail, so the log
+            // never ends up with the new file but the old offsets.
+            newBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(mFile)) {
+                throw new IOException("Could not rename " + tempFile + " to " + mFile);
+            }
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // The compaction has failed already.
+                }
+            }
+            tempFile.delete();
+        }
+
+        mRecords.clear();
+        mRecordsByKey.clear();
+        for (Record record : newRecords) {
+            mRecords.add(record);
+            mRecordsByKey.put(record.mKey, record);
+        }
+        mBuffer = newBuffer;
+        mEnd = offset;
+        mDeadBytes = 0;
+        return true;
+    }
+
+    /**
+     * @return the size of the log file in bytes, up to the end of the last record.
+     */
+    public int getFileSize() {
+        return mEnd;
+    }
+
+    /**
+     * Writes a record to the end of the log and waits until it is on disk.
+     */
+    private Record append(byte type, String key, byte[] book) throws IOException {
+        byte[] body = encodeBody(type, key, book);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length);
+        record.putInt((int) crc.getValue());
+        record.put(body);
+        record.flip();
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            // Anything after the end is left over from a record that was cut short, so it is
+            // overwritten.
+            channel.write(record, mEnd);
+            channel.truncate(mEnd + record.capacity());
+            channel.force(false);
+        } finally {
+            file.close();
+        }
+
+        // The file is mapped again the next time a record is read, see buffer().
+        Record result = new Record(key, mEnd, record.capacity());
+        mEnd += record.capacity();
+        return result;
+    }
+
+    private static byte[] encodeBody(byte type, String key, byte[] book) throws IOException {
+        byte[] keyBytes = key.getBytes("UTF-8");
+        ByteBuffer body = ByteBuffer.allocate(1 + 2 + keyBytes.length + book.length);
+        body.put(type);
+        body.putShort((short) keyBytes.length);
+        body.put(keyBytes);
+        body.put(book);
+        return body.array();
+    }
+
+    /**
+     * @return the encoded book in the given record. If the CRC is checked and doesn't match, an
+     * IOException is thrown.
+     */
+    private byte[] readBody(Record record, boolean checkCrc) throws IOException {
+        MappedByteBuffer buffer = buffer();
+        int bodyLength = buffer.getInt(record.mOffset);
+        int expectedCrc = buffer.getInt(record.mOffset + 4);
+        int bodyStart = record.mOffset + RECORD_HEADER_SIZE;
+
+        byte[] body = new byte[bodyLength];
+        ByteBuffer source = buffer.duplicate();
+        source.position(bodyStart);
+        source.get(body);
+        if (checkCrc) {
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Saved book at " + record.mOffset + " is damaged");
+            }
+        }
+
+        int keyLength = ((body[1] & 0xff) << 8) | (body[2] & 0xff);
+        int bookStart = 3 + keyLength;
+        byte[] book = new byte[bodyLength - bookStart];
+        System.arraycopy(body, bookStart, book, 0, book.length);
+        return book;
+    }
+
+    /**
+     * Builds the index from the header and key of every record in the mapped file.
+     */
+    private void readRecords() throws IOException {
+        int fileLength = mBuffer.capacity();
+        int offset = FILE_HEADER_SIZE;
+        Record last = null;
+        while (offset + RECORD_HEADER_SIZE + 3 <= fileLength) {
+            int bodyLength = mBuffer.getInt(offset);
+            int size = RECORD_HEADER_SIZE + bodyLength;
+            if (bodyLength < 3 || offset + size > fileLength) {
+                // The record was cut short by a crash.
+                break;
+            }
+            byte type = mBuffer.get(offset + RECORD_HEADER_SIZE);
+            int keyLength = mBuffer.getShort(offset + RECORD_HEADER_SIZE + 1) & 0xffff;
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer source = mBuffer.duplicate();
+            source.position(offset + RECORD_HEADER_SIZE + 3);
+            source.get(keyBytes);
+            String key = new String(keyBytes, "UTF-8");
+
+            last = new Record(key, offset, size);
+            Record oldRecord;
+            if (type == PUT) {
+                oldRecord = mRecordsByKey.put(key, last);
+                if (oldRecord != null) {
+                    mRecords.set(mRecords.indexOf(oldRecord), last);
+                } else {
+                    mRecords.add(last);
+                }
+            } else {
+                oldRecord = mRecordsByKey.remove(key);
+                mRecords.remove(oldRecord);
+                mDeadBytes += size;
+            }
+            if (oldRecord != null) {
+                mDeadBytes += oldRecord.mSize;
+            }
+            offset += size;
+        }
+        mEnd = offset;
+
+        // If the last record is damaged, drop it by appending over it later.
+        if (last != null && mRecordsByKey.get(last.mKey) == last) {
+            try {
+                readBody(last, true);
+            } catch (IOException e) {
+                mRecords.remove(last);
+                mRecordsByKey.remove(last.mKey);
+                mEnd = last.mOffset;
+            }
+        }
+    }
+
+    private void createEmptyFile() throws IOException {
+        File directory = mFile.getParentFile();
+        if (directory != null && !directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.getChannel().write(fileHeader());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        mEnd = FILE_HEADER_SIZE;
+    }
+
+    private static ByteBuffer fileHeader() {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * @return the mapped file, which is mapped again first if records were appended since it was
+     * last mapped.
+     */
+    private MappedByteBuffer buffer() throws IOException {
+        if (mBuffer == null || mBuffer.capacity() < mEnd) {
+            map();
+        }
+        return mBuffer;
+    }
+
+    /**
+     * Maps the whole file into memory, so new records can be read.
+     */
+    private void map() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // The mapping stays valid after the file is closed.
+            file.close();
+        }
+    }
+
+    /**
+     * Where a record is in the file.
+     */
+    private static final class Record {
+        final String mKey;
+        final int mOffset;
+        final int mSize;
+
+        Record(String key, int offset, int size) {
+            mKey = key;
+            mOffset = offset;
+            mSize = size;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.talha.booksearch;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes sure that only one call for a given key runs at a time. If a second caller asks for the
+ * same key while the first call is still running, it doesn't start its own call, but waits for
+ * the first one and gets the same result.
+ *
+ * This is used so that the same search, started twice at once (for example when the device is
+ * rotated while it is loading), only goes to the network once. Results are shared between
+ * callers, so they must not be changed.
+ *
+ * @param <K> the type of the keys, such as a request URL.
+ * @param <V> the type of the results.
+ */
+public class SingleFlight<K, V> {
+
+    /** The calls that are running right now */
+    private final ConcurrentMap<K, FutureTask<V>> mCalls = new ConcurrentHashMap<>();
+
+    /** Number of calls that were made, and number that joined a call already running */
+    private final AtomicInteger mCallCount = new AtomicInteger();
+    private final AtomicInteger mSharedCount = new AtomicInteger();
+
+    /**
+     * Runs the given work for the key, or waits for the call for that key that is already
+     * running. The work runs on the thread of the first caller.
+     *
+     * @param key  identifies the work, so calls with equal keys are shared.
+     * @param work is what to run if no call for the key is running.
+     * @return the result of the work, or null if the thread was interrupted while waiting.
+     */
+    public V execute(K key, Callable<V> work) {
+        FutureTask<V> task = new FutureTask<>(work);
+        FutureTask<V> running = mCalls.putIfAbsent(key, task);
+        if (running == null) {
+            mCallCount.incrementAndGet();
+            running = task;
+            try {
+                task.run();
+            } finally {
+                // Later callers start a new call, since the result may have changed by then.
+                mCalls.remove(key, task);
+            }
+        } else {
+            mSharedCount.incrementAndGet();
+        }
+
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * @return a summary of how many calls were shared, for the logs.
+     */
+    @Override
+    public String toString() {
+        return "SingleFlight[calls=" + mCallCount.get() + ", shared=" + mSharedCount.get()
+                + ", running=" + mCalls.size() + "]";
+    }
+}
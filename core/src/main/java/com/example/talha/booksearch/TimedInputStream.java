@@ -0,0 +1,56 @@
+package com.example.talha.booksearch;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} that adds up how long reading from it took, so the time spent waiting
+ * for a response to download can be told apart from the time spent parsing it.
+ */
+public class TimedInputStream extends FilterInputStream {
+
+    /** Time spent in read and skip so far, in nanoseconds */
+    private long mReadNanos;
+
+    public TimedInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * @return the time spent reading so far, in nanoseconds.
+     */
+    public long getReadNanos() {
+        return mReadNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.read();
+        } finally {
+            mReadNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.read(buffer, offset, length);
+        } finally {
+            mReadNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.skip(n);
+        } finally {
+            mReadNanos += System.nanoTime() - start;
+        }
+    }
+}
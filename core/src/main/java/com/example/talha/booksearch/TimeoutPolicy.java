@@ -0,0 +1,107 @@
+package com.example.talha.booksearch;
+
+/**
+ * Decides the connect and read timeouts of the {@link NetworkClient} from how long recent
+ * requests took.
+ *
+ * The times are kept separately for every host and type of network (see
+ * {@link NetworkClient#setNetworkType(String)}), since a host that answers in 50ms on Wi-Fi may
+ * take a second on a poor mobile connection. A timeout is a high percentile of the recent times,
+ * multiplied by some headroom and kept within the given limits. This way a request on fast Wi-Fi
+ * gives up after a second or two instead of hanging for the full 15 seconds, while one on a slow
+ * network still gets the time it usually needs.
+ *
+ * Until enough requests have been made on a network, the longest timeouts are used. A request
+ * that times out is counted as taking as long as its timeout, which pushes the next timeout up,
+ * so a network that gets slower doesn't keep failing.
+ *
+ * Policies never change once they have been created, so they can be shared between threads.
+ */
+public final class TimeoutPolicy {
+
+    /** The policy the app uses */
+    public static final TimeoutPolicy DEFAULT = new TimeoutPolicy(0.99, 3, 20,
+            1000, 15000, 2000, 10000);
+
+    /** Always uses the same timeouts, which is how the app used to make requests */
+    public static final TimeoutPolicy FIXED = new TimeoutPolicy(0.99, 3, 20,
+            15000, 15000, 10000, 10000);
+
+    /** The percentile of recent times the timeouts are based on */
+    final double percentile;
+
+    /** What the percentile is multiplied by to get the timeout */
+    final double headroom;
+
+    /** How many times must have been recorded before they are used */
+    final int minSamples;
+
+    /** Limits on the timeouts, in milliseconds */
+    final int minConnectTimeoutMillis;
+    final int maxConnectTimeoutMillis;
+    final int minReadTimeoutMillis;
+    final int maxReadTimeoutMillis;
+
+    /**
+     * Creates a new TimeoutPolicy.
+     *
+     * @param percentile              is the percentile, between 0 and 1, of recent times the
+     *                                timeouts are based on.
+     * @param headroom                is what the percentile is multiplied by.
+     * @param minSamples              is how many times must have been recorded before they are
+     *                                used. Until then the longest timeouts are used.
+     * @param minConnectTimeoutMillis is the shortest connect timeout.
+     * @param maxConnectTimeoutMillis is the longest connect timeout.
+     * @param minReadTimeoutMillis    is the shortest read timeout.
+     * @param maxReadTimeoutMillis    is the longest read timeout.
+     */
+    public TimeoutPolicy(double percentile, double headroom, int minSamples,
+                         int minConnectTimeoutMillis, int maxConnectTimeoutMillis,
+                         int minReadTimeoutMillis, int maxReadTimeoutMillis) {
+        if (percentile <= 0 || percentile >= 1 || headroom < 1
+                || minConnectTimeoutMillis > maxConnectTimeoutMillis
+                || minReadTimeoutMillis > maxReadTimeoutMillis) {
+            throw new IllegalArgumentException("Invalid timeout policy");
+        }
+        this.percentile = percentile;
+        this.headroom = headroom;
+        this.minSamples = minSamples;
+        this.minConnectTimeoutMillis = minConnectTimeoutMillis;
+        this.maxConnectTimeoutMillis = maxConnectTimeoutMillis;
+        this.minReadTimeoutMillis = minReadTimeoutMillis;
+        this.maxReadTimeoutMillis = maxReadTimeoutMillis;
+    }
+
+    /**
+     * @return the connect timeout, given the recent times it took to connect.
+     */
+    int getConnectTimeoutMillis(LatencyTracker connectTimes) {
+        return getTimeoutMillis(connectTimes, minConnectTimeoutMillis, maxConnectTimeoutMillis);
+    }
+
+    /**
+     * @return the read timeout, given the recent times the server took to start responding once
+     * the connection was open.
+     */
+    int getReadTimeoutMillis(LatencyTracker waitTimes) {
+        return getTimeoutMillis(waitTimes, minReadTimeoutMillis, maxReadTimeoutMillis);
+    }
+
+    private int getTimeoutMillis(LatencyTracker times, int min, int max) {
+        if (times.getCount() < minSamples) {
+            return max;
+        }
+        long timeout = (long) (times.getPercentile(percentile) * headroom);
+        return (int) Math.max(min, Math.min(timeout, max));
+    }
+
+    /**
+     * @return a description of the policy, for the logs.
+     */
+    @Override
+    public String toString() {
+        return "TimeoutPolicy[p" + Math.round(percentile * 100) + " x" + headroom
+                + ", connect=" + minConnectTimeoutMillis + ".." + maxConnectTimeoutMillis + " ms"
+                + ", read=" + minReadTimeoutMillis + ".." + maxReadTimeoutMillis + " ms]";
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.talha.booksearch;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs batches of searches against a stand-in server that finds a book titled after each search,
+ * takes half a second for searches starting with "slow", and fails searches starting with "fail".
+ * Checks that a {@link BookBatch} hands over every result as soon as it is ready, reports
+ * failures without stopping the other searches, and never runs more searches at once than it
+ * was asked to.
+ */
+public class BookBatchTest {
+
+    /** How long the stand-in usually takes to answer, so searches overlap */
+    private static final long RESPONSE_DELAY_MILLIS = 20;
+
+    /** How long it takes to answer a search starting with "slow" */
+    private static final long SLOW_RESPONSE_DELAY_MILLIS = 500;
+
+    /** How many searches are running on the stand-in right now, and the most there have been */
+    private final AtomicInteger mRunning = new AtomicInteger();
+    private final AtomicInteger mMostRunning = new AtomicInteger();
+
+    private StandInServer mServer;
+    private BookBatch mBatch;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                int running = mRunning.incrementAndGet();
+                try {
+                    updateMostRunning(running);
+                    String search = StandInServer.getSearch(exchange);
+                    StandInServer.sleep(search.startsWith("slow")
+                            ? SLOW_RESPONSE_DELAY_MILLIS : RESPONSE_DELAY_MILLIS);
+                    if (search.startsWith("fail")) {
+                        StandInServer.send(exchange, 500, "{}");
+                    } else {
+                        StandInServer.send(exchange, 200, StandInServer.volumesJson(search));
+                    }
+                } finally {
+                    mRunning.decrementAndGet();
+                }
+            }
+        });
+        mBatch = createBatch(4);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void resultsArriveInTheOrderTheSearchesFinish() throws InterruptedException {
+        List<BookBatch.Result> results = searchAll(mBatch, "slow", "fast 1", "fast 2");
+
+        assertEquals(3, results.size());
+        // The slow search was started first, but finished last.
+        assertEquals(0, results.get(2).getIndex());
+        assertEquals("slow", results.get(2).getQuery().getQuery());
+        assertTrue(results.get(2).getDurationMillis() >= SLOW_RESPONSE_DELAY_MILLIS - 50);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)),
+                new HashSet<>(Arrays.asList(results.get(0).getIndex(), results.get(1).getIndex())));
+    }
+
+    @Test
+    public void aFailedSearchIsReportedWithoutStoppingTheOthers() throws InterruptedException {
+        List<BookBatch.Result> results = searchAll(mBatch, "Dune", "fail", "Emma");
+
+        assertEquals(3, results.size());
+        for (BookBatch.Result result : results) {
+            if (result.getIndex() == 1) {
+                assertFalse(result.isSuccessful());
+                assertNull(result.getBooks());
+                assertTrue(String.valueOf(result.getError()),
+                        result.getError() instanceof IOException);
+            } else {
+                assertTrue(result.isSuccessful());
+                assertNull(result.getError());
+                assertEquals(1, result.getBooks().size());
+                assertEquals(result.getQuery().getQuery(), result.getBooks().get(0).getTitle());
+            }
+        }
+    }
+
+    @Test
+    public void noMoreSearchesRunAtOnceThanTheParallelism() throws InterruptedException {
+        String[] searches = new String[40];
+        for (int i = 0; i < searches.length; i++) {
+            searches[i] = "book " + i;
+        }
+
+        List<BookBatch.Result> results = searchAll(mBatch, searches);
+
+        assertEquals(searches.length, results.size());
+        Set<Integer> indexes = new HashSet<>();
+        for (BookBatch.Result result : results) {
+            assertTrue(result.isSuccessful());
+            assertEquals(searches[result.getIndex()], result.getQuery().getQuery());
+            indexes.add(result.getIndex());
+        }
+        // Every search was reported exactly once.
+        assertEquals(searches.length, indexes.size());
+        assertTrue("Ran " + mMostRunning.get() + " searches at once", mMostRunning.get() <= 4);
+        assertTrue("Ran " + mMostRunning.get() + " searches at once", mMostRunning.get() > 1);
+    }
+
+    @Test
+    public void queriesAreOnlyTakenWhenThereIsRoomToStartThem() throws InterruptedException {
+        final AtomicInteger taken = new AtomicInteger();
+        final List<String> searches = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            searches.add("book " + i);
+        }
+        final Iterator<String> iterator = searches.iterator();
+        final AtomicInteger mostAhead = new AtomicInteger();
+        final AtomicInteger delivered = new AtomicInteger();
+
+        int count = mBatch.searchAll(new Iterator<BookQuery>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public BookQuery next() {
+                int ahead = taken.incrementAndGet() - delivered.get();
+                mostAhead.set(Math.max(mostAhead.get(), ahead));
+                return mServer.query(iterator.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }, new BookBatch.Listener() {
+            @Override
+            public void onResult(BookBatch.Result result) {
+                delivered.incrementAndGet();
+            }
+        });
+
+        assertEquals(searches.size(), count);
+        // A query is only taken once a permit is free, so no more than the parallelism are ever
+        // taken but not yet delivered.
+        assertTrue("Took " + mostAhead.get() + " queries ahead", mostAhead.get() <= 4);
+    }
+
+    @Test
+    public void aListenerExceptionStopsTheBatchAndIsThrown() throws InterruptedException {
+        BookBatch batch = createBatch(2);
+        String[] searches = new String[20];
+        for (int i = 0; i < searches.length; i++) {
+            searches[i] = "book " + i;
+        }
+        final IllegalStateException error = new IllegalStateException("Listener failed");
+        final AtomicInteger calls = new AtomicInteger();
+        ListIterator<BookQuery> queries = queryList(searches).listIterator();
+
+        try {
+            batch.searchAll(queries, new BookBatch.Listener() {
+                @Override
+                public void onResult(BookBatch.Result result) {
+                    calls.incrementAndGet();
+                    throw error;
+                }
+            });
+            fail("The listener's exception should have been thrown");
+        } catch (IllegalStateException e) {
+            assertSame(error, e);
+        }
+        // No more results were delivered, and no more searches started than were running.
+        assertEquals(1, calls.get());
+        assertTrue("Made " + mServer.getHitCount() + " searches",
+                mServer.getHitCount() < searches.length);
+        // Every query that was taken from the iterator was searched, rather than dropped.
+        assertEquals(queries.nextIndex(), mServer.getHitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelismMustBeAtLeastOne() {
+        createBatch(0);
+    }
+
+    private static BookBatch createBatch(int parallelism) {
+        return new BookBatch(new BookFetcher(NetworkClient.create(RequestPolicy.SINGLE_ATTEMPT)),
+                parallelism);
+    }
+
+    /**
+     * Runs the searches as a batch.
+     *
+     * @return the results, in the order they were delivered.
+     */
+    private List<BookBatch.Result> searchAll(BookBatch batch, String... searches)
+            throws InterruptedException {
+        final List<BookBatch.Result> results = new ArrayList<>();
+        int count = batch.searchAll(queries(searches), new BookBatch.Listener() {
+            @Override
+            public void onResult(BookBatch.Result result) {
+                results.add(result);
+            }
+        });
+        assertEquals(searches.length, count);
+        return results;
+    }
+
+    /**
+     * @return queries for the given searches, sent to the stand-in server.
+     */
+    private Iterator<BookQuery> queries(String... searches) {
+        return queryList(searches).iterator();
+    }
+
+    private List<BookQuery> queryList(String... searches) {
+        List<BookQuery> queries = new ArrayList<>();
+        for (String search : searches) {
+            queries.add(mServer.query(search));
+        }
+        return queries;
+    }
+
+    private void updateMostRunning(int running) {
+        int most;
+        do {
+            most = mMostRunning.get();
+        } while (running > most && !mMostRunning.compareAndSet(most, running));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.talha.booksearch;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how much heap 10,000 books take up, the most the caches, the index and the shelf hold
+ * at once, and checks that {@link Book} stays compact: shared authors, currencies and link
+ * prefixes, primitive numbers, and long descriptions kept compressed until they are read.
+ *
+ * The books are made of fresh Strings, as they are when they are parsed from a response, so
+ * nothing is shared unless Book shares it. The heap is measured after a full garbage collection,
+ * so the limits are well above what is measured on a desktop JVM, to leave room for how
+ * different JVMs lay out objects.
+ */
+public class BookFootprintTest {
+
+    private static final int BOOK_COUNT = 10000;
+
+    /** How many different authors the books have, since searches return the same ones again */
+    private static final int AUTHOR_COUNT = 500;
+
+    /** Length of the long descriptions, about as long as the API's usual descriptions */
+    private static final int DESCRIPTION_LENGTH = 1500;
+
+    /**
+     * The most a book without a description may take up, including its own id and title. About
+     * 240 bytes are measured; with boxed numbers and whole links, it took about 600.
+     */
+    private static final int MAX_BYTES_PER_BOOK = 350;
+
+    /**
+     * The most a book may take up on average when a quarter of them have a long description.
+     * About 320 bytes are measured. Kept as plain Strings, the descriptions alone would add 375
+     * to 750 bytes to every book, depending on how the JVM stores Strings.
+     */
+    private static final int MAX_BYTES_PER_BOOK_WITH_DESCRIPTIONS = 450;
+
+    @Test
+    public void booksWithoutDescriptionsAreCompact() {
+        long bytesPerBook = measureBytesPerBook(0);
+        assertTrue("A book takes up " + bytesPerBook + " bytes",
+                bytesPerBook <= MAX_BYTES_PER_BOOK);
+    }
+
+    @Test
+    public void longDescriptionsAreKeptCompressed() {
+        long bytesPerBook = measureBytesPerBook(4);
+        assertTrue("A book takes up " + bytesPerBook + " bytes",
+                bytesPerBook <= MAX_BYTES_PER_BOOK_WITH_DESCRIPTIONS);
+    }
+
+    @Test
+    public void compactBooksReturnWhatTheyWereGiven() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            String description = i % 2 == 0 ? description(random) : null;
+            Book book = createBook(i, description);
+            assertEquals(id(i), book.getId());
+            assertEquals(author(i), book.getAuthor());
+            assertEquals("USD", book.getLocale());
+            assertEquals(4.5, book.getRating(), 0);
+            assertEquals(9.99 + i, book.getPrice(), 0);
+            assertEquals("https://books.google.com/books?id=" + id(i) + "&hl=&source=gbs_api",
+                    book.getUrl());
+            assertEquals("http://books.google.com/books/content?id=" + id(i)
+                    + "&printsec=frontcover&img=1&zoom=5&source=gbs_api", book.getImageUrl());
+            assertEquals(description, book.getDescription());
+        }
+    }
+
+    /**
+     * Creates {@link #BOOK_COUNT} books and measures the heap they take up.
+     *
+     * @param descriptionEvery is how often a book has a long description, such as 4 for every
+     *                         fourth book, or 0 for none.
+     * @return the average number of bytes per book.
+     */
+    private static long measureBytesPerBook(int descriptionEvery) {
+        Random random = new Random(42);
+        Book[] books = new Book[BOOK_COUNT];
+        long before = usedHeapAfterGc();
+        for (int i = 0; i < BOOK_COUNT; i++) {
+            boolean hasDescription = descriptionEvery > 0 && i % descriptionEvery == 0;
+            books[i] = createBook(i, hasDescription ? description(random) : null);
+        }
+        long after = usedHeapAfterGc();
+        // Keep the books reachable until the heap has been measured.
+        assertEquals(id(BOOK_COUNT - 1), books[BOOK_COUNT - 1].getId());
+        return (after - before) / BOOK_COUNT;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        // One collection may leave garbage that only became unreachable during it.
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return a book like the ones in a search response, made of Strings that aren't shared with
+     * any other book.
+     */
+    private static Book createBook(int i, String description) {
+        String id = id(i);
+        String[] imageUrls = new String[Book.ImageSize.THUMBNAIL.ordinal() + 1];
+        imageUrls[Book.ImageSize.SMALL_THUMBNAIL.ordinal()] =
+                "http://books.google.com/books/content?id=" + id
+                        + "&printsec=frontcover&img=1&zoom=5&source=gbs_api";
+        imageUrls[Book.ImageSize.THUMBNAIL.ordinal()] =
+                "http://books.google.com/books/content?id=" + id
+                        + "&printsec=frontcover&img=1&zoom=1&source=gbs_api";
+        return new Book(id, "Title of book " + i, null, description, author(i), 4.5,
+                "https://books.google.com/books?id=" + id + "&hl=&source=gbs_api",
+                "http://books.google.com/books?id=" + id
+                        + "&printsec=frontcover&hl=&source=gbs_api",
+                imageUrls, new String("USD"), 9.99 + i);
+    }
+
+    /**
+     * @return a volume id as long as the API's, which is different for every book.
+     */
+    private static String id(int i) {
+        return String.format("vol%09dX", i);
+    }
+
+    private static String author(int i) {
+        return "Author number " + (i % AUTHOR_COUNT);
+    }
+
+    /**
+     * @return a description made of random words, which compresses about as well as English.
+     */
+    private static String description(Random random) {
+        String[] words = {"the", "of", "a", "novel", "story", "and", "her", "his", "world",
+                "war", "love", "family", "years", "life", "new", "book", "first", "in", "an",
+                "author", "history", "young", "town", "secret", "journey", "through", "after"};
+        StringBuilder text = new StringBuilder(DESCRIPTION_LENGTH + 16);
+        while (text.length() < DESCRIPTION_LENGTH) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.talha.booksearch;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how the {@link NetworkClient} retries failed requests and hedges slow ones, as its
+ * {@link RequestPolicy} says, against a stand-in server that fails or stalls on purpose.
+ *
+ * The policies use short backoffs and delays, so the tests run quickly.
+ */
+public class NetworkClientTest {
+
+    /** Retries up to 3 times with a short backoff, and never hedges */
+    private static final RequestPolicy RETRYING = new RequestPolicy(3, 20, 50, 2000, 0, 0, 0);
+
+    /** Makes one attempt, and hedges it once it has taken 200 ms */
+    private static final RequestPolicy HEDGING = new RequestPolicy(1, 0, 0, 0, 0.5, 50, 200);
+
+    /** Gives up on a response that hasn't started after 300 ms */
+    private static final TimeoutPolicy SHORT_TIMEOUTS = new TimeoutPolicy(0.99, 3, 20,
+            1000, 1000, 300, 300);
+
+    /** How long a stalled response takes, much longer than the timeouts and hedge delay */
+    private static final long STALL_MILLIS = 2000;
+
+    private StandInServer mServer;
+
+    @After
+    public void tearDown() {
+        if (mServer != null) {
+            mServer.close();
+        }
+    }
+
+    @Test
+    public void serverErrorsAreRetriedUntilOneSucceeds() throws IOException {
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                StandInServer.send(exchange, hit < 3 ? 503 : 200, "{}");
+            }
+        });
+
+        assertEquals(200, get(NetworkClient.create(RETRYING)));
+        assertEquals(3, mServer.getHitCount());
+    }
+
+    @Test
+    public void theLastErrorIsReturnedOnceEveryAttemptHasFailed() throws IOException {
+        mServer = StandInServer.start(respondWith(500));
+
+        assertEquals(500, get(NetworkClient.create(RETRYING)));
+        assertEquals(3, mServer.getHitCount());
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() throws IOException {
+        mServer = StandInServer.start(respondWith(404));
+
+        assertEquals(404, get(NetworkClient.create(RETRYING)));
+        assertEquals(1, mServer.getHitCount());
+    }
+
+    @Test
+    public void timeoutsAreRetried() throws IOException {
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                if (hit == 1) {
+                    StandInServer.sleep(STALL_MILLIS);
+                }
+                StandInServer.send(exchange, 200, "{}");
+            }
+        });
+        NetworkClient client = NetworkClient.create(RETRYING);
+        client.setTimeoutPolicy(SHORT_TIMEOUTS);
+
+        assertEquals(200, get(client));
+        assertEquals(2, mServer.getHitCount());
+    }
+
+    @Test
+    public void theLastTimeoutIsThrownOnceEveryAttemptHasFailed() throws IOException {
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                StandInServer.sleep(STALL_MILLIS);
+                StandInServer.send(exchange, 200, "{}");
+            }
+        });
+        NetworkClient client = NetworkClient.create(RETRYING);
+        client.setTimeoutPolicy(SHORT_TIMEOUTS);
+
+        try {
+            get(client);
+            fail("Every attempt should have timed out");
+        } catch (SocketTimeoutException e) {
+            // Expected.
+        }
+        assertEquals(3, mServer.getHitCount());
+    }
+
+    @Test
+    public void retryAfterInSecondsIsWaitedFor() throws IOException {
+        mServer = StandInServer.start(retryAfterOnce("1"));
+
+        long startTime = System.nanoTime();
+        assertEquals(200, get(NetworkClient.create(RETRYING)));
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        // The backoff alone would be at most 20 ms.
+        assertTrue("Retried after " + elapsedMillis + " ms", elapsedMillis >= 900);
+        assertEquals(2, mServer.getHitCount());
+    }
+
+    @Test
+    public void retryAfterAsADateIsWaitedFor() throws IOException {
+        SimpleDateFormat httpDate =
+                new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        // Dates only have whole seconds, so ask for at least one more.
+        String date = httpDate.format(new Date(System.currentTimeMillis() + 2000));
+        mServer = StandInServer.start(retryAfterOnce(date));
+
+        long startTime = System.nanoTime();
+        assertEquals(200, get(NetworkClient.create(RETRYING)));
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        assertTrue("Retried after " + elapsedMillis + " ms", elapsedMillis >= 900);
+        assertEquals(2, mServer.getHitCount());
+    }
+
+    @Test
+    public void aRetryAfterLongerThanTheLimitIsNotWaitedFor() throws IOException {
+        mServer = StandInServer.start(retryAfterOnce("60"));
+
+        long startTime = System.nanoTime();
+        assertEquals(429, get(NetworkClient.create(RETRYING)));
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        assertTrue("Gave up after " + elapsedMillis + " ms", elapsedMillis < 1000);
+        assertEquals(1, mServer.getHitCount());
+    }
+
+    @Test
+    public void aSlowRequestIsHedgedAndTheFasterCopyWins() throws IOException {
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                if (hit == 1) {
+                    StandInServer.sleep(STALL_MILLIS);
+                }
+                StandInServer.send(exchange, 200, "{}");
+            }
+        });
+
+        long startTime = System.nanoTime();
+        assertEquals(200, get(NetworkClient.create(HEDGING)));
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        // The hedge was sent after 200 ms, and answered straight away.
+        assertTrue("Answered after " + elapsedMillis + " ms", elapsedMillis < STALL_MILLIS / 2);
+        assertEquals(2, mServer.getHitCount());
+    }
+
+    @Test
+    public void fastRequestsAreNotHedged() throws IOException {
+        mServer = StandInServer.start(respondWith(200));
+        NetworkClient client = NetworkClient.create(HEDGING);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, get(client));
+        }
+        assertEquals(5, mServer.getHitCount());
+    }
+
+    /**
+     * Makes a request to the stand-in server, and closes the response.
+     *
+     * @return the response code.
+     */
+    private int get(NetworkClient client) throws IOException {
+        NetworkClient.Response response = client.get(mServer.url(StandInServer.VOLUMES_PATH));
+        try {
+            return response.getCode();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * @return a responder that answers every request with the given response code.
+     */
+    private static StandInServer.Responder respondWith(final int code) {
+        return new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                StandInServer.send(exchange, code, "{}");
+            }
+        };
+    }
+
+    /**
+     * @return a responder that answers the first request with 429 Too Many Requests and the given
+     * Retry-After header, and every other request with 200.
+     */
+    private static StandInServer.Responder retryAfterOnce(final String retryAfter) {
+        return new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                if (hit == 1) {
+                    exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                    StandInServer.send(exchange, 429, "{}");
+                } else {
+                    StandInServer.send(exchange, 200, "{}");
+                }
+            }
+        };
+    }
+}
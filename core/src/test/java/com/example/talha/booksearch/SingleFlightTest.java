@@ -0,0 +1,144 @@
+package com.example.talha.booksearch;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a {@link SingleFlight} in front of real requests to a stand-in server only lets one
+ * request for the same key through at a time, however many callers ask for it at once.
+ */
+public class SingleFlightTest {
+
+    /** How many callers ask for the same search at once */
+    private static final int CALLERS = 8;
+
+    /** How long the stand-in takes to answer, so every caller arrives while the first waits */
+    private static final long RESPONSE_DELAY_MILLIS = 300;
+
+    private final SingleFlight<String, List<Book>> mFlight = new SingleFlight<>();
+    private final ExecutorService mCallers = Executors.newFixedThreadPool(CALLERS);
+    private StandInServer mServer;
+    private BookFetcher mFetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = StandInServer.start(StandInServer.books(RESPONSE_DELAY_MILLIS, "Dune"));
+        mFetcher = new BookFetcher(NetworkClient.create(RequestPolicy.SINGLE_ATTEMPT));
+    }
+
+    @After
+    public void tearDown() {
+        mCallers.shutdownNow();
+        mServer.close();
+    }
+
+    @Test
+    public void concurrentCallsForTheSameKeyMakeOneRequest() throws Exception {
+        List<Future<List<Book>>> results = searchAtOnce("dune", "dune", "dune", "dune",
+                "dune", "dune", "dune", "dune");
+
+        List<Book> first = results.get(0).get();
+        assertEquals(1, first.size());
+        for (Future<List<Book>> result : results) {
+            // Every caller gets the very same list, which was parsed once.
+            assertSame(first, result.get());
+        }
+        assertEquals(1, mServer.getHitCount());
+    }
+
+    @Test
+    public void concurrentCallsForDifferentKeysAreNotShared() throws Exception {
+        List<Future<List<Book>>> results = searchAtOnce("dune", "dune", "dune", "dune",
+                "emma", "emma", "emma", "emma");
+
+        for (Future<List<Book>> result : results) {
+            result.get();
+        }
+        assertSame(results.get(0).get(), results.get(3).get());
+        assertSame(results.get(4).get(), results.get(7).get());
+        assertEquals(2, mServer.getHitCount());
+    }
+
+    @Test
+    public void callsAfterTheFirstHasFinishedMakeANewRequest() throws Exception {
+        List<Book> first = mFlight.execute("dune", search("dune"));
+        List<Book> second = mFlight.execute("dune", search("dune"));
+
+        assertEquals(first.size(), second.size());
+        assertEquals(2, mServer.getHitCount());
+    }
+
+    @Test
+    public void aFailureIsSharedToo() throws Exception {
+        mServer.close();
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                StandInServer.sleep(RESPONSE_DELAY_MILLIS);
+                StandInServer.send(exchange, 503, "{}");
+            }
+        });
+
+        List<Future<List<Book>>> results = searchAtOnce("dune", "dune", "dune", "dune",
+                "dune", "dune", "dune", "dune");
+
+        for (Future<List<Book>> result : results) {
+            try {
+                result.get();
+                fail("A failed request should fail every caller");
+            } catch (ExecutionException e) {
+                // SingleFlight wraps the IOException of the shared call.
+                assertEquals(IOException.class, e.getCause().getCause().getClass());
+            }
+        }
+        assertEquals(1, mServer.getHitCount());
+    }
+
+    /**
+     * Starts a caller for every key at the same moment.
+     */
+    private List<Future<List<Book>>> searchAtOnce(String... keys) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Book>>> results = new ArrayList<>();
+        for (final String key : keys) {
+            results.add(mCallers.submit(new Callable<List<Book>>() {
+                @Override
+                public List<Book> call() throws Exception {
+                    start.await();
+                    return mFlight.execute(key, search(key));
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    /**
+     * @return the work of searching for the given key on the stand-in server.
+     */
+    private Callable<List<Book>> search(final String key) {
+        return new Callable<List<Book>>() {
+            @Override
+            public List<Book> call() throws IOException {
+                return mFetcher.search(mServer.query(key));
+            }
+        };
+    }
+}
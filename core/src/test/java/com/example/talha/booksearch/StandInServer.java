@@ -0,0 +1,202 @@
+package com.example.talha.booksearch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for the Google Books API that runs on localhost, for tests. Every request is
+ * counted, and answered by a {@link Responder} that the test provides, so it can add latency,
+ * send errors or hang, and check how the client copes.
+ *
+ * Requests are handled on as many threads as needed, so a slow response doesn't hold up the
+ * others, just like a real server.
+ */
+final class StandInServer implements Closeable {
+
+    /** The path of the searches, as on the real API */
+    static final String VOLUMES_PATH = "/books/v1/volumes";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Answers a request to the stand-in server.
+     */
+    interface Responder {
+
+        /**
+         * @param exchange is the request, which must be answered.
+         * @param hit      is the number of the request, starting at 1.
+         */
+        void respond(HttpExchange exchange, int hit) throws IOException;
+    }
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final AtomicInteger mHitCount = new AtomicInteger();
+
+    private StandInServer(final Responder responder) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "StandInServer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    responder.respond(exchange, mHitCount.incrementAndGet());
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * Starts a server on a free port of localhost.
+     */
+    static StandInServer start(Responder responder) throws IOException {
+        return new StandInServer(responder);
+    }
+
+    /**
+     * @return how many requests the server has received so far.
+     */
+    int getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * @return the URL of the given path on this server.
+     */
+    URL url(String path) {
+        try {
+            return new URL(getBaseUrl() + path);
+        } catch (MalformedURLException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return the URL searches should be sent to, for {@link BookQuery#forBaseUrl(String)}.
+     */
+    String getVolumesUrl() {
+        return getBaseUrl() + VOLUMES_PATH;
+    }
+
+    /**
+     * @return a query for the given search that is sent to this server.
+     */
+    BookQuery query(String search) {
+        return new BookQuery(search, BookQuery.DEFAULT_MAX_RESULTS,
+                BookQuery.ORDER_BY_RELEVANCE, BookQuery.PRINT_TYPE_ALL).forBaseUrl(getVolumesUrl());
+    }
+
+    private String getBaseUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * @return a responder that answers every request with a search response holding books with
+     * the given titles, after the given delay.
+     */
+    static Responder books(final long delayMillis, final String... titles) {
+        return new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                sleep(delayMillis);
+                send(exchange, 200, volumesJson(titles));
+            }
+        };
+    }
+
+    /**
+     * @return the search a request is for, from its "q" parameter, or "" if it has none.
+     */
+    static String getSearch(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("q=")) {
+                    return URLDecoder.decode(parameter.substring(2), "UTF-8");
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Answers a request with the given response code and body.
+     */
+    static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /**
+     * @return a search response with a book for every title, with only the fields the parser
+     * needs.
+     */
+    static String volumesJson(String... titles) {
+        StringBuilder json = new StringBuilder("{\"kind\":\"books#volumes\",\"items\":[");
+        for (int i = 0; i < titles.length; i++) {
+            String id = "stand-in" + i;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(id).append("\",\"volumeInfo\":{\"title\":\"")
+                    .append(titles[i]).append("\",\"authors\":[\"Stand-in Author\"],")
+                    .append("\"infoLink\":\"https://books.google.com/books?id=").append(id)
+                    .append("\",\"previewLink\":\"https://books.google.com/books?id=").append(id)
+                    .append("&printsec=frontcover\"},\"saleInfo\":{\"saleability\":")
+                    .append("\"NOT_FOR_SALE\"}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Waits on a thread of the server, such as to add latency to a response.
+     */
+    static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // The server is being stopped.
+            Thread.currentThread().interrupt();
+        }
+    }
+}
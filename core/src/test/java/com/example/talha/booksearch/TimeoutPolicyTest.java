@@ -0,0 +1,153 @@
+package com.example.talha.booksearch;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the {@link NetworkClient} works out its timeouts from how long recent requests
+ * took, as its {@link TimeoutPolicy} says, against a stand-in server whose response time the
+ * test changes: once it has seen a fast server, a server that hangs fails in a fraction of the
+ * longest timeout.
+ */
+public class TimeoutPolicyTest {
+
+    /** The longest timeouts, which are used until enough requests have been made */
+    private static final int MAX_TIMEOUT_MILLIS = 5000;
+
+    /** The shortest timeouts, however fast the server is */
+    private static final int MIN_TIMEOUT_MILLIS = 100;
+
+    private static final int MIN_SAMPLES = 10;
+
+    /** Times out at three times the 90th percentile of recent times */
+    private static final TimeoutPolicy ADAPTIVE = new TimeoutPolicy(0.9, 3, MIN_SAMPLES,
+            MIN_TIMEOUT_MILLIS, MAX_TIMEOUT_MILLIS, MIN_TIMEOUT_MILLIS, MAX_TIMEOUT_MILLIS);
+
+    /** How long the stand-in takes to answer while it is fast */
+    private static final long FAST_MILLIS = 10;
+
+    /** How long it takes once it has slowed down, which the fast timeouts don't wait for */
+    private static final long SLOW_MILLIS = 1000;
+
+    /** How long the stand-in takes to answer right now */
+    private volatile long mDelayMillis = FAST_MILLIS;
+
+    private StandInServer mServer;
+    private NetworkClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = StandInServer.start(new StandInServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int hit) throws IOException {
+                StandInServer.sleep(mDelayMillis);
+                StandInServer.send(exchange, 200, "{}");
+            }
+        });
+        // Retrying or hedging would hide how long a single attempt waits.
+        mClient = NetworkClient.create(RequestPolicy.SINGLE_ATTEMPT);
+        mClient.setTimeoutPolicy(ADAPTIVE);
+        mClient.setNetworkType("WIFI");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void theLongestTimeoutIsUsedUntilThereAreEnoughSamples() throws IOException {
+        warmUp(MIN_SAMPLES - 1);
+
+        NetworkClient.TimeoutEstimate estimate = getEstimate("WIFI");
+        assertEquals(MIN_SAMPLES - 1, estimate.getSampleCount());
+        assertEquals(MAX_TIMEOUT_MILLIS, estimate.getReadTimeoutMillis());
+    }
+
+    @Test
+    public void aFastServerGetsAShortTimeout() throws IOException {
+        warmUp(2 * MIN_SAMPLES);
+
+        int readTimeout = getEstimate("WIFI").getReadTimeoutMillis();
+        assertTrue("The read timeout is " + readTimeout + " ms",
+                readTimeout < SLOW_MILLIS / 2);
+    }
+
+    @Test
+    public void aHangingServerFailsFastOnceTheClientHasWarmedUp() throws IOException {
+        warmUp(2 * MIN_SAMPLES);
+        mDelayMillis = SLOW_MILLIS;
+
+        long startTime = System.nanoTime();
+        try {
+            get();
+            fail("The request should have timed out");
+        } catch (SocketTimeoutException e) {
+            // Expected.
+        }
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+        assertTrue("Timed out after " + elapsedMillis + " ms", elapsedMillis < SLOW_MILLIS / 2);
+    }
+
+    @Test
+    public void eachNetworkTypeLearnsItsOwnTimeouts() throws IOException {
+        warmUp(2 * MIN_SAMPLES);
+        mDelayMillis = SLOW_MILLIS;
+
+        // Nothing is known about the mobile network yet, so the request gets the longest
+        // timeout, and the slow response still arrives.
+        mClient.setNetworkType("MOBILE/LTE");
+        assertEquals(200, get());
+
+        assertEquals(1, getEstimate("MOBILE/LTE").getSampleCount());
+        assertEquals(MAX_TIMEOUT_MILLIS, getEstimate("MOBILE/LTE").getReadTimeoutMillis());
+        assertTrue(getEstimate("WIFI").getReadTimeoutMillis() < SLOW_MILLIS / 2);
+    }
+
+    /**
+     * Makes the given number of requests while the server is fast.
+     */
+    private void warmUp(int requests) throws IOException {
+        for (int i = 0; i < requests; i++) {
+            assertEquals(200, get());
+        }
+    }
+
+    /**
+     * Makes a request to the stand-in server, and closes the response.
+     *
+     * @return the response code.
+     */
+    private int get() throws IOException {
+        NetworkClient.Response response = mClient.get(mServer.url(StandInServer.VOLUMES_PATH));
+        try {
+            return response.getCode();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * @return what the client has learned about the stand-in server on the given network.
+     */
+    private NetworkClient.TimeoutEstimate getEstimate(String networkType) {
+        List<NetworkClient.TimeoutEstimate> estimates = mClient.getTimeoutEstimates();
+        for (NetworkClient.TimeoutEstimate estimate : estimates) {
+            if (estimate.getNetworkType().equals(networkType)) {
+                return estimate;
+            }
+        }
+        throw new AssertionError("Nothing is known about " + networkType + ": " + estimates);
+    }
+}